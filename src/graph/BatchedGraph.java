@@ -0,0 +1,24 @@
+package graph;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A graph that can answer many {@link Graph#targets(Object) targets} queries
+ * at once, for graphs where each query is a round trip to another process.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public interface BatchedGraph<L> extends Graph<L> {
+
+    /**
+     * Get the target vertices of several source vertices, with the weights
+     * of those edges.
+     *
+     * @param sources labels
+     * @return a map from each label in sources to what {@link #targets(Object)}
+     *         would return for it
+     */
+    public Map<L, Map<L, Integer>> targetsOfAll(Collection<? extends L> sources);
+
+}
@@ -0,0 +1,578 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A Graph that stores its edges compressed, for large sparse graphs such as
+ * word affinity graphs.
+ *
+ * <p>Vertices are numbered, and each vertex's out-edges and in-edges are
+ * kept as rows sorted by neighbor id. A row is encoded as bytes: the number
+ * of edges, then the neighbor ids as gaps from the previous id, then the
+ * weights as runs of equal weights, all as unsigned varints (seven bits per
+ * byte, high bit set on every byte but the last). Since neighbors are sorted
+ * the gaps are small, and since most weights in an affinity graph are 1 a
+ * row's weights are usually a single run, so an edge typically takes one or
+ * two bytes per direction instead of the eight of a plain int-array CSR.
+ *
+ * <p>All rows of one direction live in one byte array, found by one int
+ * offset per vertex. Observers decode rows on the fly. Setting an edge
+ * re-encodes the two rows it belongs to, in O(d) time for rows of d edges:
+ * a row that shrinks is rewritten in place and one that grows is appended,
+ * and the array is compacted once more than half of it is stale. So
+ * building a row of d edges one {@link #set} at a time takes O(d^2) time;
+ * {@link #setAll(List, List, int[])} sets many edges at once, sorting them
+ * and encoding each row they touch only once.
+ *
+ * <p>A CompressedGraph is not safe for use by several threads while any of
+ * them mutates it. Observers do not modify it, so threads that only observe
+ * may share it.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class CompressedGraph<L> implements Graph<L> {
+
+    private final Map<L, Integer> ids = new HashMap<>();
+    private final List<L> labels = new ArrayList<>();
+    private int[] freeIds = new int[8];
+    private int freeCount = 0;
+    private final Rows out = new Rows();
+    private final Rows in = new Rows();
+
+    // scratch space for decoding a row while it is rewritten, and for
+    // merging a row with a batch of edges in setAll()
+    private int[] neighbors = new int[16];
+    private int[] weights = new int[16];
+    private int[] mergedNeighbors = new int[16];
+    private int[] mergedWeights = new int[16];
+
+    // Abstraction function:
+    //   represents the graph whose vertices are the keys of ids, with an edge
+    //   from labels.get(s) to labels.get(t) of weight w for each neighbor t
+    //   and weight w decoded from out's row s
+    // Representation invariant:
+    //   ids maps labels.get(i) to i for every i with labels.get(i) != null,
+    //   and nothing else
+    //   freeIds[0..freeCount) are exactly the i with labels.get(i) == null,
+    //   and their rows in out and in are empty
+    //   every row holds strictly increasing ids of present vertices and
+    //   positive weights
+    //   out's row s has t with weight w iff in's row t has s with weight w
+    // Safety from rep exposure:
+    //   all fields are private; observers return fresh collections
+
+    /**
+     * Create an empty graph.
+     */
+    public CompressedGraph() {
+    }
+
+    private void checkRep() {
+        assert ids.size() + freeCount == labels.size();
+        assert out.rowCount() >= labels.size() && in.rowCount() >= labels.size();
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        if (ids.containsKey(vertex)) {
+            return false;
+        }
+        idOf(vertex);
+        checkRep();
+        return true;
+    }
+
+    /*
+     * Get the id of a vertex, adding it first if it is absent.
+     */
+    private int idOf(L vertex) {
+        final Integer present = ids.get(vertex);
+        if (present != null) {
+            return present;
+        }
+        final int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+            labels.set(id, vertex);
+        } else {
+            id = labels.size();
+            labels.add(vertex);
+            out.ensureRows(id + 1);
+            in.ensureRows(id + 1);
+        }
+        ids.put(vertex, id);
+        return id;
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must be nonnegative: " + weight);
+        }
+        if (weight == 0 && (!ids.containsKey(source) || !ids.containsKey(target))) {
+            return 0;
+        }
+        final int s = idOf(source);
+        final int t = idOf(target);
+        final int previous = put(out, s, t, weight);
+        if (previous != weight) {
+            put(in, t, s, weight);
+        }
+        checkRep();
+        return previous;
+    }
+
+    /*
+     * Set the weight of neighbor in one row, removing it if weight is 0,
+     * and return its previous weight, or 0 if it was absent.
+     */
+    private int put(Rows rows, int row, int neighbor, int weight) {
+        final int n = rows.degree(row);
+        if (n + 1 > neighbors.length) {
+            neighbors = new int[Math.max(n + 1, neighbors.length * 2)];
+            weights = new int[neighbors.length];
+        }
+        rows.decode(row, neighbors, weights);
+        final int k = Arrays.binarySearch(neighbors, 0, n, neighbor);
+        final int previous = k >= 0 ? weights[k] : 0;
+        if (previous == weight) {
+            return previous;
+        }
+        if (k >= 0 && weight == 0) {
+            System.arraycopy(neighbors, k + 1, neighbors, k, n - k - 1);
+            System.arraycopy(weights, k + 1, weights, k, n - k - 1);
+            rows.encode(row, neighbors, weights, n - 1);
+        } else if (k >= 0) {
+            weights[k] = weight;
+            rows.encode(row, neighbors, weights, n);
+        } else {
+            final int insert = -k - 1;
+            System.arraycopy(neighbors, insert, neighbors, insert + 1, n - insert);
+            System.arraycopy(weights, insert, weights, insert + 1, n - insert);
+            neighbors[insert] = neighbor;
+            weights[insert] = weight;
+            rows.encode(row, neighbors, weights, n + 1);
+        }
+        return previous;
+    }
+
+    /**
+     * Set many edges at once, with the same result as calling
+     * {@code set(sources.get(i), targets.get(i), weights[i])} for each i in
+     * order, but in O(b log b + D) time for b edges touching rows of D edges
+     * in all: the edges are sorted, and each row they touch is decoded and
+     * encoded once. An empty graph built with one call therefore encodes
+     * each row exactly once.
+     *
+     * @param sources source of each edge
+     * @param targets target of each edge
+     * @param weights nonnegative weight of each edge; 0 removes the edge
+     * @throws IllegalArgumentException if the three differ in length or a
+     *         weight is negative, in which case nothing is changed
+     */
+    public void setAll(List<? extends L> sources, List<? extends L> targets, int[] weights) {
+        final int count = weights.length;
+        if (sources.size() != count || targets.size() != count) {
+            throw new IllegalArgumentException("need one source, target and weight per edge");
+        }
+        for (int weight : weights) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("weight must be nonnegative: " + weight);
+            }
+        }
+        final int[] rows = new int[count];
+        final int[] columns = new int[count];
+        final int[] values = new int[count];
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            final L source = sources.get(i);
+            final L target = targets.get(i);
+            if (weights[i] == 0 && (!ids.containsKey(source) || !ids.containsKey(target))) {
+                continue; // as set() does, a removal adds no vertices
+            }
+            rows[kept] = idOf(source);
+            columns[kept] = idOf(target);
+            values[kept++] = weights[i];
+        }
+        // every changed out-entry s -> t becomes an in-entry t <- s
+        final int[] changedRows = new int[kept];
+        final int[] changedColumns = new int[kept];
+        final int[] changedValues = new int[kept];
+        final int changed = putAll(out, rows, columns, values, kept, changedRows, changedColumns, changedValues);
+        putAll(in, changedRows, changedColumns, changedValues, changed, null, null, null);
+        checkRep();
+    }
+
+    /*
+     * Apply entries (rows[i], columns[i], values[i]) for i < count to a
+     * direction, later entries for the same place winning, decoding and
+     * encoding each row once. If changedRows is not null, record each entry
+     * whose weight changed there, transposed, and return how many.
+     */
+    private int putAll(Rows direction, int[] rows, int[] columns, int[] values, int count,
+            int[] changedRows, int[] changedColumns, int[] changedValues) {
+        final long[] byRow = new long[count];
+        for (int i = 0; i < count; i++) {
+            byRow[i] = (long) rows[i] << 32 | i;
+        }
+        Arrays.sort(byRow);
+        int changed = 0;
+        long[] byColumn = new long[16];
+        for (int start = 0; start < count; ) {
+            final int row = (int) (byRow[start] >>> 32);
+            int end = start + 1;
+            while (end < count && (int) (byRow[end] >>> 32) == row) {
+                end++;
+            }
+            // the row's batch, by column and then input order
+            final int size = end - start;
+            if (size > byColumn.length) {
+                byColumn = new long[Math.max(size, byColumn.length * 2)];
+            }
+            for (int j = 0; j < size; j++) {
+                final int i = (int) byRow[start + j];
+                byColumn[j] = (long) columns[i] << 32 | i;
+            }
+            Arrays.sort(byColumn, 0, size);
+            final int n = direction.degree(row);
+            if (n + size > mergedNeighbors.length) {
+                mergedNeighbors = new int[Math.max(n + size, mergedNeighbors.length * 2)];
+                mergedWeights = new int[mergedNeighbors.length];
+            }
+            if (n > neighbors.length) {
+                neighbors = new int[Math.max(n, neighbors.length * 2)];
+                weights = new int[neighbors.length];
+            }
+            direction.decode(row, neighbors, weights);
+            int merged = 0;
+            int k = 0;
+            for (int j = 0; j < size; j++) {
+                final int column = (int) (byColumn[j] >>> 32);
+                if (j + 1 < size && (int) (byColumn[j + 1] >>> 32) == column) {
+                    continue; // a later entry for the same place wins
+                }
+                while (k < n && neighbors[k] < column) {
+                    mergedNeighbors[merged] = neighbors[k];
+                    mergedWeights[merged++] = weights[k++];
+                }
+                final int previous = k < n && neighbors[k] == column ? weights[k++] : 0;
+                final int value = values[(int) byColumn[j]];
+                if (value > 0) {
+                    mergedNeighbors[merged] = column;
+                    mergedWeights[merged++] = value;
+                }
+                if (value != previous && changedRows != null) {
+                    changedRows[changed] = column;
+                    changedColumns[changed] = row;
+                    changedValues[changed++] = value;
+                }
+            }
+            while (k < n) {
+                mergedNeighbors[merged] = neighbors[k];
+                mergedWeights[merged++] = weights[k++];
+            }
+            direction.encode(row, mergedNeighbors, mergedWeights, merged);
+            start = end;
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        final Integer present = ids.remove(vertex);
+        if (present == null) {
+            return false;
+        }
+        final int v = present;
+        for (int t : out.decode(v)[0]) {
+            if (t != v) {
+                put(in, t, v, 0);
+            }
+        }
+        for (int s : in.decode(v)[0]) {
+            if (s != v) {
+                put(out, s, v, 0);
+            }
+        }
+        out.encode(v, neighbors, weights, 0);
+        in.encode(v, neighbors, weights, 0);
+        labels.set(v, null);
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = v;
+        checkRep();
+        return true;
+    }
+
+    @Override
+    public Set<L> vertices() {
+        return new HashSet<>(ids.keySet());
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        return neighborsOf(in, target);
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        return neighborsOf(out, source);
+    }
+
+    private Map<L, Integer> neighborsOf(Rows rows, L vertex) {
+        final Integer id = ids.get(vertex);
+        if (id == null) {
+            return new HashMap<>();
+        }
+        final int[][] row = rows.decode(id);
+        final Map<L, Integer> result = new HashMap<>(row[0].length * 4 / 3 + 1);
+        for (int k = 0; k < row[0].length; k++) {
+            result.put(labels.get(row[0][k]), row[1][k]);
+        }
+        return result;
+    }
+
+    /**
+     * Release the unused capacity of the encoded rows, as
+     * {@link ArrayList#trimToSize()} does; useful once a graph is built.
+     */
+    public void trimToSize() {
+        out.compact(true);
+        in.compact(true);
+        checkRep();
+    }
+
+    /**
+     * @return number of bytes allocated for this graph's edges, in both
+     *         directions: the encoded rows and the offset of each row.
+     *         Vertex labels are not included.
+     */
+    public long sizeInBytes() {
+        return out.sizeInBytes() + in.sizeInBytes();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Vertices: ").append(ids.keySet()).append("\n");
+        for (Map.Entry<L, Integer> vertex : ids.entrySet()) {
+            sb.append(vertex.getKey()).append(" -> ").append(targets(vertex.getKey())).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The encoded rows of one direction.
+     */
+    private static final class Rows {
+
+        private static final int EMPTY = -1;
+        private static final int MIN_COMPACTION = 1024;
+
+        private byte[] bytes = new byte[64];
+        private int used = 0;
+        private int stale = 0;
+        private int[] offsets = new int[0];
+
+        // Abstraction function:
+        //   represents the rows 0..offsets.length, where row r is empty if
+        //   offsets[r] == EMPTY and otherwise is encoded in bytes starting at
+        //   offsets[r]: varint n, then n varint gaps (the first id, then each
+        //   id minus the previous id minus 1), then varint pairs (run length,
+        //   weight) whose run lengths sum to n
+        // Representation invariant:
+        //   every encoded row has n >= 1 and lies within bytes[0..used)
+        //   encoded rows do not overlap; stale is the number of bytes in
+        //   bytes[0..used) that belong to no row
+
+        int rowCount() {
+            return offsets.length;
+        }
+
+        void ensureRows(int count) {
+            if (count > offsets.length) {
+                final int old = offsets.length;
+                offsets = Arrays.copyOf(offsets, Math.max(count, old * 2));
+                Arrays.fill(offsets, old, offsets.length, EMPTY);
+            }
+        }
+
+        int degree(int row) {
+            final int offset = offsets[row];
+            return offset == EMPTY ? 0 : (int) readVarint(bytes, offset);
+        }
+
+        /*
+         * Decode a row into fresh arrays of its neighbors and weights.
+         */
+        int[][] decode(int row) {
+            final int n = degree(row);
+            final int[][] result = { new int[n], new int[n] };
+            decode(row, result[0], result[1]);
+            return result;
+        }
+
+        /*
+         * Decode a row into the start of two arrays long enough to hold it.
+         */
+        void decode(int row, int[] neighbors, int[] weights) {
+            final int offset = offsets[row];
+            if (offset == EMPTY) {
+                return;
+            }
+            long read = readVarint(bytes, offset);
+            final int n = (int) read;
+            int position = (int) (read >>> 32);
+            int id = -1;
+            for (int k = 0; k < n; k++) {
+                read = readVarint(bytes, position);
+                id += (int) read + 1;
+                neighbors[k] = id;
+                position = (int) (read >>> 32);
+            }
+            for (int k = 0; k < n; ) {
+                read = readVarint(bytes, position);
+                final int run = (int) read;
+                read = readVarint(bytes, (int) (read >>> 32));
+                Arrays.fill(weights, k, k + run, (int) read);
+                position = (int) (read >>> 32);
+                k += run;
+            }
+        }
+
+        /*
+         * Return the number of bytes in the encoding of a row.
+         */
+        int size(int row) {
+            final int offset = offsets[row];
+            if (offset == EMPTY) {
+                return 0;
+            }
+            long read = readVarint(bytes, offset);
+            final int n = (int) read;
+            int position = (int) (read >>> 32);
+            for (int k = 0; k < n; k++) {
+                while (bytes[position++] < 0) {
+                    // continuation byte
+                }
+            }
+            for (int k = 0; k < n; ) {
+                read = readVarint(bytes, position);
+                k += (int) read;
+                read = readVarint(bytes, (int) (read >>> 32));
+                position = (int) (read >>> 32);
+            }
+            return position - offset;
+        }
+
+        /*
+         * Replace a row with the first n entries of two arrays.
+         */
+        void encode(int row, int[] neighbors, int[] weights, int n) {
+            final int old = offsets[row];
+            final int oldSize = size(row);
+            if (n == 0) {
+                offsets[row] = EMPTY;
+                stale += oldSize;
+                maybeCompact();
+                return;
+            }
+            // encode at the end, then move it into the old place if it fits
+            final int maxSize = 5 * (1 + 3 * n);
+            if (used + maxSize > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(used + maxSize, bytes.length * 2));
+            }
+            int position = writeVarint(bytes, used, n);
+            int previous = -1;
+            for (int k = 0; k < n; k++) {
+                position = writeVarint(bytes, position, neighbors[k] - previous - 1);
+                previous = neighbors[k];
+            }
+            for (int k = 0; k < n; ) {
+                int end = k + 1;
+                while (end < n && weights[end] == weights[k]) {
+                    end++;
+                }
+                position = writeVarint(bytes, position, end - k);
+                position = writeVarint(bytes, position, weights[k]);
+                k = end;
+            }
+            final int size = position - used;
+            if (size <= oldSize) {
+                System.arraycopy(bytes, used, bytes, old, size);
+                stale += oldSize - size;
+            } else {
+                offsets[row] = used;
+                used = position;
+                stale += oldSize;
+            }
+            maybeCompact();
+        }
+
+        private void maybeCompact() {
+            if (stale > MIN_COMPACTION && stale > used / 2) {
+                compact(false);
+            }
+        }
+
+        /*
+         * Copy the rows, in row order, into an array with no stale bytes;
+         * if trim, with no spare capacity either.
+         */
+        void compact(boolean trim) {
+            final int live = used - stale;
+            final byte[] compacted = new byte[trim ? live : Math.max(64, live * 2)];
+            int position = 0;
+            for (int r = 0; r < offsets.length; r++) {
+                final int offset = offsets[r];
+                if (offset != EMPTY) {
+                    final int size = size(r);
+                    System.arraycopy(bytes, offset, compacted, position, size);
+                    offsets[r] = position;
+                    position += size;
+                }
+            }
+            bytes = compacted;
+            used = position;
+            stale = 0;
+        }
+
+        long sizeInBytes() {
+            return bytes.length + 4L * offsets.length;
+        }
+
+        /*
+         * Write value, nonnegative, as a varint; return the next position.
+         */
+        private static int writeVarint(byte[] bytes, int position, int value) {
+            while ((value & ~0x7F) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+            return position;
+        }
+
+        /*
+         * Read a varint; return the next position in the high 32 bits and
+         * the value in the low 32 bits.
+         */
+        private static long readVarint(byte[] bytes, int position) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                final byte b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return ((long) position << 32) | value;
+                }
+            }
+        }
+    }
+}
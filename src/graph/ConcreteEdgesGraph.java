@@ -3,23 +3,28 @@ package graph;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * An implementation of Graph.
+ * 
+ * @param <L> type of vertex labels in this graph, must be immutable
  */
-public class ConcreteEdgesGraph implements Graph<String> {
+public class ConcreteEdgesGraph<L> implements Graph<L> {
     
-    private final Set<String> vertices = new HashSet<>();
-    private final List<Edge> edges = new ArrayList<>();
+    private final Set<L> vertices = new HashSet<>();
+    private final List<Edge<L>> edges = new ArrayList<>();
     
     // Abstraction function:
     //   The graph is represented as a set of vertices and a list of edges between vertices.
     // Representation invariant:
-    //   - vertices is a set of unique vertex strings.
+    //   - vertices is a set of unique vertex labels.
     //   - edges is a list of edges between vertices, each edge has a source, target, and weight.
+    //   - the source and target of every edge are in vertices, every weight
+    //     is positive, and no two edges have the same source and target.
     // Safety from rep exposure:
     //   - vertices is a Set, so it is safe from rep exposure.
     //   - edges is a List, but Edge is immutable, so it is safe from exposure.
@@ -29,27 +34,39 @@ public class ConcreteEdgesGraph implements Graph<String> {
     }
     
     @Override
-    public boolean add(String vertex) {
+    public boolean add(L vertex) {
         return vertices.add(vertex);
     }
     
     @Override
-    public int set(String source, String target, int weight) {
-        // Add or update the edge between source and target
-        for (Edge edge : edges) {
+    public int set(L source, L target, int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must be nonnegative: " + weight);
+        }
+        // Update or remove an existing edge between source and target
+        for (Iterator<Edge<L>> it = edges.iterator(); it.hasNext(); ) {
+            Edge<L> edge = it.next();
             if (edge.getSource().equals(source) && edge.getTarget().equals(target)) {
-                // Update existing edge with new weight
-                edge.setWeight(weight);
-                return weight;
+                int previous = edge.getWeight();
+                if (weight == 0) {
+                    it.remove();
+                } else {
+                    edge.setWeight(weight);
+                }
+                return previous;
             }
         }
-        // If no such edge exists, create a new one
-        edges.add(new Edge(source, target, weight));
-        return weight;
+        // If no such edge exists, create a new one, adding its vertices
+        if (weight > 0) {
+            vertices.add(source);
+            vertices.add(target);
+            edges.add(new Edge<>(source, target, weight));
+        }
+        return 0;
     }
     
     @Override
-    public boolean remove(String vertex) {
+    public boolean remove(L vertex) {
         // Remove the vertex from the set
         boolean removed = vertices.remove(vertex);
         if (removed) {
@@ -60,14 +77,14 @@ public class ConcreteEdgesGraph implements Graph<String> {
     }
     
     @Override
-    public Set<String> vertices() {
+    public Set<L> vertices() {
         return new HashSet<>(vertices);
     }
     
     @Override
-    public Map<String, Integer> sources(String target) {
-        Map<String, Integer> result = new HashMap<>();
-        for (Edge edge : edges) {
+    public Map<L, Integer> sources(L target) {
+        Map<L, Integer> result = new HashMap<>();
+        for (Edge<L> edge : edges) {
             if (edge.getTarget().equals(target)) {
                 result.put(edge.getSource(), edge.getWeight());
             }
@@ -76,9 +93,9 @@ public class ConcreteEdgesGraph implements Graph<String> {
     }
     
     @Override
-    public Map<String, Integer> targets(String source) {
-        Map<String, Integer> result = new HashMap<>();
-        for (Edge edge : edges) {
+    public Map<L, Integer> targets(L source) {
+        Map<L, Integer> result = new HashMap<>();
+        for (Edge<L> edge : edges) {
             if (edge.getSource().equals(source)) {
                 result.put(edge.getTarget(), edge.getWeight());
             }
@@ -91,7 +108,7 @@ public class ConcreteEdgesGraph implements Graph<String> {
         StringBuilder sb = new StringBuilder();
         sb.append("Vertices: ").append(vertices.toString()).append("\n");
         sb.append("Edges: ");
-        for (Edge edge : edges) {
+        for (Edge<L> edge : edges) {
             sb.append(edge.toString()).append(", ");
         }
         return sb.toString();
@@ -100,22 +117,24 @@ public class ConcreteEdgesGraph implements Graph<String> {
 
 /**
  * Internal class to represent an edge in the graph.
+ * 
+ * @param <L> type of vertex labels, must be immutable
  */
-class Edge {
-    private final String source;
-    private final String target;
+class Edge<L> {
+    private final L source;
+    private final L target;
     private int weight;
     
     // Abstraction function:
     //   The edge is represented by a source vertex, target vertex, and a weight.
     // Representation invariant:
-    //   - source and target are non-null strings.
+    //   - source and target are non-null labels.
     //   - weight is a non-negative integer.
     // Safety from rep exposure:
     //   - source and target are immutable, so they cannot be modified from outside.
     //   - weight can be modified, but it is encapsulated within this class.
     
-    public Edge(String source, String target, int weight) {
+    public Edge(L source, L target, int weight) {
         this.source = source;
         this.target = target;
         this.weight = weight;
@@ -129,11 +148,11 @@ class Edge {
         assert weight >= 0 : "weight must be non-negative";
     }
     
-    public String getSource() {
+    public L getSource() {
         return source;
     }
     
-    public String getTarget() {
+    public L getTarget() {
         return target;
     }
     
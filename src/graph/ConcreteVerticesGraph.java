@@ -2,6 +2,7 @@ package graph;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -15,6 +16,8 @@ public class ConcreteVerticesGraph implements Graph<String> {
     //   The graph is represented by a list of vertices, each of which has a list of outgoing edges.
     // Representation invariant:
     //   - vertices is a list of unique Vertex objects.
+    //   - each vertex's edges have that vertex as source, distinct targets
+    //     that are labels of vertices, and positive weights.
     // Safety from rep exposure:
     //   - vertices is a list, and we do not expose this list directly. We return copies of it when needed.
     
@@ -48,23 +51,38 @@ public class ConcreteVerticesGraph implements Graph<String> {
     @Override
     public int set(String source, String target, int weight) {
         checkRep();
-        Vertex src = findVertex(source);
-        Vertex tgt = findVertex(target);
-        
-        if (src == null || tgt == null) {
-            throw new IllegalArgumentException("Source or target vertex not found");
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must be nonnegative: " + weight);
         }
+        Vertex src = findVertex(source);
         
-        // Add or update the edge
-        for (Edge edge : src.edges) {
-            if (edge.target.equals(target)) {
-                int prevWeight = edge.weight;
-                edge.weight = weight;
-                return prevWeight;
+        // Update or remove an existing edge
+        if (src != null) {
+            for (Iterator<Edge> it = src.edges.iterator(); it.hasNext(); ) {
+                Edge edge = it.next();
+                if (edge.target.equals(target)) {
+                    int prevWeight = edge.weight;
+                    if (weight == 0) {
+                        it.remove();
+                    } else {
+                        edge.weight = weight;
+                    }
+                    return prevWeight;
+                }
             }
         }
+        if (weight == 0) {
+            return 0;
+        }
         
-        // If no edge found, create a new one
+        // If no edge found, create a new one, adding its vertices
+        if (src == null) {
+            src = new Vertex(source);
+            vertices.add(src);
+        }
+        if (findVertex(target) == null) {
+            vertices.add(new Vertex(target));
+        }
         src.edges.add(new Edge(source, target, weight));
         return 0;
     }
@@ -0,0 +1,246 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable compressed-sparse-row snapshot of a graph, for whole-graph
+ * analytics on primitive arrays.
+ *
+ * <p>Vertices are numbered 0 to {@link #vertexCount()} - 1. Both out-edges
+ * and in-edges are stored, each as one array of neighbor ids and one of
+ * weights, with every vertex's row sorted by neighbor id.
+ *
+ * @param <L> type of vertex labels, must be immutable
+ */
+public final class CsrGraph<L> {
+
+    private final List<L> labels;
+    private final Map<L, Integer> indices;
+    private final int[] outStart;
+    private final int[] outTarget;
+    private final int[] outWeight;
+    private final int[] inStart;
+    private final int[] inSource;
+    private final int[] inWeight;
+
+    // Abstraction function:
+    //   represents the graph with vertices labels.get(0..n), n = labels.size(),
+    //   and an edge from labels.get(s) to labels.get(outTarget[k]) of weight
+    //   outWeight[k] for every outStart[s] <= k < outStart[s + 1]
+    // Representation invariant:
+    //   indices maps labels.get(i) to i, for every i, and nothing else
+    //   outStart.length == inStart.length == n + 1, both start at 0 and are
+    //   nondecreasing, outStart[n] == inStart[n] == number of edges
+    //   within each row, neighbor ids are strictly increasing and in [0, n)
+    //   the in-edge rows hold exactly the out-edges, transposed
+    //   all weights are positive
+    // Safety from rep exposure:
+    //   all fields are private; labels and indices are never returned and the
+    //   arrays are only read through accessors
+
+    private CsrGraph(List<L> labels, Map<L, Integer> indices, int[] outStart, int[] outTarget, int[] outWeight) {
+        this.labels = labels;
+        this.indices = indices;
+        this.outStart = outStart;
+        this.outTarget = outTarget;
+        this.outWeight = outWeight;
+        final int n = labels.size();
+        this.inStart = new int[n + 1];
+        this.inSource = new int[outTarget.length];
+        this.inWeight = new int[outTarget.length];
+        // one sequential transpose; visiting sources in order keeps in-rows sorted
+        for (int k = 0; k < outTarget.length; k++) {
+            inStart[outTarget[k] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            inStart[v + 1] += inStart[v];
+        }
+        final int[] fill = Arrays.copyOf(inStart, n);
+        for (int s = 0; s < n; s++) {
+            for (int k = outStart[s]; k < outStart[s + 1]; k++) {
+                final int position = fill[outTarget[k]]++;
+                inSource[position] = s;
+                inWeight[position] = outWeight[k];
+            }
+        }
+        checkRep();
+    }
+
+    /**
+     * Take a snapshot of a graph.
+     * Each vertex's targets are read once, in parallel, so graph's observer
+     * methods are called from several threads at once and graph must not be
+     * mutated until this method returns.
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph to copy
+     * @return a snapshot of graph, with vertices numbered in the iteration
+     *         order of graph.vertices()
+     * @throws IllegalArgumentException if graph has more than
+     *         {@link Integer#MAX_VALUE} edges
+     */
+    public static <L> CsrGraph<L> of(Graph<L> graph) {
+        final List<L> labels = new ArrayList<>(graph.vertices());
+        final int n = labels.size();
+        final Map<L, Integer> indices = new HashMap<>(n * 4 / 3 + 1);
+        for (int i = 0; i < n; i++) {
+            indices.put(labels.get(i), i);
+        }
+        // each row as target id in the high bits and weight in the low bits
+        final long[][] rows = new long[n][];
+        IntStream.range(0, n).parallel().forEach(s -> {
+            final Map<L, Integer> targets = graph.targets(labels.get(s));
+            final long[] row = new long[targets.size()];
+            int k = 0;
+            for (Map.Entry<L, Integer> edge : targets.entrySet()) {
+                row[k++] = ((long) indices.get(edge.getKey()) << 32) | (edge.getValue() & 0xFFFFFFFFL);
+            }
+            Arrays.sort(row);
+            rows[s] = row;
+        });
+        final int[] outStart = new int[n + 1];
+        long total = 0;
+        for (int s = 0; s < n; s++) {
+            total += rows[s].length;
+            if (total > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("too many edges for a CsrGraph");
+            }
+            outStart[s + 1] = (int) total;
+        }
+        final int[] outTarget = new int[(int) total];
+        final int[] outWeight = new int[(int) total];
+        IntStream.range(0, n).parallel().forEach(s -> {
+            final long[] row = rows[s];
+            for (int k = 0; k < row.length; k++) {
+                outTarget[outStart[s] + k] = (int) (row[k] >>> 32);
+                outWeight[outStart[s] + k] = (int) row[k];
+            }
+        });
+        return new CsrGraph<>(labels, indices, outStart, outTarget, outWeight);
+    }
+
+    private void checkRep() {
+        assert outStart.length == labels.size() + 1;
+        assert inStart.length == labels.size() + 1;
+        assert outStart[labels.size()] == outTarget.length;
+        assert inStart[labels.size()] == inSource.length;
+        assert indices.size() == labels.size();
+    }
+
+    /**
+     * @return number of vertices
+     */
+    public int vertexCount() {
+        return labels.size();
+    }
+
+    /**
+     * @return number of edges
+     */
+    public int edgeCount() {
+        return outTarget.length;
+    }
+
+    /**
+     * @param vertex a vertex id in [0, vertexCount())
+     * @return label of that vertex
+     */
+    public L label(int vertex) {
+        return labels.get(vertex);
+    }
+
+    /**
+     * @param label a vertex label
+     * @return id of the vertex with that label, or -1 if there is none
+     */
+    public int indexOf(L label) {
+        final Integer index = indices.get(label);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param vertex a vertex id in [0, vertexCount())
+     * @return number of edges from vertex
+     */
+    public int outDegree(int vertex) {
+        return outStart[vertex + 1] - outStart[vertex];
+    }
+
+    /**
+     * @param vertex a vertex id in [0, vertexCount())
+     * @return number of edges to vertex
+     */
+    public int inDegree(int vertex) {
+        return inStart[vertex + 1] - inStart[vertex];
+    }
+
+    /**
+     * @param source a vertex id in [0, vertexCount())
+     * @param target a vertex id in [0, vertexCount())
+     * @return weight of the edge from source to target, or 0 if there is none
+     */
+    public int weight(int source, int target) {
+        final int k = Arrays.binarySearch(outTarget, outStart[source], outStart[source + 1], target);
+        return k < 0 ? 0 : outWeight[k];
+    }
+
+    /**
+     * @param vertex a vertex id
+     * @return position of vertex's first out-edge; its out-edges are at
+     *         positions outStart(vertex) to outStart(vertex + 1) - 1
+     */
+    int outStart(int vertex) {
+        return outStart[vertex];
+    }
+
+    /**
+     * @param k position of an out-edge
+     * @return its target vertex id
+     */
+    int outTarget(int k) {
+        return outTarget[k];
+    }
+
+    /**
+     * @param k position of an out-edge
+     * @return its weight
+     */
+    int outWeight(int k) {
+        return outWeight[k];
+    }
+
+    /**
+     * @param vertex a vertex id
+     * @return position of vertex's first in-edge; its in-edges are at
+     *         positions inStart(vertex) to inStart(vertex + 1) - 1
+     */
+    int inStart(int vertex) {
+        return inStart[vertex];
+    }
+
+    /**
+     * @param k position of an in-edge
+     * @return its source vertex id
+     */
+    int inSource(int k) {
+        return inSource[k];
+    }
+
+    /**
+     * @param k position of an in-edge
+     * @return its weight
+     */
+    int inWeight(int k) {
+        return inWeight[k];
+    }
+
+    @Override
+    public String toString() {
+        return "CsrGraph(" + vertexCount() + " vertices, " + edgeCount() + " edges)";
+    }
+}
@@ -0,0 +1,533 @@
+package graph;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A Graph with String labels that survives process crashes.
+ *
+ * <p>The graph lives in memory, in a {@link PersistentGraph}. Every
+ * mutation that changes it is first appended to a write-ahead log in a
+ * directory and only then applied to memory; mutations that change nothing,
+ * such as setting an edge to the weight it already has, are not logged. Log
+ * records are written in groups: the log is forced to disk once
+ * {@code syncEveryRecords} records are pending, every
+ * {@code syncIntervalMillis} in the background, on {@link #sync()}, and on
+ * {@link #close()}. A mutation is durable once the group containing it has
+ * been forced; with {@code syncEveryRecords == 1} every mutation is durable
+ * before it returns.
+ *
+ * <p>If writing or forcing the log fails, the mutation that failed is not
+ * applied and the graph stops accepting mutations, because the log's tail
+ * is no longer known; reopen the directory to recover what reached disk.
+ *
+ * <p>When the log grows past {@code compactionBytes}, the next mutation
+ * starts a new, empty log and a background thread writes an O(1) snapshot of
+ * the graph as it was at that point to a new snapshot file (a
+ * {@link GraphIO.Format#TSV} edge list), so mutations never wait for a
+ * snapshot to be written. Opening a directory loads the newest complete
+ * snapshot and replays the logs from its generation on, stopping at the
+ * first torn or corrupt record, which is what an interrupted write leaves
+ * behind.
+ *
+ * <p>All methods are synchronized, so one instance may be shared by several
+ * threads. Only one instance may use a directory at a time.
+ */
+public class DurableGraph implements Graph<String>, Closeable {
+
+    private static final byte ADD = 1;
+    private static final byte SET = 2;
+    private static final byte REMOVE = 3;
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1 << 26;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final String SNAPSHOT_PREFIX = "snapshot.";
+    private static final String LOG_PREFIX = "wal.";
+
+    private final Path directory;
+    private final int syncEveryRecords;
+    private final long compactionBytes;
+    private final PersistentGraph<String> graph = new PersistentGraph<>();
+    private final ByteBuffer pending = ByteBuffer.allocate(BUFFER_BYTES);
+    private final CRC32 checksum = new CRC32();
+    private final ScheduledExecutorService flusher;
+    private ExecutorService compactor;
+    private long generation;
+    private FileChannel log;
+    private long logBytes;
+    private int unsyncedRecords = 0;
+    private boolean compacting = false;
+    private IOException failure;
+    private boolean closed = false;
+
+    // Abstraction function:
+    //   represents graph; its durable form is the newest complete
+    //   snapshot.<g> (or the empty graph if there is none) followed by the
+    //   records in wal.<g>, wal.<g + 1>, ..., wal.<generation> and then
+    //   those in pending
+    // Representation invariant:
+    //   log is wal.<generation>, and logBytes == size of log + pending.position()
+    //   unsyncedRecords counts records written since the last force
+    //   at most one snapshot is being written, iff compacting
+    //   after close, log is closed and closed is true
+    // Safety from rep exposure:
+    //   graph is private; observers return the copies made by graph, and
+    //   the compactor only reads an immutable snapshot of it
+
+    /**
+     * Open (or create) a durable graph in a directory.
+     *
+     * @param directory directory holding the snapshot and log; created if missing
+     * @param syncEveryRecords number of records per forced group, at least 1
+     * @param syncIntervalMillis longest time a record may wait to be forced,
+     *                           or 0 to force only by count, sync() and close()
+     * @param compactionBytes log size after which a snapshot is taken
+     * @throws IOException if the directory cannot be read or written
+     */
+    public DurableGraph(Path directory, int syncEveryRecords, long syncIntervalMillis, long compactionBytes)
+            throws IOException {
+        if (syncEveryRecords < 1 || syncIntervalMillis < 0 || compactionBytes < 1) {
+            throw new IllegalArgumentException("need syncEveryRecords >= 1, syncIntervalMillis >= 0, "
+                    + "compactionBytes >= 1");
+        }
+        this.directory = directory;
+        this.syncEveryRecords = syncEveryRecords;
+        this.compactionBytes = compactionBytes;
+        Files.createDirectories(directory);
+        recover();
+        if (syncIntervalMillis > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread t = new Thread(r, "durable-graph-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::backgroundSync, syncIntervalMillis, syncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean add(String vertex) {
+        checkOpen();
+        if (graph.contains(vertex)) {
+            return false;
+        }
+        append(ADD, vertex, null, 0);
+        return graph.add(vertex);
+    }
+
+    @Override
+    public synchronized int set(String source, String target, int weight) {
+        checkOpen();
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must be nonnegative: " + weight);
+        }
+        final int previous = graph.weight(source, target);
+        if (weight == previous) {
+            return previous;
+        }
+        append(SET, source, target, weight);
+        return graph.set(source, target, weight);
+    }
+
+    @Override
+    public synchronized boolean remove(String vertex) {
+        checkOpen();
+        if (!graph.contains(vertex)) {
+            return false;
+        }
+        append(REMOVE, vertex, null, 0);
+        return graph.remove(vertex);
+    }
+
+    @Override
+    public synchronized Set<String> vertices() {
+        return graph.vertices();
+    }
+
+    @Override
+    public synchronized Map<String, Integer> sources(String target) {
+        return graph.sources(target);
+    }
+
+    @Override
+    public synchronized Map<String, Integer> targets(String source) {
+        return graph.targets(source);
+    }
+
+    /**
+     * Force every mutation made so far to disk.
+     *
+     * @throws IOException if the log cannot be written; the graph then
+     *                     stops accepting mutations
+     */
+    public synchronized void sync() throws IOException {
+        checkOpen();
+        try {
+            force();
+        } catch (IOException ioe) {
+            failure = ioe;
+            throw ioe;
+        }
+    }
+
+    /**
+     * Force every mutation to disk, wait for a snapshot being written in the
+     * background, and release the directory. Further mutations and syncs
+     * throw IllegalStateException.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        final ExecutorService running;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            running = compactor;
+            if (flusher != null) {
+                flusher.shutdown();
+            }
+            try {
+                if (failure == null) {
+                    force();
+                }
+            } finally {
+                log.close();
+            }
+        }
+        // outside the lock, since the compactor takes it when it finishes
+        if (running != null) {
+            running.shutdown();
+            try {
+                running.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ie) {
+                // the snapshot is finished or abandoned safely in the background
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DurableGraph(" + directory + ", generation " + generation + ")";
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("graph is closed");
+        }
+        if (failure != null) {
+            throw new IllegalStateException("write-ahead log in " + directory
+                    + " failed; reopen the directory to recover", failure);
+        }
+    }
+
+    private synchronized void backgroundSync() {
+        if (!closed && failure == null && unsyncedRecords > 0) {
+            try {
+                force();
+            } catch (IOException ioe) {
+                // the next foreground mutation or sync() reports the failure
+                failure = ioe;
+            }
+        }
+    }
+
+    /*
+     * Encode one record as [payload length][CRC32 of payload][payload], with
+     * payload = op, label(s) as length-prefixed UTF-8, and weight for SET.
+     * Called before the mutation is applied to graph, and starts a
+     * compaction first if the log is due one, so that the snapshot and the
+     * logs always agree with graph.
+     */
+    private void append(byte op, String first, String second, int weight) {
+        final byte[] firstBytes = first.getBytes(StandardCharsets.UTF_8);
+        final byte[] secondBytes = second == null ? null : second.getBytes(StandardCharsets.UTF_8);
+        final int payloadBytes = 1 + 4 + firstBytes.length
+                + (secondBytes == null ? 0 : 4 + secondBytes.length + 4);
+        try {
+            if (logBytes >= compactionBytes && !compacting) {
+                startCompaction();
+            }
+            if (pending.remaining() < HEADER_BYTES + payloadBytes) {
+                writePending();
+            }
+            final ByteBuffer record = pending.remaining() >= HEADER_BYTES + payloadBytes
+                    ? pending : ByteBuffer.allocate(HEADER_BYTES + payloadBytes);
+            final int start = record.position();
+            record.position(start + HEADER_BYTES);
+            record.put(op).putInt(firstBytes.length).put(firstBytes);
+            if (secondBytes != null) {
+                record.putInt(secondBytes.length).put(secondBytes).putInt(weight);
+            }
+            checksum.reset();
+            checksum.update(record.array(), start + HEADER_BYTES, payloadBytes);
+            record.putInt(start, payloadBytes).putInt(start + 4, (int) checksum.getValue());
+            if (record != pending) {
+                record.flip();
+                writeFully(record);
+            }
+            logBytes += HEADER_BYTES + payloadBytes;
+            if (++unsyncedRecords >= syncEveryRecords) {
+                force();
+            }
+        } catch (IOException ioe) {
+            failure = ioe;
+            throw new UncheckedIOException("cannot append to write-ahead log in " + directory, ioe);
+        }
+    }
+
+    private void writePending() throws IOException {
+        pending.flip();
+        writeFully(pending);
+        pending.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+    }
+
+    private void force() throws IOException {
+        writePending();
+        log.force(false);
+        unsyncedRecords = 0;
+    }
+
+    /*
+     * Start an empty wal.<generation + 1>, then write the graph as it is now
+     * to snapshot.<generation + 1> in the background, and only once that
+     * snapshot is complete delete the older generations, so that a crash at
+     * any point leaves one complete snapshot and every log after it.
+     */
+    private void startCompaction() throws IOException {
+        force();
+        final long next = generation + 1;
+        final FileChannel nextLog = FileChannel.open(directory.resolve(LOG_PREFIX + next),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        nextLog.force(true);
+        forceDirectory();
+        log.close();
+        log = nextLog;
+        logBytes = 0;
+        generation = next;
+        compacting = true;
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor(r -> {
+                final Thread t = new Thread(r, "durable-graph-compactor");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        final PersistentGraph<String> snapshot = graph.snapshot();
+        compactor.execute(() -> writeSnapshot(snapshot, next));
+    }
+
+    private void writeSnapshot(PersistentGraph<String> snapshot, long next) {
+        final Path temporary = directory.resolve(SNAPSHOT_PREFIX + next + ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                GraphIO.writeEdgeList(snapshot, out, GraphIO.Format.TSV);
+                out.force(true);
+            }
+            Files.move(temporary, directory.resolve(SNAPSHOT_PREFIX + next), StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory();
+            deleteGenerationsBefore(next);
+        } catch (IOException | UncheckedIOException failed) {
+            // the logs still hold every mutation since the last complete
+            // snapshot, so the next compaction just tries again
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // recovery deletes leftover temporary files
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    /*
+     * Load the newest complete snapshot and replay wal.<g>, wal.<g + 1>, ...
+     * in order. Replay stops at the first torn or corrupt record: that log is
+     * truncated there and any later log, whose records depend on the lost
+     * ones, is deleted.
+     */
+    private void recover() throws IOException {
+        generation = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*")) {
+            for (Path file : files) {
+                final String suffix = file.getFileName().toString().substring(SNAPSHOT_PREFIX.length());
+                if (suffix.matches("[0-9]+")) {
+                    generation = Math.max(generation, Long.parseLong(suffix));
+                }
+            }
+        }
+        if (generation > 0) {
+            try (FileChannel in = FileChannel.open(directory.resolve(SNAPSHOT_PREFIX + generation))) {
+                GraphIO.readEdgeList(in, GraphIO.Format.TSV, graph);
+            }
+        }
+        final long snapshotGeneration = generation;
+        while (true) {
+            log = FileChannel.open(directory.resolve(LOG_PREFIX + generation),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            final long valid = replay(log);
+            final boolean intact = valid == log.size();
+            if (!intact) {
+                log.truncate(valid);
+                log.force(false);
+            }
+            final Path next = directory.resolve(LOG_PREFIX + (generation + 1));
+            if (intact && Files.exists(next)) {
+                log.close();
+                generation++;
+                continue;
+            }
+            for (long later = generation + 1; Files.deleteIfExists(directory.resolve(LOG_PREFIX + later)); later++) {
+                // discard logs that follow a lost record
+            }
+            log.position(valid);
+            logBytes = valid;
+            break;
+        }
+        deleteGenerationsBefore(snapshotGeneration);
+    }
+
+    /*
+     * Apply every intact record in the log to graph.
+     * Returns the length of the intact prefix of the log.
+     */
+    private long replay(FileChannel in) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        long position = 0;
+        while (true) {
+            header.clear();
+            if (readFully(in, header, position) < HEADER_BYTES) {
+                return position;
+            }
+            final int length = header.getInt(0);
+            final int expected = header.getInt(4);
+            if (length < 1 || length > MAX_RECORD_BYTES) {
+                return position;
+            }
+            final ByteBuffer payload = ByteBuffer.allocate(length);
+            if (readFully(in, payload, position + HEADER_BYTES) < length) {
+                return position;
+            }
+            checksum.reset();
+            checksum.update(payload.array(), 0, length);
+            if ((int) checksum.getValue() != expected || !apply(payload)) {
+                return position;
+            }
+            position += HEADER_BYTES + length;
+        }
+    }
+
+    private static int readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            final int n = in.read(buffer, position + total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        buffer.flip();
+        return total;
+    }
+
+    /*
+     * Apply one record's payload; returns false, without changing graph, if
+     * it is malformed.
+     */
+    private boolean apply(ByteBuffer payload) {
+        final byte op;
+        final String first;
+        String second = null;
+        int weight = 0;
+        try {
+            op = payload.get();
+            first = readLabel(payload);
+            if (op == SET) {
+                second = readLabel(payload);
+                weight = payload.getInt();
+            }
+        } catch (RuntimeException malformed) {
+            return false;
+        }
+        if (payload.hasRemaining()) {
+            return false;
+        }
+        switch (op) {
+        case ADD:
+            graph.add(first);
+            return true;
+        case REMOVE:
+            graph.remove(first);
+            return true;
+        case SET:
+            graph.set(first, second, weight);
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static String readLabel(ByteBuffer payload) {
+        final byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void deleteGenerationsBefore(long keep) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                final String name = file.getFileName().toString();
+                final String prefix = name.startsWith(SNAPSHOT_PREFIX) ? SNAPSHOT_PREFIX
+                        : name.startsWith(LOG_PREFIX) ? LOG_PREFIX : null;
+                if (prefix == null) {
+                    continue;
+                }
+                final String suffix = name.substring(prefix.length());
+                if (suffix.endsWith(".tmp") || suffix.matches("[0-9]+") && Long.parseLong(suffix) < keep) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private void forceDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException unsupported) {
+            // some platforms cannot open or force a directory; the rename is
+            // still ordered after the snapshot's own force
+        }
+    }
+}
@@ -23,10 +23,12 @@ public interface Graph<L> {
      * Create an empty graph.
      * 
      * @param <L> type of vertex labels in the graph, must be immutable
-     * @return a new empty weighted directed graph
+     * @return a new empty weighted directed graph, in which setting an edge
+     *         and finding a vertex's sources or targets take expected O(1)
+     *         time plus the size of the result
      */
     public static <L> Graph<L> empty() {
-        throw new RuntimeException("not implemented");
+        return new HashGraph<>();
     }
     
     /**
@@ -0,0 +1,330 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel whole-graph analytics over {@link CsrGraph} snapshots.
+ *
+ * <p>Every method works on primitive arrays indexed by vertex id and splits
+ * its work across the common fork/join pool. Take the snapshot once with
+ * {@link CsrGraph#of(Graph)} and run as many analyses on it as needed.
+ */
+public final class GraphAnalytics {
+
+    private GraphAnalytics() {
+        // static utility class
+    }
+
+    /**
+     * Count vertices by degree.
+     *
+     * @param graph graph to analyze
+     * @param outgoing true to count out-edges of each vertex, false to count
+     *                 in-edges
+     * @return histogram h where h[d] is the number of vertices of degree d;
+     *         its length is one more than the largest degree (1 for a graph
+     *         with no vertices)
+     */
+    public static long[] degreeDistribution(CsrGraph<?> graph, boolean outgoing) {
+        final int n = graph.vertexCount();
+        final int maxDegree = IntStream.range(0, n).parallel()
+                .map(v -> degree(graph, v, outgoing))
+                .max().orElse(0);
+        return IntStream.range(0, n).parallel().collect(
+                () -> new long[maxDegree + 1],
+                (histogram, v) -> histogram[degree(graph, v, outgoing)]++,
+                (left, right) -> {
+                    for (int d = 0; d <= maxDegree; d++) {
+                        left[d] += right[d];
+                    }
+                });
+    }
+
+    private static int degree(CsrGraph<?> graph, int vertex, boolean outgoing) {
+        return outgoing ? graph.outDegree(vertex) : graph.inDegree(vertex);
+    }
+
+    /**
+     * Compute weighted PageRank by power iteration.
+     * A walker at vertex s follows the edge to t with probability
+     * proportional to its weight, or, with probability 1 - damping (or
+     * always, if s has no out-edges), jumps to a vertex chosen uniformly at
+     * random. Each iteration pulls rank along the in-edges of every vertex in
+     * parallel.
+     *
+     * @param graph graph to analyze
+     * @param damping probability of following an edge, in [0, 1)
+     * @param tolerance stop once the ranks change by less than this in total
+     *                  (L1 norm) over one iteration; must be nonnegative
+     * @param maxIterations maximum number of iterations, at least 1
+     * @return rank of each vertex, indexed by vertex id; the ranks sum to 1
+     *         (up to rounding) unless the graph has no vertices
+     * @throws IllegalArgumentException if damping, tolerance, or
+     *         maxIterations is out of range
+     */
+    public static double[] pageRank(CsrGraph<?> graph, double damping, double tolerance, int maxIterations) {
+        if (!(damping >= 0 && damping < 1)) {
+            throw new IllegalArgumentException("damping must be in [0, 1): " + damping);
+        }
+        if (!(tolerance >= 0) || maxIterations < 1) {
+            throw new IllegalArgumentException("need tolerance >= 0 and maxIterations >= 1");
+        }
+        final int n = graph.vertexCount();
+        if (n == 0) {
+            return new double[0];
+        }
+        final double[] totalWeight = new double[n];
+        IntStream.range(0, n).parallel().forEach(s -> {
+            long total = 0;
+            for (int k = graph.outStart(s); k < graph.outStart(s + 1); k++) {
+                total += graph.outWeight(k);
+            }
+            totalWeight[s] = total;
+        });
+        double[] rank = new double[n];
+        double[] next = new double[n];
+        final double[] share = new double[n];
+        Arrays.fill(rank, 1.0 / n);
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            final double[] current = rank;
+            final double[] updated = next;
+            final double dangling = IntStream.range(0, n).parallel().mapToDouble(s -> {
+                if (totalWeight[s] == 0) {
+                    share[s] = 0;
+                    return current[s];
+                }
+                share[s] = current[s] / totalWeight[s];
+                return 0;
+            }).sum();
+            final double base = (1 - damping + damping * dangling) / n;
+            final double change = IntStream.range(0, n).parallel().mapToDouble(t -> {
+                double pulled = 0;
+                for (int k = graph.inStart(t); k < graph.inStart(t + 1); k++) {
+                    pulled += share[graph.inSource(k)] * graph.inWeight(k);
+                }
+                updated[t] = base + damping * pulled;
+                return Math.abs(updated[t] - current[t]);
+            }).sum();
+            rank = updated;
+            next = current;
+            if (change < tolerance) {
+                break;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Find weakly connected components: maximal sets of vertices joined by
+     * edges followed in either direction. Edges are unioned in parallel into
+     * a lock-free disjoint-set forest.
+     *
+     * @param graph graph to analyze
+     * @return component id of each vertex, indexed by vertex id; ids run from
+     *         0 to (number of components - 1), numbered in order of each
+     *         component's lowest vertex id
+     */
+    public static int[] weaklyConnectedComponents(CsrGraph<?> graph) {
+        final int n = graph.vertexCount();
+        final AtomicIntegerArray parent = new AtomicIntegerArray(n);
+        for (int v = 0; v < n; v++) {
+            parent.set(v, v);
+        }
+        IntStream.range(0, n).parallel().forEach(s -> {
+            for (int k = graph.outStart(s); k < graph.outStart(s + 1); k++) {
+                union(parent, s, graph.outTarget(k));
+            }
+        });
+        final int[] representative = new int[n];
+        IntStream.range(0, n).parallel().forEach(v -> representative[v] = find(parent, v));
+        return numberComponents(representative);
+    }
+
+    /*
+     * Find the root of x, halving the path on the way.
+     */
+    private static int find(AtomicIntegerArray parent, int x) {
+        while (true) {
+            final int p = parent.get(x);
+            if (p == x) {
+                return x;
+            }
+            final int grandparent = parent.get(p);
+            if (grandparent != p) {
+                parent.compareAndSet(x, p, grandparent);
+            }
+            x = grandparent;
+        }
+    }
+
+    /*
+     * Join the sets of a and b, always linking the larger root below the
+     * smaller, so every root is the lowest vertex id in its set.
+     */
+    private static void union(AtomicIntegerArray parent, int a, int b) {
+        while (true) {
+            final int rootA = find(parent, a);
+            final int rootB = find(parent, b);
+            if (rootA == rootB) {
+                return;
+            }
+            final int high = Math.max(rootA, rootB);
+            final int low = Math.min(rootA, rootB);
+            if (parent.compareAndSet(high, high, low)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Find strongly connected components: maximal sets of vertices that can
+     * each reach every other along directed edges. Every strongly connected
+     * component lies within one weakly connected component, so the weak
+     * components are found first and then searched in parallel, each with an
+     * iterative Tarjan search.
+     *
+     * @param graph graph to analyze
+     * @return component id of each vertex, indexed by vertex id; ids run from
+     *         0 to (number of components - 1), numbered in order of each
+     *         component's lowest vertex id
+     */
+    public static int[] stronglyConnectedComponents(CsrGraph<?> graph) {
+        final int n = graph.vertexCount();
+        final int[] weak = weaklyConnectedComponents(graph);
+        int weakCount = 0;
+        for (int v = 0; v < n; v++) {
+            weakCount = Math.max(weakCount, weak[v] + 1);
+        }
+        // group vertices by weak component, in increasing id order
+        final int[] memberStart = new int[weakCount + 1];
+        for (int v = 0; v < n; v++) {
+            memberStart[weak[v] + 1]++;
+        }
+        for (int c = 0; c < weakCount; c++) {
+            memberStart[c + 1] += memberStart[c];
+        }
+        final int[] members = new int[n];
+        final int[] fill = Arrays.copyOf(memberStart, weakCount);
+        for (int v = 0; v < n; v++) {
+            members[fill[weak[v]]++] = v;
+        }
+        // shared by all searches; each touches only its own component's entries
+        final int[] order = new int[n];
+        final int[] low = new int[n];
+        final int[] cursor = new int[n];
+        final boolean[] onStack = new boolean[n];
+        final int[] representative = new int[n];
+        Arrays.fill(order, -1);
+        IntStream.range(0, weakCount).parallel().forEach(c -> tarjan(graph,
+                members, memberStart[c], memberStart[c + 1], order, low, cursor, onStack, representative));
+        return numberComponents(representative);
+    }
+
+    /*
+     * Run Tarjan's algorithm from each of members[from..to), setting
+     * representative[v] to the lowest vertex id in v's strong component.
+     */
+    private static void tarjan(CsrGraph<?> graph, int[] members, int from, int to,
+            int[] order, int[] low, int[] cursor, boolean[] onStack, int[] representative) {
+        final int size = to - from;
+        final int[] callStack = new int[size];
+        final int[] componentStack = new int[size];
+        int calls = 0;
+        int pending = 0;
+        int counter = 0;
+        for (int m = from; m < to; m++) {
+            final int root = members[m];
+            if (order[root] != -1) {
+                continue;
+            }
+            order[root] = low[root] = counter++;
+            cursor[root] = graph.outStart(root);
+            callStack[calls++] = root;
+            componentStack[pending++] = root;
+            onStack[root] = true;
+            while (calls > 0) {
+                final int v = callStack[calls - 1];
+                if (cursor[v] < graph.outStart(v + 1)) {
+                    final int w = graph.outTarget(cursor[v]++);
+                    if (order[w] == -1) {
+                        order[w] = low[w] = counter++;
+                        cursor[w] = graph.outStart(w);
+                        callStack[calls++] = w;
+                        componentStack[pending++] = w;
+                        onStack[w] = true;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                    continue;
+                }
+                calls--;
+                if (calls > 0) {
+                    final int caller = callStack[calls - 1];
+                    low[caller] = Math.min(low[caller], low[v]);
+                }
+                if (low[v] == order[v]) {
+                    int lowest = v;
+                    for (int k = pending - 1; componentStack[k] != v; k--) {
+                        lowest = Math.min(lowest, componentStack[k]);
+                    }
+                    int w;
+                    do {
+                        w = componentStack[--pending];
+                        onStack[w] = false;
+                        representative[w] = lowest;
+                    } while (w != v);
+                }
+            }
+        }
+    }
+
+    /*
+     * Turn representatives (each the lowest vertex id of its component) into
+     * component ids numbered in order of representative.
+     */
+    private static int[] numberComponents(int[] representative) {
+        final int[] component = new int[representative.length];
+        int count = 0;
+        for (int v = 0; v < representative.length; v++) {
+            // the representative is at most v, so it is already numbered
+            component[v] = representative[v] == v ? count++ : component[representative[v]];
+        }
+        return component;
+    }
+
+    /**
+     * Group vertex labels by component.
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph that was analyzed
+     * @param component component id of each vertex, as returned by
+     *                  {@link #weaklyConnectedComponents(CsrGraph)} or
+     *                  {@link #stronglyConnectedComponents(CsrGraph)}
+     * @return list whose i-th element is the set of labels of the vertices in
+     *         component i, each set in increasing vertex id order
+     * @throws IllegalArgumentException if component has the wrong length or
+     *         a negative id
+     */
+    public static <L> List<Set<L>> groupByComponent(CsrGraph<L> graph, int[] component) {
+        if (component.length != graph.vertexCount()) {
+            throw new IllegalArgumentException("need one component id per vertex");
+        }
+        final List<Set<L>> groups = new ArrayList<>();
+        for (int v = 0; v < component.length; v++) {
+            if (component[v] < 0) {
+                throw new IllegalArgumentException("negative component id: " + component[v]);
+            }
+            while (groups.size() <= component[v]) {
+                groups.add(new LinkedHashSet<>());
+            }
+            groups.get(component[v]).add(graph.label(v));
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,534 @@
+package graph;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Streaming import and export of graphs.
+ *
+ * <p>Two formats are supported:
+ * <ul><li> edge lists, one record per line, either tab-separated ({@link Format#TSV})
+ *          or comma-separated ({@link Format#CSV}). A record is either
+ *          {@code source, target, weight} for an edge, or a single
+ *          {@code label} for a vertex with no outgoing edges.
+ *     <li> Graphviz DOT (export only). </ul>
+ *
+ * <p>Exporters encode directly into a fixed-size buffer that is flushed to the
+ * channel whenever it fills, so memory use does not depend on the size of the
+ * graph. They fetch out-edges a block of vertices at a time, in one call to
+ * {@link BatchedGraph#targetsOfAll} when the graph is a {@link BatchedGraph}.
+ * Importers apply a batch of records at a time, with one call to
+ * {@link CompressedGraph#setAll} when the graph is a {@link CompressedGraph}.
+ * Vertex labels are written using {@link String#valueOf(Object)}.
+ * Channels are never closed by this class; that is the caller's job.
+ */
+public final class GraphIO {
+
+    /** Edge list flavours. */
+    public enum Format {
+        /**
+         * Tab-separated; tab, newline, carriage return and backslash are
+         * backslash-escaped, and an empty label is written as {@code \e} so
+         * that its record is not blank.
+         */
+        TSV('\t'),
+        /** Comma-separated; fields are quoted as in RFC 4180 when needed. */
+        CSV(',');
+
+        private final char delimiter;
+
+        private Format(char delimiter) {
+            this.delimiter = delimiter;
+        }
+    }
+
+    private static final int CHAR_BUFFER_SIZE = 8 * 1024;
+    private static final int BYTE_BUFFER_SIZE = 64 * 1024;
+    private static final int IMPORT_BATCH_SIZE = 16 * 1024;
+    private static final int EXPORT_BATCH_SIZE = 4 * 1024;
+
+    private GraphIO() {
+        // static utility class
+    }
+
+    /**
+     * Write a graph as an edge list.
+     *
+     * @param <L> type of vertex labels in the graph
+     * @param graph graph to export
+     * @param out channel to write UTF-8 encoded records to
+     * @param format edge list flavour
+     * @throws IOException if writing to the channel fails
+     */
+    public static <L> void writeEdgeList(Graph<L> graph, WritableByteChannel out, Format format)
+            throws IOException {
+        final ChannelWriter writer = new ChannelWriter(out);
+        forEachRow(graph, (source, targets) -> {
+            final String sourceLabel = String.valueOf(source);
+            if (targets.isEmpty()) {
+                writeField(writer, sourceLabel, format);
+                writer.append('\n');
+                return;
+            }
+            for (Map.Entry<L, Integer> edge : targets.entrySet()) {
+                writeField(writer, sourceLabel, format);
+                writer.append(format.delimiter);
+                writeField(writer, String.valueOf(edge.getKey()), format);
+                writer.append(format.delimiter);
+                writer.append(Integer.toString(edge.getValue()));
+                writer.append('\n');
+            }
+        });
+        writer.flush();
+    }
+
+    /**
+     * Write a graph in Graphviz DOT format, as a {@code digraph} with one
+     * node statement per vertex and one edge statement per edge carrying a
+     * {@code weight} attribute.
+     *
+     * @param <L> type of vertex labels in the graph
+     * @param graph graph to export
+     * @param out channel to write UTF-8 encoded DOT to
+     * @throws IOException if writing to the channel fails
+     */
+    public static <L> void writeDot(Graph<L> graph, WritableByteChannel out) throws IOException {
+        final ChannelWriter writer = new ChannelWriter(out);
+        writer.append("digraph G {\n");
+        forEachRow(graph, (source, targets) -> {
+            final String sourceLabel = String.valueOf(source);
+            writer.append("  ");
+            writeDotId(writer, sourceLabel);
+            writer.append(";\n");
+            for (Map.Entry<L, Integer> edge : targets.entrySet()) {
+                writer.append("  ");
+                writeDotId(writer, sourceLabel);
+                writer.append(" -> ");
+                writeDotId(writer, String.valueOf(edge.getKey()));
+                writer.append(" [weight=");
+                writer.append(Integer.toString(edge.getValue()));
+                writer.append("];\n");
+            }
+        });
+        writer.append("}\n");
+        writer.flush();
+    }
+
+    /** Receives the out-edges of one vertex. */
+    private interface RowWriter<L> {
+        void write(L source, Map<L, Integer> targets) throws IOException;
+    }
+
+    /*
+     * Pass every vertex of a graph and its out-edges to a writer, fetching
+     * the out-edges of EXPORT_BATCH_SIZE vertices at a time from a
+     * BatchedGraph.
+     */
+    private static <L> void forEachRow(Graph<L> graph, RowWriter<L> writer) throws IOException {
+        if (!(graph instanceof BatchedGraph)) {
+            for (L source : graph.vertices()) {
+                writer.write(source, graph.targets(source));
+            }
+            return;
+        }
+        final BatchedGraph<L> batched = (BatchedGraph<L>) graph;
+        final List<L> block = new ArrayList<>(EXPORT_BATCH_SIZE);
+        final Iterator<L> vertices = graph.vertices().iterator();
+        while (vertices.hasNext()) {
+            block.clear();
+            while (vertices.hasNext() && block.size() < EXPORT_BATCH_SIZE) {
+                block.add(vertices.next());
+            }
+            final Map<L, Map<L, Integer>> targets = batched.targetsOfAll(block);
+            for (L source : block) {
+                writer.write(source, targets.get(source));
+            }
+        }
+    }
+
+    /**
+     * Read an edge list into a graph.
+     * Records are read in batches; each batch is parsed in parallel and then
+     * applied to the graph in file order, so the graph itself is only ever
+     * touched from the calling thread. Vertices named by a record are added
+     * before its edge is set; a {@link CompressedGraph} gets each batch's
+     * edges in one {@link CompressedGraph#setAll} call, which has the same
+     * result as setting them one at a time. Records end at a newline, a carriage return, or
+     * both, except inside a quoted CSV field, which keeps its line ends as
+     * they are. Blank lines are ignored.
+     *
+     * @param in channel to read UTF-8 encoded records from
+     * @param format edge list flavour
+     * @param into graph to add the vertices and edges to
+     * @return number of records applied
+     * @throws IOException if reading from the channel fails
+     * @throws IllegalArgumentException if a record is malformed
+     */
+    public static long readEdgeList(ReadableByteChannel in, Format format, Graph<String> into)
+            throws IOException {
+        final RecordReader reader = new RecordReader(
+                Channels.newReader(in, StandardCharsets.UTF_8.newDecoder(), -1), format == Format.CSV);
+        final List<String> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        long recordNumber = 0;
+        long applied = 0;
+        String record;
+        while ((record = reader.next()) != null) {
+            batch.add(record);
+            if (batch.size() == IMPORT_BATCH_SIZE) {
+                applied += applyBatch(batch, format, recordNumber, into);
+                recordNumber += batch.size();
+                batch.clear();
+            }
+        }
+        applied += applyBatch(batch, format, recordNumber, into);
+        return applied;
+    }
+
+    private static long applyBatch(List<String> batch, Format format, long firstRecord, Graph<String> into) {
+        final String[][] parsed = new String[batch.size()][];
+        IntStream.range(0, batch.size()).parallel().forEach(i -> {
+            parsed[i] = parseRecord(batch.get(i), format, firstRecord + i + 1);
+        });
+        if (into instanceof CompressedGraph) {
+            return applyBatch(parsed, (CompressedGraph<String>) into);
+        }
+        long applied = 0;
+        for (String[] fields : parsed) {
+            if (fields == null) {
+                continue;
+            }
+            into.add(fields[0]);
+            if (fields.length == 3) {
+                into.add(fields[1]);
+                into.set(fields[0], fields[1], parseWeight(fields[2]));
+            }
+            applied++;
+        }
+        return applied;
+    }
+
+    /*
+     * Apply parsed records to a CompressedGraph: add their vertices, then set
+     * all their edges at once so that each row is encoded once per batch.
+     */
+    private static long applyBatch(String[][] parsed, CompressedGraph<String> into) {
+        final List<String> sources = new ArrayList<>();
+        final List<String> targets = new ArrayList<>();
+        final int[] weights = new int[parsed.length];
+        long applied = 0;
+        for (String[] fields : parsed) {
+            if (fields == null) {
+                continue;
+            }
+            into.add(fields[0]);
+            if (fields.length == 3) {
+                into.add(fields[1]);
+                weights[sources.size()] = parseWeight(fields[2]);
+                sources.add(fields[0]);
+                targets.add(fields[1]);
+            }
+            applied++;
+        }
+        into.setAll(sources, targets, Arrays.copyOf(weights, sources.size()));
+        return applied;
+    }
+
+    /*
+     * Split a record into 1 (vertex) or 3 (edge) unescaped fields, or return
+     * null for a blank record.
+     */
+    private static String[] parseRecord(String record, Format format, long recordNumber) {
+        if (record.isEmpty()) {
+            return null;
+        }
+        final List<String> fields = new ArrayList<>(3);
+        final StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            i = format == Format.TSV ? readTsvField(record, i, field) : readCsvField(record, i, field, recordNumber);
+            fields.add(field.toString());
+            if (i >= record.length()) {
+                break;
+            }
+            i++; // skip delimiter
+        }
+        if (fields.size() != 1 && fields.size() != 3) {
+            throw new IllegalArgumentException("record " + recordNumber + ": expected 1 or 3 fields, found " + fields.size());
+        }
+        if (fields.size() == 3) {
+            try {
+                if (parseWeight(fields.get(2)) < 0) {
+                    throw new IllegalArgumentException("record " + recordNumber + ": negative weight");
+                }
+            } catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException("record " + recordNumber + ": bad weight " + fields.get(2), nfe);
+            }
+        }
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    private static int parseWeight(String field) {
+        return Integer.parseInt(field.trim());
+    }
+
+    private static int readTsvField(String record, int i, StringBuilder field) {
+        for (; i < record.length(); i++) {
+            final char c = record.charAt(i);
+            if (c == '\t') {
+                return i;
+            }
+            if (c == '\\' && i + 1 < record.length()) {
+                final char escaped = record.charAt(++i);
+                switch (escaped) {
+                case 't': field.append('\t'); break;
+                case 'n': field.append('\n'); break;
+                case 'r': field.append('\r'); break;
+                case 'e': break;
+                default:  field.append(escaped); break;
+                }
+            } else {
+                field.append(c);
+            }
+        }
+        return i;
+    }
+
+    private static int readCsvField(String record, int i, StringBuilder field, long recordNumber) {
+        if (i >= record.length() || record.charAt(i) != '"') {
+            for (; i < record.length() && record.charAt(i) != ','; i++) {
+                field.append(record.charAt(i));
+            }
+            return i;
+        }
+        for (i++; i < record.length(); i++) {
+            final char c = record.charAt(i);
+            if (c == '"') {
+                if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    i++;
+                    if (i < record.length() && record.charAt(i) != ',') {
+                        throw new IllegalArgumentException("record " + recordNumber + ": text after closing quote");
+                    }
+                    return i;
+                }
+            } else {
+                field.append(c);
+            }
+        }
+        throw new IllegalArgumentException("record " + recordNumber + ": unterminated quoted field");
+    }
+
+    private static void writeField(ChannelWriter writer, String label, Format format) throws IOException {
+        if (format == Format.TSV) {
+            if (label.isEmpty()) {
+                writer.append("\\e");
+                return;
+            }
+            for (int i = 0; i < label.length(); i++) {
+                final char c = label.charAt(i);
+                switch (c) {
+                case '\t': writer.append("\\t"); break;
+                case '\n': writer.append("\\n"); break;
+                case '\r': writer.append("\\r"); break;
+                case '\\': writer.append("\\\\"); break;
+                default:   writer.append(c); break;
+                }
+            }
+            return;
+        }
+        boolean quote = label.isEmpty();
+        for (int i = 0; i < label.length() && !quote; i++) {
+            final char c = label.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.append(label);
+            return;
+        }
+        writer.append('"');
+        for (int i = 0; i < label.length(); i++) {
+            final char c = label.charAt(i);
+            if (c == '"') {
+                writer.append('"');
+            }
+            writer.append(c);
+        }
+        writer.append('"');
+    }
+
+    private static void writeDotId(ChannelWriter writer, String label) throws IOException {
+        writer.append('"');
+        for (int i = 0; i < label.length(); i++) {
+            final char c = label.charAt(i);
+            switch (c) {
+            case '"':  writer.append("\\\""); break;
+            case '\\': writer.append("\\\\"); break;
+            case '\n': writer.append("\\n"); break;
+            case '\r': writer.append("\\r"); break;
+            default:   writer.append(c); break;
+            }
+        }
+        writer.append('"');
+    }
+
+    /**
+     * Splits text into records at line ends, one char at a time: a newline,
+     * a carriage return, or a carriage return and newline end a record, as
+     * in {@link java.io.BufferedReader#readLine()}, except inside a quoted
+     * field if quoting.
+     */
+    private static class RecordReader {
+        private final Reader in;
+        private final boolean quoting;
+        private final char[] buffer = new char[CHAR_BUFFER_SIZE];
+        private final StringBuilder record = new StringBuilder();
+        private int position = 0;
+        private int limit = 0;
+
+        // Abstraction function:
+        //   represents the text of in not yet returned, which starts with
+        //   buffer[position..limit)
+        // Representation invariant:
+        //   0 <= position <= limit <= buffer.length
+        // Safety from rep exposure:
+        //   all fields are private and never returned
+
+        RecordReader(Reader in, boolean quoting) {
+            this.in = in;
+            this.quoting = quoting;
+        }
+
+        /*
+         * Return the next record without its line end, or null at the end of
+         * the text.
+         */
+        String next() throws IOException {
+            record.setLength(0);
+            boolean quoted = false;
+            int c;
+            while ((c = read()) >= 0) {
+                if (!quoted && (c == '\n' || c == '\r')) {
+                    if (c == '\r' && peek() == '\n') {
+                        position++;
+                    }
+                    return record.toString();
+                }
+                if (quoting && c == '"') {
+                    quoted = !quoted;
+                }
+                record.append((char) c);
+            }
+            if (quoted) {
+                throw new IllegalArgumentException("unterminated quoted field at end of input");
+            }
+            return record.length() == 0 ? null : record.toString();
+        }
+
+        private int read() throws IOException {
+            return peek() < 0 ? -1 : buffer[position++];
+        }
+
+        private int peek() throws IOException {
+            while (position == limit) {
+                final int n = in.read(buffer, 0, buffer.length);
+                if (n < 0) {
+                    return -1;
+                }
+                position = 0;
+                limit = n;
+            }
+            return buffer[position];
+        }
+    }
+
+    /**
+     * Minimal UTF-8 writer over a channel with bounded buffers.
+     */
+    private static class ChannelWriter {
+        private final WritableByteChannel channel;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+        private final ByteBuffer bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+
+        // Abstraction function:
+        //   represents the text already written to channel, followed by the
+        //   bytes pending in bytes, followed by the chars pending in chars
+        // Representation invariant:
+        //   chars and bytes are in write mode between calls
+        // Safety from rep exposure:
+        //   all fields are private and never returned
+
+        ChannelWriter(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void append(char c) throws IOException {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            chars.put(c);
+        }
+
+        void append(String s) throws IOException {
+            for (int i = 0; i < s.length(); ) {
+                if (!chars.hasRemaining()) {
+                    encode(false);
+                }
+                final int n = Math.min(chars.remaining(), s.length() - i);
+                chars.put(s, i, i + n);
+                i += n;
+            }
+        }
+
+        void flush() throws IOException {
+            encode(true);
+            encoder.reset();
+        }
+
+        private void encode(boolean endOfInput) throws IOException {
+            chars.flip();
+            CoderResult result;
+            while ((result = encoder.encode(chars, bytes, endOfInput)).isOverflow()) {
+                drain();
+            }
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (endOfInput) {
+                while (encoder.flush(bytes).isOverflow()) {
+                    drain();
+                }
+            }
+            // a trailing high surrogate stays in chars until its pair arrives
+            chars.compact();
+            if (endOfInput) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+    }
+}
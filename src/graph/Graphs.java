@@ -0,0 +1,155 @@
+package graph;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Operations on whole graphs.
+ */
+public final class Graphs {
+
+    private Graphs() {
+        // static utility class
+    }
+
+    /**
+     * Compute the weighted union of several graphs.
+     * The result has every vertex of every input graph. The weight of the
+     * edge from s to t in the result is the sum over input graphs i of
+     * {@code weights[i]} times the weight of s -> t in graph i, rounded to the
+     * nearest integer but no less than 1 if the sum is positive, and capped at
+     * {@link Integer#MAX_VALUE}. Edges whose sum is zero are left out.
+     *
+     * <p>Each source vertex is merged independently, in parallel: the
+     * out-edges of that vertex in each input graph are sorted by target and
+     * combined with a single linear merge pass. The input graphs' observer
+     * methods are therefore called from several threads at once, so they must
+     * not be mutated until this method returns. The output graph is only
+     * touched from the calling thread.
+     *
+     * <p>Each input graph is asked for the targets of every vertex of the
+     * union, so with graphs whose {@link Graph#targets(Object) targets} takes
+     * time linear in its result, such as {@link Graph#empty()}, and an output
+     * graph whose {@link Graph#set(Object, Object, int) set} takes O(1) time,
+     * the union takes O(k V + E log d) time for k graphs with V vertices and
+     * E edges in all and out-degree at most d. A list-backed graph such as
+     * {@link ConcreteEdgesGraph}, as input or output, makes it quadratic.
+     *
+     * @param <L> type of vertex labels, must be immutable and comparable
+     * @param graphs graphs to merge
+     * @param weights finite nonnegative weight for each graph, in the same order
+     * @param into graph to add the merged vertices and edges to
+     * @return into
+     * @throws IllegalArgumentException if graphs and weights differ in length,
+     *         or a weight is negative or not finite
+     */
+    public static <L extends Comparable<? super L>> Graph<L> weightedUnion(
+            List<? extends Graph<L>> graphs, double[] weights, Graph<L> into) {
+        checkUnionWeights(graphs.size(), weights);
+        final Set<L> union = new LinkedHashSet<>();
+        for (Graph<L> graph : graphs) {
+            union.addAll(graph.vertices());
+        }
+        final List<L> sources = new ArrayList<>(union);
+        final List<Map.Entry<L, Integer>>[] merged = newEdgeLists(sources.size());
+        IntStream.range(0, sources.size()).parallel().forEach(i -> {
+            merged[i] = mergeOutEdges(sources.get(i), graphs, weights);
+        });
+        for (L vertex : sources) {
+            into.add(vertex);
+        }
+        for (int i = 0; i < sources.size(); i++) {
+            for (Map.Entry<L, Integer> edge : merged[i]) {
+                into.set(sources.get(i), edge.getKey(), edge.getValue());
+            }
+        }
+        return into;
+    }
+
+    /**
+     * Check the weights of a weighted union, as
+     * {@link #weightedUnion(List, double[], Graph)} does.
+     *
+     * @param count number of graphs in the union
+     * @param weights weight of each graph
+     * @throws IllegalArgumentException if weights does not have count
+     *         elements, or a weight is negative or not finite
+     */
+    public static void checkUnionWeights(int count, double[] weights) {
+        if (count != weights.length) {
+            throw new IllegalArgumentException("need one weight per graph");
+        }
+        for (double weight : weights) {
+            if (!(weight >= 0) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("weights must be finite and nonnegative: " + weight);
+            }
+        }
+    }
+
+    /**
+     * Round a weighted sum of edge weights, as
+     * {@link #weightedUnion(List, double[], Graph)} does.
+     *
+     * @param sum nonnegative weighted sum
+     * @return 0 if sum is 0, otherwise sum rounded to the nearest integer,
+     *         but no less than 1 and no more than {@link Integer#MAX_VALUE}
+     */
+    public static int unionWeight(double sum) {
+        return sum > 0 ? (int) Math.min(Integer.MAX_VALUE, Math.max(1, Math.round(sum))) : 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <L> List<Map.Entry<L, Integer>>[] newEdgeLists(int n) {
+        return (List<Map.Entry<L, Integer>>[]) new List<?>[n];
+    }
+
+    /*
+     * Merge the out-edges of source in every graph: sort each graph's
+     * targets, then repeatedly take the smallest head across graphs and sum
+     * the weights of every graph whose head is that target.
+     */
+    private static <L extends Comparable<? super L>> List<Map.Entry<L, Integer>> mergeOutEdges(
+            L source, List<? extends Graph<L>> graphs, double[] weights) {
+        final int k = graphs.size();
+        final List<Map.Entry<L, Integer>>[] rows = newEdgeLists(k);
+        final int[] heads = new int[k];
+        int total = 0;
+        for (int g = 0; g < k; g++) {
+            rows[g] = new ArrayList<>(graphs.get(g).targets(source).entrySet());
+            rows[g].sort(Map.Entry.comparingByKey());
+            total += rows[g].size();
+        }
+        final List<Map.Entry<L, Integer>> result = new ArrayList<>(total);
+        while (true) {
+            L smallest = null;
+            for (int g = 0; g < k; g++) {
+                if (heads[g] < rows[g].size()) {
+                    final L head = rows[g].get(heads[g]).getKey();
+                    if (smallest == null || head.compareTo(smallest) < 0) {
+                        smallest = head;
+                    }
+                }
+            }
+            if (smallest == null) {
+                break;
+            }
+            double sum = 0;
+            for (int g = 0; g < k; g++) {
+                if (heads[g] < rows[g].size() && rows[g].get(heads[g]).getKey().compareTo(smallest) == 0) {
+                    sum += weights[g] * rows[g].get(heads[g]).getValue();
+                    heads[g]++;
+                }
+            }
+            final int weight = unionWeight(sum);
+            if (weight > 0) {
+                result.add(new AbstractMap.SimpleImmutableEntry<>(smallest, weight));
+            }
+        }
+        return result;
+    }
+}
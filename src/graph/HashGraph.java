@@ -0,0 +1,123 @@
+package graph;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A Graph stored as hash maps of out-edges and in-edges for each vertex.
+ *
+ * <p>Adding a vertex, setting an edge and both neighbor queries take
+ * expected O(1) time, plus the size of the result for the queries; removing
+ * a vertex with d edges takes expected O(d) time. This is the graph
+ * {@link Graph#empty()} returns.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class HashGraph<L> implements Graph<L> {
+
+    private final Map<L, Map<L, Integer>> out = new HashMap<>();
+    private final Map<L, Map<L, Integer>> in = new HashMap<>();
+
+    // Abstraction function:
+    //   represents the graph whose vertices are the keys of out, with an
+    //   edge from s to t of weight w for each entry t -> w in out.get(s)
+    // Representation invariant:
+    //   out and in have the same keys
+    //   out.get(s) has t -> w iff in.get(t) has s -> w
+    //   every weight is positive
+    // Safety from rep exposure:
+    //   out, in and their maps are private and never returned; observers
+    //   return fresh copies
+
+    /**
+     * Create an empty graph.
+     */
+    public HashGraph() {
+    }
+
+    private void checkRep() {
+        assert out.keySet().equals(in.keySet());
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        if (out.containsKey(vertex)) {
+            return false;
+        }
+        out.put(vertex, new HashMap<>());
+        in.put(vertex, new HashMap<>());
+        return true;
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must be nonnegative: " + weight);
+        }
+        final Map<L, Integer> targets = out.get(source);
+        final Integer previous = targets == null ? null : targets.get(target);
+        if (weight == 0) {
+            if (previous == null) {
+                return 0;
+            }
+            targets.remove(target);
+            in.get(target).remove(source);
+            return previous;
+        }
+        add(source);
+        add(target);
+        out.get(source).put(target, weight);
+        in.get(target).put(source, weight);
+        return previous == null ? 0 : previous;
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        final Map<L, Integer> targets = out.remove(vertex);
+        if (targets == null) {
+            return false;
+        }
+        final Map<L, Integer> sources = in.remove(vertex);
+        for (L target : targets.keySet()) {
+            if (!target.equals(vertex)) {
+                in.get(target).remove(vertex);
+            }
+        }
+        for (L source : sources.keySet()) {
+            if (!source.equals(vertex)) {
+                out.get(source).remove(vertex);
+            }
+        }
+        checkRep();
+        return true;
+    }
+
+    @Override
+    public Set<L> vertices() {
+        return new HashSet<>(out.keySet());
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        final Map<L, Integer> sources = in.get(target);
+        return sources == null ? new HashMap<>() : new HashMap<>(sources);
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        final Map<L, Integer> targets = out.get(source);
+        return targets == null ? new HashMap<>() : new HashMap<>(targets);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Vertices: ").append(out.keySet()).append("\n");
+        for (Map.Entry<L, Map<L, Integer>> vertex : out.entrySet()) {
+            sb.append(vertex.getKey()).append(" -> ").append(vertex.getValue()).append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,367 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable hash array mapped trie: a map whose updates return a new map
+ * sharing all but O(log n) of its structure with the old one.
+ *
+ * <p>Keys are hashed to 32 bits and consumed 5 bits per trie level. Each
+ * interior node holds a 32-bit bitmap of occupied children and a compact array
+ * of exactly those children, each either an entry or a deeper node. Keys
+ * whose full hashes collide share a collision node at the bottom.
+ *
+ * @param <K> type of keys, must be immutable
+ * @param <V> type of values, must be immutable
+ */
+final class HashTrieMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final HashTrieMap<?, ?> EMPTY = new HashTrieMap<>(null, 0);
+
+    private final BitmapNode root;
+    private final int size;
+
+    // Abstraction function:
+    //   represents the map containing every entry reachable from root
+    //   (the empty map if root is null)
+    // Representation invariant:
+    //   size is the number of entries reachable from root
+    //   every entry is reachable along the path given by its hash; no key
+    //   occurs twice; no non-root node is empty; a non-root bitmap node never
+    //   holds just one entry and nothing else (it is collapsed into its parent)
+    // Safety from rep exposure:
+    //   all nodes are immutable and never returned
+
+    private HashTrieMap(BitmapNode root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @param <K> type of keys
+     * @param <V> type of values
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> HashTrieMap<K, V> empty() {
+        return (HashTrieMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @return number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param key a key
+     * @return the value for key, or null if there is none
+     */
+    V get(Object key) {
+        return get(key, null);
+    }
+
+    /**
+     * @param key a key
+     * @param otherwise value to return if key is absent
+     * @return the value for key, or otherwise if there is none
+     */
+    @SuppressWarnings("unchecked")
+    V get(Object key, V otherwise) {
+        if (root == null) {
+            return otherwise;
+        }
+        final int hash = hash(key);
+        Object node = root;
+        for (int shift = 0; ; shift += BITS) {
+            if (node instanceof BitmapNode) {
+                final BitmapNode bitmapNode = (BitmapNode) node;
+                final int bit = bit(hash, shift);
+                if ((bitmapNode.bitmap & bit) == 0) {
+                    return otherwise;
+                }
+                node = bitmapNode.slots[bitmapNode.index(bit)];
+            } else if (node instanceof Entry) {
+                final Entry entry = (Entry) node;
+                return entry.hash == hash && entry.key.equals(key) ? (V) entry.value : otherwise;
+            } else {
+                final CollisionNode collision = (CollisionNode) node;
+                for (Entry entry : collision.entries) {
+                    if (entry.key.equals(key)) {
+                        return (V) entry.value;
+                    }
+                }
+                return otherwise;
+            }
+        }
+    }
+
+    /**
+     * @param key a key
+     * @param value a non-null value
+     * @return a map with the same entries as this one, except that key maps
+     *         to value
+     */
+    HashTrieMap<K, V> put(K key, V value) {
+        final int hash = hash(key);
+        final int[] added = new int[1];
+        final BitmapNode node = root == null ? BitmapNode.EMPTY_ROOT : root;
+        final Object updated = put(node, 0, new Entry(hash, key, value), added);
+        return updated == node ? this : new HashTrieMap<>((BitmapNode) updated, size + added[0]);
+    }
+
+    /**
+     * @param key a key
+     * @return a map with the same entries as this one, except for any entry
+     *         for key
+     */
+    HashTrieMap<K, V> remove(Object key) {
+        if (root == null) {
+            return this;
+        }
+        final Object updated = remove(root, 0, hash(key), key);
+        if (updated == root) {
+            return this;
+        }
+        if (size == 1) {
+            return empty();
+        }
+        // the root is never collapsed into an entry, see remove()
+        return new HashTrieMap<>((BitmapNode) updated, size - 1);
+    }
+
+    /**
+     * Call action on every entry, in no particular order.
+     *
+     * @param action action to apply to each key and value
+     */
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            forEach(root, action);
+        }
+    }
+
+    /**
+     * @return a new mutable HashMap with the entries of this map
+     */
+    Map<K, V> toMap() {
+        final Map<K, V> map = new HashMap<>(size * 4 / 3 + 1);
+        forEach(map::put);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    private static int hash(Object key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /*
+     * Insert entry below node, at depth shift; return the new node (node
+     * itself if nothing changed) and set added[0] to 1 if the key is new.
+     */
+    private static Object put(Object node, int shift, Entry entry, int[] added) {
+        if (node instanceof BitmapNode) {
+            final BitmapNode bitmapNode = (BitmapNode) node;
+            final int bit = bit(entry.hash, shift);
+            final int index = bitmapNode.index(bit);
+            if ((bitmapNode.bitmap & bit) == 0) {
+                added[0] = 1;
+                return bitmapNode.inserted(bit, index, entry);
+            }
+            final Object child = bitmapNode.slots[index];
+            final Object updated = put(child, shift + BITS, entry, added);
+            return updated == child ? bitmapNode : bitmapNode.replaced(index, updated);
+        }
+        if (node instanceof Entry) {
+            final Entry existing = (Entry) node;
+            if (existing.hash == entry.hash && existing.key.equals(entry.key)) {
+                return existing.value.equals(entry.value) ? existing : entry;
+            }
+            added[0] = 1;
+            if (existing.hash == entry.hash) {
+                return new CollisionNode(new Entry[] { existing, entry });
+            }
+            return BitmapNode.of(shift, existing, existing.hash, entry, entry.hash);
+        }
+        final CollisionNode collision = (CollisionNode) node;
+        if (collision.hash != entry.hash) {
+            added[0] = 1;
+            return BitmapNode.of(shift, collision, collision.hash, entry, entry.hash);
+        }
+        for (int i = 0; i < collision.entries.length; i++) {
+            if (collision.entries[i].key.equals(entry.key)) {
+                if (collision.entries[i].value.equals(entry.value)) {
+                    return collision;
+                }
+                final Entry[] entries = collision.entries.clone();
+                entries[i] = entry;
+                return new CollisionNode(entries);
+            }
+        }
+        added[0] = 1;
+        final Entry[] entries = Arrays.copyOf(collision.entries, collision.entries.length + 1);
+        entries[entries.length - 1] = entry;
+        return new CollisionNode(entries);
+    }
+
+    /*
+     * Remove key from below node, at depth shift; return the new node (node
+     * itself if key is absent), null if nothing is left, or a lone Entry to
+     * be pulled up into the parent. The root (shift 0) stays a BitmapNode.
+     */
+    private static Object remove(Object node, int shift, int hash, Object key) {
+        if (node instanceof Entry) {
+            final Entry entry = (Entry) node;
+            return entry.hash == hash && entry.key.equals(key) ? null : entry;
+        }
+        if (node instanceof CollisionNode) {
+            final CollisionNode collision = (CollisionNode) node;
+            for (int i = 0; i < collision.entries.length; i++) {
+                if (collision.entries[i].key.equals(key)) {
+                    if (collision.entries.length == 2) {
+                        return collision.entries[1 - i];
+                    }
+                    final Entry[] entries = new Entry[collision.entries.length - 1];
+                    System.arraycopy(collision.entries, 0, entries, 0, i);
+                    System.arraycopy(collision.entries, i + 1, entries, i, entries.length - i);
+                    return new CollisionNode(entries);
+                }
+            }
+            return collision;
+        }
+        final BitmapNode bitmapNode = (BitmapNode) node;
+        final int bit = bit(hash, shift);
+        if ((bitmapNode.bitmap & bit) == 0) {
+            return bitmapNode;
+        }
+        final int index = bitmapNode.index(bit);
+        final Object child = bitmapNode.slots[index];
+        final Object updated = remove(child, shift + BITS, hash, key);
+        if (updated == child) {
+            return bitmapNode;
+        }
+        final BitmapNode result = updated == null
+                ? bitmapNode.removed(bit, index)
+                : bitmapNode.replaced(index, updated);
+        if (shift > 0) {
+            if (result.slots.length == 0) {
+                return null;
+            }
+            if (result.slots.length == 1 && result.slots[0] instanceof Entry) {
+                return result.slots[0];
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> void forEach(Object node, BiConsumer<? super K, ? super V> action) {
+        if (node instanceof Entry) {
+            final Entry entry = (Entry) node;
+            action.accept((K) entry.key, (V) entry.value);
+        } else if (node instanceof CollisionNode) {
+            for (Entry entry : ((CollisionNode) node).entries) {
+                action.accept((K) entry.key, (V) entry.value);
+            }
+        } else {
+            for (Object child : ((BitmapNode) node).slots) {
+                forEach(child, action);
+            }
+        }
+    }
+
+    /** An immutable key-value pair with its cached hash. */
+    private static final class Entry {
+        final int hash;
+        final Object key;
+        final Object value;
+
+        Entry(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /** An immutable interior node. */
+    private static final class BitmapNode {
+        static final BitmapNode EMPTY_ROOT = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        /*
+         * A node at depth shift holding two children (entries or collision
+         * nodes) with different hashes.
+         */
+        static Object of(int shift, Object first, int firstHash, Object second, int secondHash) {
+            final int firstBit = bit(firstHash, shift);
+            final int secondBit = bit(secondHash, shift);
+            if (firstBit == secondBit) {
+                return new BitmapNode(firstBit, new Object[] {
+                    of(shift + BITS, first, firstHash, second, secondHash) });
+            }
+            // bit 31 is negative, so compare as unsigned
+            return Integer.compareUnsigned(firstBit, secondBit) < 0
+                    ? new BitmapNode(firstBit | secondBit, new Object[] { first, second })
+                    : new BitmapNode(firstBit | secondBit, new Object[] { second, first });
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        BitmapNode inserted(int bit, int index, Object child) {
+            final Object[] updated = new Object[slots.length + 1];
+            System.arraycopy(slots, 0, updated, 0, index);
+            updated[index] = child;
+            System.arraycopy(slots, index, updated, index + 1, slots.length - index);
+            return new BitmapNode(bitmap | bit, updated);
+        }
+
+        BitmapNode replaced(int index, Object child) {
+            final Object[] updated = slots.clone();
+            updated[index] = child;
+            return new BitmapNode(bitmap, updated);
+        }
+
+        BitmapNode removed(int bit, int index) {
+            final Object[] updated = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, updated, 0, index);
+            System.arraycopy(slots, index + 1, updated, index, updated.length - index);
+            return new BitmapNode(bitmap & ~bit, updated);
+        }
+    }
+
+    /** An immutable bottom node for entries whose hashes are all equal. */
+    private static final class CollisionNode {
+        final int hash;
+        final Entry[] entries;
+
+        CollisionNode(Entry[] entries) {
+            this.hash = entries[0].hash;
+            this.entries = entries;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package graph;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A Graph built from persistent hash tries, with O(1) snapshots.
+ *
+ * <p>Every vertex maps to its out-edges and in-edges, each an immutable
+ * {@link HashTrieMap}. A mutation builds new tries that share all but
+ * O(log n) nodes with the old ones and then publishes them with a single
+ * volatile write, so {@link #snapshot()} only has to copy one reference.
+ * Setting an edge costs O(log n); removing a vertex costs O(d log n) for a
+ * vertex with d edges.
+ *
+ * <p>Mutators are synchronized. Observers take no locks and always see
+ * the graph as it was after some complete mutation, so any number of reader
+ * threads may use a PersistentGraph, or its snapshots, while one writer keeps
+ * mutating it.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class PersistentGraph<L> implements Graph<L> {
+
+    private volatile HashTrieMap<L, Adjacency<L>> vertices;
+
+    // Abstraction function:
+    //   represents the graph whose vertices are the keys of vertices, with an
+    //   edge from s to t of weight w for each entry t -> w in
+    //   vertices.get(s).out
+    // Representation invariant:
+    //   for all s, t: vertices.get(s).out has t -> w iff
+    //     vertices.get(t).in has s -> w
+    //   every weight is positive
+    // Safety from rep exposure:
+    //   the tries are immutable and never returned; observers return fresh
+    //   mutable copies
+
+    /**
+     * Create an empty graph.
+     */
+    public PersistentGraph() {
+        this(HashTrieMap.<L, Adjacency<L>>empty());
+    }
+
+    private PersistentGraph(HashTrieMap<L, Adjacency<L>> vertices) {
+        this.vertices = vertices;
+    }
+
+    /**
+     * Take a snapshot in O(1) time.
+     *
+     * @return a new graph equal to this one; later mutations of either
+     *         graph do not affect the other
+     */
+    public PersistentGraph<L> snapshot() {
+        return new PersistentGraph<>(vertices);
+    }
+
+    @Override
+    public synchronized boolean add(L vertex) {
+        final HashTrieMap<L, Adjacency<L>> current = vertices;
+        if (current.get(vertex) != null) {
+            return false;
+        }
+        vertices = current.put(vertex, Adjacency.<L>empty());
+        return true;
+    }
+
+    @Override
+    public synchronized int set(L source, L target, int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must be nonnegative: " + weight);
+        }
+        HashTrieMap<L, Adjacency<L>> current = vertices;
+        final Adjacency<L> sourceEdges = current.get(source);
+        final int previous = sourceEdges == null ? 0 : sourceEdges.out.get(target, 0);
+        if (weight == previous) {
+            return previous;
+        }
+        final Adjacency<L> from = sourceEdges == null ? Adjacency.<L>empty() : sourceEdges;
+        current = current.put(source, weight == 0
+                ? from.withOut(from.out.remove(target))
+                : from.withOut(from.out.put(target, weight)));
+        // re-read target: it is the updated source when source equals target
+        final Adjacency<L> targetEdges = current.get(target);
+        final Adjacency<L> to = targetEdges == null ? Adjacency.<L>empty() : targetEdges;
+        current = current.put(target, weight == 0
+                ? to.withIn(to.in.remove(source))
+                : to.withIn(to.in.put(source, weight)));
+        vertices = current;
+        return previous;
+    }
+
+    @Override
+    public synchronized boolean remove(L vertex) {
+        HashTrieMap<L, Adjacency<L>> current = vertices;
+        final Adjacency<L> edges = current.get(vertex);
+        if (edges == null) {
+            return false;
+        }
+        final HashTrieMap<L, Adjacency<L>>[] updated = newHolder(current);
+        edges.out.forEach((target, weight) -> {
+            if (!target.equals(vertex)) {
+                final Adjacency<L> to = updated[0].get(target);
+                updated[0] = updated[0].put(target, to.withIn(to.in.remove(vertex)));
+            }
+        });
+        edges.in.forEach((source, weight) -> {
+            if (!source.equals(vertex)) {
+                final Adjacency<L> from = updated[0].get(source);
+                updated[0] = updated[0].put(source, from.withOut(from.out.remove(vertex)));
+            }
+        });
+        vertices = updated[0].remove(vertex);
+        return true;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <L> HashTrieMap<L, Adjacency<L>>[] newHolder(HashTrieMap<L, Adjacency<L>> value) {
+        return new HashTrieMap[] { value };
+    }
+
+    /**
+     * @param vertex label to look for
+     * @return true iff vertex is in this graph, in O(log n) time
+     */
+    boolean contains(L vertex) {
+        return vertices.get(vertex) != null;
+    }
+
+    /**
+     * @param source label of the source vertex
+     * @param target label of the target vertex
+     * @return weight of the edge from source to target, or 0 if there is no
+     *         such edge, in O(log n) time
+     */
+    int weight(L source, L target) {
+        final Adjacency<L> edges = vertices.get(source);
+        return edges == null ? 0 : edges.out.get(target, 0);
+    }
+
+    @Override
+    public Set<L> vertices() {
+        final HashTrieMap<L, Adjacency<L>> current = vertices;
+        final Set<L> result = new HashSet<>(current.size() * 4 / 3 + 1);
+        current.forEach((vertex, edges) -> result.add(vertex));
+        return result;
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        final Adjacency<L> edges = vertices.get(target);
+        return edges == null ? new HashMap<L, Integer>() : edges.in.toMap();
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        final Adjacency<L> edges = vertices.get(source);
+        return edges == null ? new HashMap<L, Integer>() : edges.out.toMap();
+    }
+
+    @Override
+    public String toString() {
+        final HashTrieMap<L, Adjacency<L>> current = vertices;
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Vertices: ").append(vertices()).append("\n");
+        current.forEach((vertex, edges) -> sb.append(vertex).append(" -> ").append(edges.out).append("\n"));
+        return sb.toString();
+    }
+
+    /**
+     * Immutable out-edges and in-edges of one vertex.
+     */
+    private static final class Adjacency<L> {
+        private static final Adjacency<Object> EMPTY =
+                new Adjacency<>(HashTrieMap.<Object, Integer>empty(), HashTrieMap.<Object, Integer>empty());
+
+        private final HashTrieMap<L, Integer> out;
+        private final HashTrieMap<L, Integer> in;
+
+        private Adjacency(HashTrieMap<L, Integer> out, HashTrieMap<L, Integer> in) {
+            this.out = out;
+            this.in = in;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <L> Adjacency<L> empty() {
+            return (Adjacency<L>) EMPTY;
+        }
+
+        Adjacency<L> withOut(HashTrieMap<L, Integer> newOut) {
+            return newOut == out ? this : new Adjacency<>(newOut, in);
+        }
+
+        Adjacency<L> withIn(HashTrieMap<L, Integer> newIn) {
+            return newIn == in ? this : new Adjacency<>(out, newIn);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A Graph of strings kept by a {@link ShardServer}, usually in another
+ * process, reached over one TCP connection.
+ *
+ * <p>Every method is one request and response. Calls are synchronized, so
+ * threads sharing a RemoteGraph take turns; failures of the connection are
+ * thrown as {@link UncheckedIOException}, and exceptions the served graph
+ * throws come back as {@link IllegalArgumentException} if they were one, or
+ * as {@link IllegalStateException} otherwise, without closing the
+ * connection. A failed call may have left a
+ * request or response half sent, so the connection is then closed, and the
+ * next call opens a new one. The failed call is not retried, since the
+ * server may already have applied it.
+ */
+public class RemoteGraph implements BatchedGraph<String>, Closeable {
+
+    private final InetSocketAddress address;
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+    private boolean closed = false;
+
+    // Abstraction function:
+    //   represents the graph served at address
+    // Representation invariant:
+    //   socket is null, between a failed call and the next one, or connected
+    //   to address, with in and out its streams
+    //   if closed, socket is null
+    // Safety from rep exposure:
+    //   all fields are private and never returned; observers return maps and
+    //   sets freshly read from the connection
+
+    /**
+     * Connect to a shard server.
+     *
+     * @param address resolved address the server listens on
+     * @throws UnknownHostException if address is unresolved
+     * @throws IOException if the connection cannot be made
+     */
+    public RemoteGraph(InetSocketAddress address) throws IOException {
+        if (address.isUnresolved()) {
+            throw new UnknownHostException("unresolved shard address: " + address);
+        }
+        this.address = address;
+        connect();
+    }
+
+    private void connect() throws IOException {
+        if (socket != null) {
+            return;
+        }
+        if (closed) {
+            throw new IOException("connection to " + address + " is closed");
+        }
+        final Socket connection = new Socket();
+        try {
+            connection.connect(address);
+            connection.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+        } catch (IOException ioe) {
+            connection.close();
+            throw ioe;
+        }
+        socket = connection;
+    }
+
+    /*
+     * Drop a connection whose stream position is no longer known.
+     */
+    private UncheckedIOException disconnect(IOException cause) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // the connection is being abandoned anyway
+            }
+            socket = null;
+        }
+        return new UncheckedIOException("request to shard at " + address + " failed", cause);
+    }
+
+    @Override
+    public synchronized boolean add(String vertex) {
+        try {
+            connect();
+            out.writeByte(ShardProtocol.ADD);
+            ShardProtocol.writeLabel(out, vertex);
+            await();
+            return in.readBoolean();
+        } catch (IOException ioe) {
+            throw disconnect(ioe);
+        }
+    }
+
+    @Override
+    public synchronized int set(String source, String target, int weight) {
+        try {
+            connect();
+            out.writeByte(ShardProtocol.SET);
+            ShardProtocol.writeLabel(out, source);
+            ShardProtocol.writeLabel(out, target);
+            out.writeInt(weight);
+            await();
+            return in.readInt();
+        } catch (IOException ioe) {
+            throw disconnect(ioe);
+        }
+    }
+
+    @Override
+    public synchronized boolean remove(String vertex) {
+        try {
+            connect();
+            out.writeByte(ShardProtocol.REMOVE);
+            ShardProtocol.writeLabel(out, vertex);
+            await();
+            return in.readBoolean();
+        } catch (IOException ioe) {
+            throw disconnect(ioe);
+        }
+    }
+
+    @Override
+    public synchronized Set<String> vertices() {
+        try {
+            connect();
+            out.writeByte(ShardProtocol.VERTICES);
+            await();
+            final int count = ShardProtocol.readCount(in);
+            final Set<String> vertices = new HashSet<>(Math.min(count, ShardProtocol.INITIAL_CAPACITY) * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                vertices.add(ShardProtocol.readLabel(in));
+            }
+            return vertices;
+        } catch (IOException ioe) {
+            throw disconnect(ioe);
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Integer> sources(String target) {
+        return edges(ShardProtocol.SOURCES, target);
+    }
+
+    @Override
+    public synchronized Map<String, Integer> targets(String source) {
+        return edges(ShardProtocol.TARGETS, source);
+    }
+
+    private Map<String, Integer> edges(byte operation, String vertex) {
+        try {
+            connect();
+            out.writeByte(operation);
+            ShardProtocol.writeLabel(out, vertex);
+            await();
+            return ShardProtocol.readEdges(in);
+        } catch (IOException ioe) {
+            throw disconnect(ioe);
+        }
+    }
+
+    /**
+     * Get the targets of several sources in a single request.
+     *
+     * @param sources labels
+     * @return a map from each label in sources to its targets, as from
+     *         {@link #targets(String)}
+     */
+    @Override
+    public synchronized Map<String, Map<String, Integer>> targetsOfAll(Collection<? extends String> sources) {
+        final List<String> order = new ArrayList<>(sources);
+        try {
+            connect();
+            out.writeByte(ShardProtocol.TARGETS_OF_ALL);
+            out.writeInt(order.size());
+            for (String source : order) {
+                ShardProtocol.writeLabel(out, source);
+            }
+            await();
+            final Map<String, Map<String, Integer>> result = new HashMap<>(order.size() * 4 / 3 + 1);
+            for (String source : order) {
+                result.put(source, ShardProtocol.readEdges(in));
+            }
+            return result;
+        } catch (IOException ioe) {
+            throw disconnect(ioe);
+        }
+    }
+
+    /*
+     * Send the buffered request and read the response status.
+     */
+    private void await() throws IOException {
+        out.flush();
+        final byte status = in.readByte();
+        if (status == ShardProtocol.BAD_REQUEST) {
+            throw new IllegalArgumentException(ShardProtocol.readLabel(in));
+        }
+        if (status == ShardProtocol.FAILED) {
+            throw new IllegalStateException("shard at " + address + " failed: " + ShardProtocol.readLabel(in));
+        }
+        if (status != ShardProtocol.OK) {
+            throw new IOException("unknown response status " + status);
+        }
+    }
+
+    /**
+     * Close the connection. The server and its graph are not affected.
+     *
+     * @throws IOException if closing the socket fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (socket != null) {
+            final Socket connection = socket;
+            socket = null;
+            connection.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteGraph(" + address + ")";
+    }
+}
@@ -0,0 +1,88 @@
+package graph;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The wire format shared by {@link ShardServer} and {@link RemoteGraph}.
+ *
+ * <p>A request is an operation code followed by its arguments; a response is
+ * a status byte followed by either the result or an error message. Labels
+ * are written as a length and UTF-8 bytes, and maps of edges as a count and
+ * then a label and weight per edge. Requests on one connection are answered
+ * in order. Lengths and counts come from the peer, so readers check them
+ * before allocating: a negative count or a label longer than
+ * {@link #MAX_LABEL_BYTES} is a protocol error, and collections of a claimed
+ * size grow as their elements arrive rather than being allocated up front.
+ */
+final class ShardProtocol {
+
+    static final byte ADD = 1;
+    static final byte SET = 2;
+    static final byte REMOVE = 3;
+    static final byte VERTICES = 4;
+    static final byte SOURCES = 5;
+    static final byte TARGETS = 6;
+    static final byte TARGETS_OF_ALL = 7;
+
+    static final byte OK = 0;
+    static final byte BAD_REQUEST = 1;
+    static final byte FAILED = 2;
+
+    static final int MAX_LABEL_BYTES = 1 << 24;
+    // largest collection allocated before its elements are read
+    static final int INITIAL_CAPACITY = 1024;
+
+    private ShardProtocol() {
+        // static utility class
+    }
+
+    static void writeLabel(DataOutputStream out, String label) throws IOException {
+        final byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_LABEL_BYTES) {
+            throw new IOException("label of " + bytes.length + " bytes is too long to send");
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readLabel(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > MAX_LABEL_BYTES) {
+            throw new IOException("bad label length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeEdges(DataOutputStream out, Map<String, Integer> edges) throws IOException {
+        out.writeInt(edges.size());
+        for (Map.Entry<String, Integer> edge : edges.entrySet()) {
+            writeLabel(out, edge.getKey());
+            out.writeInt(edge.getValue());
+        }
+    }
+
+    static int readCount(DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("bad count " + count);
+        }
+        return count;
+    }
+
+    static Map<String, Integer> readEdges(DataInputStream in) throws IOException {
+        final int count = readCount(in);
+        final Map<String, Integer> edges = new HashMap<>(Math.min(count, INITIAL_CAPACITY) * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            final String label = readLabel(in);
+            edges.put(label, in.readInt());
+        }
+        return edges;
+    }
+}
@@ -0,0 +1,279 @@
+package graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Serves one Graph of strings to {@link RemoteGraph} clients over TCP, so a
+ * {@link ShardedGraph} can keep its shards in other processes.
+ *
+ * <p>Each connection is handled by its own thread and its requests are
+ * answered in order. The graph is shared by all connections, so it must be
+ * safe for concurrent use, like {@link PersistentGraph} or
+ * {@link DurableGraph}.
+ *
+ * <p>An exception thrown by the graph is sent back to the client as an error
+ * response, and the connection stays open. A connection that fails, or that
+ * breaks the protocol, is closed and the failure is passed to the server's
+ * failure handler.
+ */
+public class ShardServer {
+
+    private final Graph<String> graph;
+    private final Consumer<? super IOException> onFailure;
+    private final ServerSocket serverSocket;
+    private final Map<Socket, Thread> connections = new ConcurrentHashMap<>();
+    private final Thread acceptor;
+
+    // Abstraction function:
+    //   represents a service answering graph requests about graph, from
+    //   clients connected to serverSocket
+    // Representation invariant:
+    //   connections maps the open client sockets to the threads serving them
+    // Safety from rep exposure:
+    //   all fields are private; graph is owned by the caller, who must not use
+    //   it except through this server while it runs; onFailure only receives
+    //   exceptions
+
+    /**
+     * Create a server that ignores failed connections; call {@link #start()}
+     * to begin accepting clients.
+     *
+     * @param graph graph to serve, safe for concurrent use
+     * @param address address to listen on; port 0 picks a free port
+     * @throws IOException if the address cannot be bound
+     */
+    public ShardServer(Graph<String> graph, InetSocketAddress address) throws IOException {
+        this(graph, address, failure -> { });
+    }
+
+    /**
+     * Create a server; call {@link #start()} to begin accepting clients.
+     *
+     * @param graph graph to serve, safe for concurrent use
+     * @param address address to listen on; port 0 picks a free port
+     * @param onFailure called with the cause whenever a connection is closed
+     *                  because it failed or broke the protocol, from that
+     *                  connection's thread; not called for connections that
+     *                  clients close or that {@link #stop()} closes
+     * @throws IOException if the address cannot be bound
+     */
+    public ShardServer(Graph<String> graph, InetSocketAddress address, Consumer<? super IOException> onFailure)
+            throws IOException {
+        this.graph = graph;
+        this.onFailure = onFailure;
+        this.serverSocket = new ServerSocket();
+        // a restarted server may take the port of connections still closing
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+        this.acceptor = new Thread(this::acceptClients, "shard-server-" + serverSocket.getLocalPort());
+        acceptor.setDaemon(true);
+    }
+
+    /**
+     * Start accepting clients in the background.
+     */
+    public void start() {
+        acceptor.start();
+    }
+
+    /**
+     * Stop accepting clients, close every open connection, and wait for the
+     * threads serving them to end. When this returns the address is no longer
+     * in use, so a new server may bind it.
+     *
+     * @throws IOException if the listening socket cannot be closed
+     */
+    public void stop() throws IOException {
+        serverSocket.close();
+        // a socket closed while a thread is blocked on it is only released
+        // once that thread returns, and accepted sockets hold the port too
+        boolean interrupted = awaitThread(acceptor);
+        for (Map.Entry<Socket, Thread> connection : connections.entrySet()) {
+            connection.getKey().close();
+            interrupted |= awaitThread(connection.getValue());
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Wait for a thread to end, and return whether this one was interrupted
+     * meanwhile.
+     */
+    private static boolean awaitThread(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        return interrupted;
+    }
+
+    /**
+     * @return address this server listens on
+     */
+    public InetSocketAddress address() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    private void acceptClients() {
+        while (!serverSocket.isClosed()) {
+            final Socket connection;
+            try {
+                connection = serverSocket.accept();
+            } catch (IOException ioe) {
+                return; // stopped
+            }
+            final Thread handler = new Thread(() -> serve(connection), "shard-connection-" + connection.getPort());
+            handler.setDaemon(true);
+            connections.put(connection, handler);
+            handler.start();
+        }
+    }
+
+    private void serve(Socket connection) {
+        try (Socket socket = connection;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            socket.setTcpNoDelay(true);
+            while (true) {
+                final byte operation;
+                try {
+                    operation = in.readByte();
+                } catch (EOFException eof) {
+                    return; // client closed the connection
+                }
+                answer(operation, in, out);
+                out.flush();
+            }
+        } catch (SocketException se) {
+            // connection reset, or closed by stop()
+        } catch (IOException ioe) {
+            onFailure.accept(ioe);
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    /*
+     * Read a request and write its response. Each operation reads all of its
+     * arguments and asks the graph before writing anything, so an exception
+     * from the graph can still be answered with an error response.
+     */
+    private void answer(byte operation, DataInputStream in, DataOutputStream out) throws IOException {
+        try {
+            respond(operation, in, out);
+        } catch (RuntimeException re) {
+            out.writeByte(re instanceof IllegalArgumentException ? ShardProtocol.BAD_REQUEST : ShardProtocol.FAILED);
+            ShardProtocol.writeLabel(out, String.valueOf(re.getMessage()));
+        }
+    }
+
+    private void respond(byte operation, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (operation) {
+        case ShardProtocol.ADD: {
+            final boolean added = graph.add(ShardProtocol.readLabel(in));
+            out.writeByte(ShardProtocol.OK);
+            out.writeBoolean(added);
+            return;
+        }
+        case ShardProtocol.SET: {
+            final String source = ShardProtocol.readLabel(in);
+            final String target = ShardProtocol.readLabel(in);
+            final int weight = in.readInt();
+            final int previous = graph.set(source, target, weight);
+            out.writeByte(ShardProtocol.OK);
+            out.writeInt(previous);
+            return;
+        }
+        case ShardProtocol.REMOVE: {
+            final boolean removed = graph.remove(ShardProtocol.readLabel(in));
+            out.writeByte(ShardProtocol.OK);
+            out.writeBoolean(removed);
+            return;
+        }
+        case ShardProtocol.VERTICES: {
+            final Set<String> vertices = graph.vertices();
+            out.writeByte(ShardProtocol.OK);
+            out.writeInt(vertices.size());
+            for (String vertex : vertices) {
+                ShardProtocol.writeLabel(out, vertex);
+            }
+            return;
+        }
+        case ShardProtocol.SOURCES: {
+            final Map<String, Integer> sources = graph.sources(ShardProtocol.readLabel(in));
+            out.writeByte(ShardProtocol.OK);
+            ShardProtocol.writeEdges(out, sources);
+            return;
+        }
+        case ShardProtocol.TARGETS: {
+            final Map<String, Integer> targets = graph.targets(ShardProtocol.readLabel(in));
+            out.writeByte(ShardProtocol.OK);
+            ShardProtocol.writeEdges(out, targets);
+            return;
+        }
+        case ShardProtocol.TARGETS_OF_ALL: {
+            final int count = ShardProtocol.readCount(in);
+            final List<String> sources = new ArrayList<>(Math.min(count, ShardProtocol.INITIAL_CAPACITY));
+            for (int i = 0; i < count; i++) {
+                sources.add(ShardProtocol.readLabel(in));
+            }
+            final List<Map<String, Integer>> targets = new ArrayList<>(sources.size());
+            for (String source : sources) {
+                targets.add(graph.targets(source));
+            }
+            out.writeByte(ShardProtocol.OK);
+            for (Map<String, Integer> edges : targets) {
+                ShardProtocol.writeEdges(out, edges);
+            }
+            return;
+        }
+        default:
+            throw new IOException("unknown operation " + operation);
+        }
+    }
+
+    /**
+     * Serve an empty in-memory graph until the process is killed.
+     *
+     * @param args port to listen on, and optionally the address to bind
+     *             (default: the loopback address)
+     * @throws IOException if the address cannot be bound
+     * @throws InterruptedException if interrupted while serving
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: ShardServer port [address]");
+            System.exit(2);
+        }
+        final InetAddress host = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+        final ShardServer server = new ShardServer(new PersistentGraph<String>(),
+                new InetSocketAddress(host, Integer.parseInt(args[0])),
+                failure -> System.err.println("shard connection failed: " + failure));
+        server.start();
+        System.out.println("serving shard at " + server.address());
+        // the acceptor is a daemon thread, so keep the process alive for it
+        server.acceptor.join();
+    }
+}
@@ -0,0 +1,310 @@
+package graph;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * A Graph whose vertices are hash-partitioned across several shard graphs.
+ *
+ * <p>Each vertex is owned by the shard numbered by its label's hash code
+ * modulo the number of shards, and that shard holds the vertex together with
+ * all of its out-edges. An edge's target may also appear in the source's
+ * shard as an unowned stand-in vertex, since a shard cannot hold an edge
+ * without both endpoints; stand-ins are never reported by this graph.
+ *
+ * <p>So {@link #targets(Object)} asks one shard, while
+ * {@link #sources(Object)}, {@link #vertices()} and {@link #remove(Object)}
+ * ask every shard in parallel and combine the answers. The parallel requests
+ * run on threads of this graph's own pool, not the common fork-join pool,
+ * since a remote shard blocks its thread for a whole round trip; idle
+ * threads end after a minute. Shards may be any
+ * Graph: in-process graphs, or {@link RemoteGraph} proxies for graphs served
+ * by other processes with {@link ShardServer}. Because {@link String#hashCode()}
+ * is the same in every JVM, a graph of strings can be split across processes
+ * and hosts.
+ *
+ * <p>{@link #close()} stops the request pool and closes the shards that are
+ * {@link Closeable}, such as remote ones; a closed graph must not be used.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class ShardedGraph<L> implements BatchedGraph<L>, AutoCloseable {
+
+    private final List<Graph<L>> shards;
+    private final ExecutorService requests = Executors.newCachedThreadPool(r -> {
+        final Thread t = new Thread(r, "sharded-graph-request");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Abstraction function:
+    //   represents the graph whose vertices are the vertices v of each shard
+    //   i with owner(v) == i, and whose edges are the edges of every shard
+    // Representation invariant:
+    //   shards is nonempty
+    //   every edge s -> t is in shard owner(s) only, and t is a vertex of
+    //   shard owner(t)
+    //   a vertex of shard i not owned by i has no out-edges in shard i
+    // Safety from rep exposure:
+    //   shards is a private unmodifiable copy and never returned; requests is
+    //   private; observers return fresh collections
+
+    /**
+     * Create an empty graph split across in-process shards.
+     *
+     * @param shardCount number of shards, at least 1
+     * @throws IllegalArgumentException if shardCount is less than 1
+     */
+    public ShardedGraph(int shardCount) {
+        this(newShards(shardCount));
+    }
+
+    /**
+     * Create a graph split across the given shards.
+     *
+     * @param shards empty graphs, at least one, in the same order every time
+     *               the same shards are reopened; they must not be used
+     *               except through this graph
+     * @throws IllegalArgumentException if shards is empty
+     */
+    public ShardedGraph(List<? extends Graph<L>> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("need at least one shard");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<Graph<L>>(shards));
+        checkRep();
+    }
+
+    private static <L> List<Graph<L>> newShards(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("need at least one shard: " + shardCount);
+        }
+        final List<Graph<L>> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new PersistentGraph<L>());
+        }
+        return shards;
+    }
+
+    private void checkRep() {
+        assert !shards.isEmpty();
+    }
+
+    /**
+     * @return number of shards
+     */
+    public int shardCount() {
+        return shards.size();
+    }
+
+    /**
+     * @param vertex a label
+     * @return index of the shard that owns vertex, in [0, shardCount())
+     */
+    public int owner(L vertex) {
+        final int hash = vertex.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.size());
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        return shards.get(owner(vertex)).add(vertex);
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must be nonnegative: " + weight);
+        }
+        final int sourceShard = owner(source);
+        final int targetShard = owner(target);
+        if (weight > 0 && targetShard != sourceShard) {
+            shards.get(targetShard).add(target);
+        }
+        return shards.get(sourceShard).set(source, target, weight);
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        final int ownerShard = owner(vertex);
+        if (!shards.get(ownerShard).remove(vertex)) {
+            return false;
+        }
+        // drop the stand-ins, and with them the edges to vertex, everywhere else
+        gather(i -> i != ownerShard && shards.get(i).remove(vertex));
+        return true;
+    }
+
+    @Override
+    public Set<L> vertices() {
+        final List<List<L>> owned = gather(i -> {
+            final List<L> vertices = new ArrayList<>();
+            for (L vertex : shards.get(i).vertices()) {
+                if (owner(vertex) == i) {
+                    vertices.add(vertex);
+                }
+            }
+            return vertices;
+        });
+        final Set<L> result = new HashSet<>();
+        for (List<L> vertices : owned) {
+            result.addAll(vertices);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        // each source's edges live in its own shard, so the answers are disjoint
+        final Map<L, Integer> result = new HashMap<>();
+        for (Map<L, Integer> sources : gather(i -> shards.get(i).sources(target))) {
+            result.putAll(sources);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        return shards.get(owner(source)).targets(source);
+    }
+
+    /**
+     * Get the targets of several sources with one request per shard, sent to
+     * all shards in parallel.
+     *
+     * @param sources labels
+     * @return a map from each label in sources to its targets, as from
+     *         {@link #targets(Object)}
+     */
+    @Override
+    public Map<L, Map<L, Integer>> targetsOfAll(Collection<? extends L> sources) {
+        final List<List<L>> groups = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            groups.add(new ArrayList<L>());
+        }
+        for (L source : sources) {
+            groups.get(owner(source)).add(source);
+        }
+        final Map<L, Map<L, Integer>> result = new HashMap<>();
+        for (Map<L, Map<L, Integer>> answer : gather(i -> targetsOfAll(shards.get(i), groups.get(i)))) {
+            result.putAll(answer);
+        }
+        return result;
+    }
+
+    private static <L> Map<L, Map<L, Integer>> targetsOfAll(Graph<L> shard, List<L> sources) {
+        if (sources.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        if (shard instanceof BatchedGraph) {
+            return ((BatchedGraph<L>) shard).targetsOfAll(sources);
+        }
+        final Map<L, Map<L, Integer>> result = new HashMap<>();
+        for (L source : sources) {
+            result.put(source, shard.targets(source));
+        }
+        return result;
+    }
+
+    /*
+     * Ask every shard in parallel, shard 0 in the calling thread; element i
+     * of the result is shard i's answer.
+     */
+    private <T> List<T> gather(IntFunction<T> query) {
+        final List<Future<T>> pending = new ArrayList<>(shards.size() - 1);
+        for (int i = 1; i < shards.size(); i++) {
+            final int shard = i;
+            pending.add(requests.submit(() -> query.apply(shard)));
+        }
+        final List<T> answers = new ArrayList<>(shards.size());
+        answers.add(query.apply(0));
+        for (Future<T> answer : pending) {
+            answers.add(join(answer));
+        }
+        return answers;
+    }
+
+    /*
+     * Wait for an answer, rethrowing what the query threw.
+     */
+    private static <T> T join(Future<T> answer) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return answer.get();
+                } catch (InterruptedException ie) {
+                    // the other shards' answers are still needed
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException ee) {
+            final Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Shut down this graph's request pool and close every shard that is
+     * {@link Closeable}, such as a {@link RemoteGraph}, even if closing an
+     * earlier one fails. Requests already running are allowed to finish.
+     *
+     * @throws IOException if closing a shard fails; further failures are
+     *         added to it as suppressed exceptions
+     */
+    @Override
+    public void close() throws IOException {
+        requests.shutdown();
+        IOException failure = null;
+        for (Graph<L> shard : shards) {
+            if (shard instanceof Closeable) {
+                try {
+                    ((Closeable) shard).close();
+                } catch (IOException ioe) {
+                    if (failure == null) {
+                        failure = ioe;
+                    } else {
+                        failure.addSuppressed(ioe);
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        final Set<L> vertices = vertices();
+        sb.append("Vertices: ").append(vertices).append("\n");
+        for (Map.Entry<L, Map<L, Integer>> edges : targetsOfAll(vertices).entrySet()) {
+            sb.append(edges.getKey()).append(" -> ").append(edges.getValue()).append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,146 @@
+package poet;
+
+import java.util.Arrays;
+
+/**
+ * An immutable compressed-sparse-row view of a word affinity graph, used to
+ * find bridge words without allocating.
+ */
+class AffinityIndex {
+
+    private final Vocabulary vocabulary;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] weights;
+
+    // Abstraction function:
+    //   represents the graph whose vertices are vocabulary.word(0..n) where
+    //   n = vocabulary.size(), with an edge from word(s) to word(targets[k])
+    //   of weight weights[k] for every offsets[s] <= k < offsets[s + 1]
+    // Representation invariant:
+    //   offsets.length == n + 1, offsets[0] == 0, offsets nondecreasing,
+    //   offsets[n] == targets.length == weights.length
+    //   within each row, targets are strictly increasing ids in [0, n)
+    //   weights are all positive
+    // Safety from rep exposure:
+    //   all fields are private and never returned; vocabulary is not mutated
+    //   after construction, and callers must not mutate it either
+
+    /**
+     * Make an index from a list of distinct edges.
+     *
+     * @param vocabulary words of the graph; must not be mutated afterwards
+     * @param sources source word id of each edge
+     * @param destinations target word id of each edge
+     * @param edgeWeights positive weight of each edge
+     * @param edgeCount number of edges in the three arrays
+     */
+    AffinityIndex(Vocabulary vocabulary, int[] sources, int[] destinations, int[] edgeWeights, int edgeCount) {
+        this.vocabulary = vocabulary;
+        final int n = vocabulary.size();
+        this.offsets = new int[n + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            offsets[sources[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        // sort each row by target, carrying the weight in the low bits
+        final long[] packed = new long[edgeCount];
+        final int[] fill = Arrays.copyOf(offsets, n);
+        for (int e = 0; e < edgeCount; e++) {
+            packed[fill[sources[e]]++] = ((long) destinations[e] << 32) | (edgeWeights[e] & 0xFFFFFFFFL);
+        }
+        this.targets = new int[edgeCount];
+        this.weights = new int[edgeCount];
+        for (int v = 0; v < n; v++) {
+            Arrays.sort(packed, offsets[v], offsets[v + 1]);
+        }
+        for (int k = 0; k < edgeCount; k++) {
+            targets[k] = (int) (packed[k] >>> 32);
+            weights[k] = (int) packed[k];
+        }
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert offsets.length == vocabulary.size() + 1;
+        assert offsets[offsets.length - 1] == targets.length;
+        assert targets.length == weights.length;
+    }
+
+    /**
+     * @return the words of this graph
+     */
+    Vocabulary vocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * @return number of edges
+     */
+    int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * @param source a word id
+     * @return index of the first out-edge of source; out-edges of source
+     *         are at indices [start(source), start(source + 1))
+     */
+    int start(int source) {
+        return offsets[source];
+    }
+
+    /**
+     * @param k an edge index
+     * @return target word id of that edge
+     */
+    int target(int k) {
+        return targets[k];
+    }
+
+    /**
+     * @param k an edge index
+     * @return weight of that edge
+     */
+    int weight(int k) {
+        return weights[k];
+    }
+
+    /**
+     * @param source a word id
+     * @param target a word id
+     * @return weight of the edge from source to target, or 0 if none
+     */
+    int weight(int source, int target) {
+        final int k = Arrays.binarySearch(targets, offsets[source], offsets[source + 1], target);
+        return k >= 0 ? weights[k] : 0;
+    }
+
+    /**
+     * Find the best bridge between two words: the middle word of the
+     * maximum-weight two-edge path from first to second, where a path's
+     * weight is the sum of its edge weights. Ties go to the lowest word id.
+     *
+     * @param first a word id
+     * @param second a word id
+     * @return id of the bridge word, or -1 if there is no two-edge path
+     */
+    int bridge(int first, int second) {
+        int best = -1;
+        long bestWeight = 0;
+        for (int k = offsets[first]; k < offsets[first + 1]; k++) {
+            final int middle = targets[k];
+            final int secondWeight = weight(middle, second);
+            if (secondWeight > 0) {
+                final long pathWeight = (long) weights[k] + secondWeight;
+                if (pathWeight > bestWeight) {
+                    best = middle;
+                    bestWeight = pathWeight;
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,397 @@
+package poet;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+import graph.Graph;
+
+/**
+ * A bounded-memory, approximate word affinity graph for unbounded text streams.
+ *
+ * <p>Words are defined and compared as in {@link GraphPoet}. Three structures
+ * are kept, each with a fixed number of entries:
+ * <ul><li> a {@link CountMinSketch} of adjacent word pairs, which supplies
+ *          every edge weight;
+ *     <li> a space-saving summary of the {@code maxSources} most frequent
+ *          words, the only words that can be sources of edges;
+ *     <li> for each of those words, up to {@code targetsPerSource} candidate
+ *          successors: a successor joins when its estimated pair count
+ *          exceeds the smallest estimate among the current candidates. </ul>
+ *
+ * <p>Error bounds, with N the number of adjacent pairs seen so far:
+ * <ul><li> every edge weight is at least the true pair count, and with
+ *          probability at least {@code 1 - delta} at most the true count
+ *          plus {@code epsilon * N};
+ *     <li> every word occurring more than {@code N / maxSources} times is
+ *          tracked as a source (the space-saving guarantee);
+ *     <li> a tracked word keeps its {@code targetsPerSource} most frequent
+ *          successors whenever those outnumber its other successors by more
+ *          than {@code epsilon * N}, since each time they recur their
+ *          estimate beats the weakest candidate. A word that is evicted from
+ *          the source summary loses its candidates and rebuilds them if it
+ *          returns. </ul>
+ * Consequently, for frequent pairs the affinity graph and so the bridges
+ * chosen by {@link #toPoet()} match those of an exact GraphPoet; rare words
+ * and pairs may be missing or carry inflated weights.
+ *
+ * <p>Words are told apart only by a 64-bit hash of their lower-case form,
+ * and pairs by a 64-bit key mixed from the two word hashes. Two words with
+ * the same hash are silently counted as one word, labeled with whichever of
+ * them was tracked first, and pairs with the same key share one count in
+ * the sketch. With n distinct words, the chance that any two collide is
+ * about n<sup>2</sup> / 2<sup>65</sup>, under one in 10<sup>5</sup> for
+ * ten million words.
+ *
+ * <p>Memory use is fixed by the constructor arguments except for the text of
+ * the stored words: the sketch and the arrays of hashes and counts are
+ * allocated once, and at most {@code maxSources * (1 + targetsPerSource)}
+ * words are stored at a time, each as a String as long as the word. So
+ * memory is bounded by the constructor arguments times the length of the
+ * longest word, and a stream of long words uses correspondingly more.
+ */
+public class ApproximateAffinity {
+
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final CountMinSketch pairs;
+    private final int maxSources;
+    private final int targetsPerSource;
+
+    // space-saving summary of source words, a min-heap on sourceCount
+    private final long[] sourceHash;
+    private final long[] sourceCount;
+    private final String[] sourceWord;
+    private final int[] heap;
+    private final int[] heapPosition;
+    private int sourceSize = 0;
+
+    // open-addressing index from word hash to source slot + 1
+    private final long[] indexKeys;
+    private final int[] indexSlots;
+
+    // candidate successors of source slot s at [s * targetsPerSource, + targetCount[s])
+    private final long[] targetHash;
+    private final long[] targetEstimate;
+    private final String[] targetWord;
+    private final int[] targetCount;
+
+    private long previousHash;
+    private boolean hasPrevious = false;
+
+    // Abstraction function:
+    //   represents the affinity graph with an edge from sourceWord[s] to
+    //   targetWord[s * targetsPerSource + i] for every s < sourceSize and
+    //   i < targetCount[s], of weight pairs.estimate(pair key of the two
+    //   word hashes); previousHash is the last word seen, if hasPrevious
+    // Representation invariant:
+    //   0 <= sourceSize <= maxSources
+    //   heap[0..sourceSize) is a permutation of slots forming a min-heap on
+    //     sourceCount, with heapPosition[heap[i]] == i
+    //   the index maps sourceHash[s] to s + 1 for every s < sourceSize, and
+    //     holds no other keys
+    //   0 <= targetCount[s] <= targetsPerSource, candidate hashes distinct
+    // Safety from rep exposure:
+    //   all fields are private; only Strings and fresh graphs are returned
+
+    /**
+     * Create an empty approximate affinity graph.
+     *
+     * @param maxSources number of words tracked as edge sources, at least 1
+     * @param targetsPerSource number of successors kept per source, at least 1
+     * @param epsilon additive error of edge weights as a fraction of the
+     *                number of pairs seen, in (0, 1)
+     * @param delta probability that the edge weight error bound fails, in (0, 1)
+     * @throws IllegalArgumentException if an argument is out of range, or
+     *         the arguments need arrays longer than Java allows
+     */
+    public ApproximateAffinity(int maxSources, int targetsPerSource, double epsilon, double delta) {
+        if (maxSources < 1 || targetsPerSource < 1) {
+            throw new IllegalArgumentException("need maxSources >= 1 and targetsPerSource >= 1");
+        }
+        if ((long) maxSources * targetsPerSource > CountMinSketch.MAX_COUNTERS) {
+            throw new IllegalArgumentException("maxSources * targetsPerSource too large for one array");
+        }
+        this.pairs = new CountMinSketch(epsilon, delta);
+        this.maxSources = maxSources;
+        this.targetsPerSource = targetsPerSource;
+        this.sourceHash = new long[maxSources];
+        this.sourceCount = new long[maxSources];
+        this.sourceWord = new String[maxSources];
+        this.heap = new int[maxSources];
+        this.heapPosition = new int[maxSources];
+        final int indexCapacity = Integer.highestOneBit(maxSources) << 2;
+        this.indexKeys = new long[indexCapacity];
+        this.indexSlots = new int[indexCapacity];
+        this.targetHash = new long[maxSources * targetsPerSource];
+        this.targetEstimate = new long[maxSources * targetsPerSource];
+        this.targetWord = new String[maxSources * targetsPerSource];
+        this.targetCount = new int[maxSources];
+    }
+
+    /**
+     * Add text that continues the stream. The text is taken to begin and end
+     * at word boundaries, but its first word still follows the last word of
+     * earlier text.
+     *
+     * @param text more of the stream
+     */
+    public void accept(CharSequence text) {
+        int end;
+        for (int start = GraphPoet.skipDelimiters(text, 0); start < text.length();
+                start = GraphPoet.skipDelimiters(text, end)) {
+            end = GraphPoet.wordEnd(text, start);
+            observe(text, start, end);
+        }
+    }
+
+    /**
+     * Add all remaining text from a reader, which is not closed.
+     * Words that span read buffers are kept whole unless a single word is
+     * longer than the buffer.
+     *
+     * @param in more of the stream
+     * @throws IOException if reading fails
+     */
+    public void accept(Reader in) throws IOException {
+        final char[] buffer = new char[READ_BUFFER_SIZE];
+        int length = 0;
+        int n;
+        while ((n = in.read(buffer, length, buffer.length - length)) >= 0) {
+            length += n;
+            int boundary = length;
+            while (boundary > 0 && !GraphPoet.isDelimiter(buffer[boundary - 1])) {
+                boundary--;
+            }
+            if (boundary == 0 && length < buffer.length) {
+                continue; // no complete word yet and room to read more
+            }
+            if (boundary == 0) {
+                boundary = length; // a word longer than the buffer
+            }
+            accept(CharBuffer.wrap(buffer, 0, boundary));
+            System.arraycopy(buffer, boundary, buffer, 0, length - boundary);
+            length -= boundary;
+        }
+        accept(CharBuffer.wrap(buffer, 0, length));
+    }
+
+    /**
+     * @return number of adjacent word pairs seen so far
+     */
+    public long pairCount() {
+        return pairs.total();
+    }
+
+    /**
+     * @return number of words currently tracked as edge sources
+     */
+    public int sourceCount() {
+        return sourceSize;
+    }
+
+    /**
+     * @return a new graph holding the current approximate affinity graph,
+     *         with lower-case words as labels
+     */
+    public Graph<String> affinityGraph() {
+        final Graph<String> graph = Graph.empty();
+        for (int s = 0; s < sourceSize; s++) {
+            graph.add(sourceWord[s]);
+            for (int k = s * targetsPerSource; k < s * targetsPerSource + targetCount[s]; k++) {
+                final long estimate = pairs.estimate(pairKey(sourceHash[s], targetHash[k]));
+                graph.add(targetWord[k]);
+                graph.set(sourceWord[s], targetWord[k], (int) Math.min(Integer.MAX_VALUE, estimate));
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * @return a poet whose affinity graph is the current approximate graph,
+     *         built in time linear in its size
+     */
+    public GraphPoet toPoet() {
+        int edgeCount = 0;
+        for (int s = 0; s < sourceSize; s++) {
+            edgeCount += targetCount[s];
+        }
+        final Vocabulary vocabulary = new Vocabulary();
+        final int[] sources = new int[edgeCount];
+        final int[] targets = new int[edgeCount];
+        final int[] weights = new int[edgeCount];
+        int e = 0;
+        for (int s = 0; s < sourceSize; s++) {
+            final int source = vocabulary.intern(sourceWord[s], 0, sourceWord[s].length());
+            for (int k = s * targetsPerSource; k < s * targetsPerSource + targetCount[s]; k++) {
+                sources[e] = source;
+                targets[e] = vocabulary.intern(targetWord[k], 0, targetWord[k].length());
+                weights[e++] = (int) Math.min(Integer.MAX_VALUE, pairs.estimate(pairKey(sourceHash[s], targetHash[k])));
+            }
+        }
+        return GraphPoet.fromIndex(new AffinityIndex(vocabulary, sources, targets, weights, edgeCount));
+    }
+
+    private void observe(CharSequence text, int start, int end) {
+        final long hash = wordHash(text, start, end);
+        if (hasPrevious) {
+            final long pair = pairKey(previousHash, hash);
+            pairs.add(pair, 1);
+            final int slot = find(previousHash);
+            if (slot >= 0) {
+                offerTarget(slot, hash, pairs.estimate(pair), text, start, end);
+            }
+        }
+        observeSource(hash, text, start, end);
+        previousHash = hash;
+        hasPrevious = true;
+    }
+
+    /*
+     * Space-saving update: count a tracked word, start tracking an untracked
+     * one while there is room, and otherwise let it take over the least
+     * frequent slot, inheriting that slot's count.
+     */
+    private void observeSource(long hash, CharSequence text, int start, int end) {
+        int slot = find(hash);
+        if (slot >= 0) {
+            sourceCount[slot]++;
+            siftDown(heapPosition[slot]);
+            return;
+        }
+        if (sourceSize < maxSources) {
+            slot = sourceSize++;
+            sourceCount[slot] = 1;
+            heap[slot] = slot;
+            heapPosition[slot] = slot;
+        } else {
+            slot = heap[0];
+            unindex(sourceHash[slot]);
+            sourceCount[slot]++;
+        }
+        sourceHash[slot] = hash;
+        sourceWord[slot] = Vocabulary.lowerCase(text, start, end);
+        targetCount[slot] = 0;
+        index(hash, slot);
+        siftUp(heapPosition[slot]);
+        siftDown(heapPosition[slot]);
+    }
+
+    private void offerTarget(int slot, long hash, long estimate, CharSequence text, int start, int end) {
+        final int base = slot * targetsPerSource;
+        int weakest = -1;
+        for (int k = base; k < base + targetCount[slot]; k++) {
+            if (targetHash[k] == hash) {
+                targetEstimate[k] = estimate;
+                return;
+            }
+            if (weakest < 0 || targetEstimate[k] < targetEstimate[weakest]) {
+                weakest = k;
+            }
+        }
+        final int k;
+        if (targetCount[slot] < targetsPerSource) {
+            k = base + targetCount[slot]++;
+        } else if (estimate > targetEstimate[weakest]) {
+            k = weakest;
+        } else {
+            return;
+        }
+        targetHash[k] = hash;
+        targetEstimate[k] = estimate;
+        targetWord[k] = Vocabulary.lowerCase(text, start, end);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            final int parent = (i - 1) / 2;
+            if (sourceCount[heap[parent]] <= sourceCount[heap[i]]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            final int left = 2 * i + 1;
+            if (left >= sourceSize) {
+                return;
+            }
+            int smallest = left;
+            if (left + 1 < sourceSize && sourceCount[heap[left + 1]] < sourceCount[heap[left]]) {
+                smallest = left + 1;
+            }
+            if (sourceCount[heap[i]] <= sourceCount[heap[smallest]]) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        final int slot = heap[i];
+        heap[i] = heap[j];
+        heap[j] = slot;
+        heapPosition[heap[i]] = i;
+        heapPosition[heap[j]] = j;
+    }
+
+    private int find(long hash) {
+        final int mask = indexKeys.length - 1;
+        for (int i = (int) hash & mask; indexSlots[i] != 0; i = (i + 1) & mask) {
+            if (indexKeys[i] == hash) {
+                return indexSlots[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private void index(long hash, int slot) {
+        final int mask = indexKeys.length - 1;
+        int i = (int) hash & mask;
+        while (indexSlots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        indexKeys[i] = hash;
+        indexSlots[i] = slot + 1;
+    }
+
+    /*
+     * Remove a key by backward-shift deletion, so that probing never needs
+     * tombstones.
+     */
+    private void unindex(long hash) {
+        final int mask = indexKeys.length - 1;
+        int hole = (int) hash & mask;
+        while (indexKeys[hole] != hash || indexSlots[hole] == 0) {
+            hole = (hole + 1) & mask;
+        }
+        for (int i = (hole + 1) & mask; indexSlots[i] != 0; i = (i + 1) & mask) {
+            final int home = (int) indexKeys[i] & mask;
+            // move entry i into the hole unless its home lies cyclically in (hole, i]
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                indexKeys[hole] = indexKeys[i];
+                indexSlots[hole] = indexSlots[i];
+                hole = i;
+            }
+        }
+        indexSlots[hole] = 0;
+    }
+
+    private static long wordHash(CharSequence text, int start, int end) {
+        long h = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            h = (h ^ Character.toLowerCase(text.charAt(i))) * FNV_PRIME;
+        }
+        return CountMinSketch.mix(h);
+    }
+
+    private static long pairKey(long first, long second) {
+        return CountMinSketch.mix(first * 31 + second);
+    }
+}
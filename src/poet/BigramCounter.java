@@ -0,0 +1,135 @@
+package poet;
+
+import java.util.Arrays;
+
+/**
+ * A mutable multiset of ordered pairs of word ids.
+ */
+class BigramCounter {
+
+    private static final long EMPTY = -1L;
+
+    private long[] keys = newKeys(64);
+    private int[] counts = new int[64];
+    private int size = 0;
+
+    // Abstraction function:
+    //   represents the multiset where pair (k >>> 32, (int) k) occurs
+    //   counts[i] times for every slot i with keys[i] == k != EMPTY
+    // Representation invariant:
+    //   keys.length == counts.length, a power of two greater than 2 * size
+    //   keys is an open-addressing table with linear probing, keys distinct
+    //   counts[i] > 0 wherever keys[i] != EMPTY
+    // Safety from rep exposure:
+    //   all fields are private and never returned
+
+    /**
+     * Add one occurrence of a pair.
+     *
+     * @param first nonnegative id of the first word
+     * @param second nonnegative id of the second word
+     */
+    void increment(int first, int second) {
+        add(first, second, 1);
+    }
+
+    /**
+     * Add occurrences of a pair.
+     *
+     * @param first nonnegative id of the first word
+     * @param second nonnegative id of the second word
+     * @param count positive number of occurrences to add
+     */
+    void add(int first, int second, int count) {
+        final long key = ((long) first << 32) | (second & 0xFFFFFFFFL);
+        final int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        for (; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                counts[slot] += count;
+                return;
+            }
+        }
+        keys[slot] = key;
+        counts[slot] = count;
+        if (++size * 2 >= keys.length) {
+            rehash();
+        }
+    }
+
+    /**
+     * @param first nonnegative id of the first word
+     * @param second nonnegative id of the second word
+     * @return true if the pair occurs at least once
+     */
+    boolean contains(int first, int second) {
+        final long key = ((long) first << 32) | (second & 0xFFFFFFFFL);
+        final int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of distinct pairs
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Copy the distinct pairs and their counts into parallel arrays, in no
+     * particular order.
+     *
+     * @param firsts array of length at least size() for first word ids
+     * @param seconds array of length at least size() for second word ids
+     * @param weights array of length at least size() for counts
+     */
+    void copyTo(int[] firsts, int[] seconds, int[] weights) {
+        int n = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                firsts[n] = (int) (keys[slot] >>> 32);
+                seconds[n] = (int) keys[slot];
+                weights[n] = counts[slot];
+                n++;
+            }
+        }
+    }
+
+    private void rehash() {
+        final long[] oldKeys = keys;
+        final int[] oldCounts = counts;
+        keys = newKeys(oldKeys.length * 2);
+        counts = new int[oldKeys.length * 2];
+        final int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static long[] newKeys(int capacity) {
+        final long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    /**
+     * @param key a pair key
+     * @return a hash of key for open addressing, also used by ContextTrie
+     */
+    static int mix(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,161 @@
+package poet;
+
+import java.util.Arrays;
+
+/**
+ * A mutable counter of short word sequences, stored as a trie of word ids
+ * so that sequences with a common prefix share the nodes of that prefix.
+ *
+ * <p>Words are fed in one at a time with {@link #accept(int)}. For every
+ * position in the stream, the sequence of up to {@code order} words starting
+ * there is inserted, so each node ends up counting how many times its
+ * sequence occurs in the stream.
+ */
+class ContextTrie {
+
+    private static final long EMPTY = -1L;
+    static final int ROOT = 0;
+
+    private final int order;
+    private final int[] window;
+    private int windowLength = 0;
+
+    private int[] parents = new int[64];
+    private int[] words = new int[64];
+    private int[] counts = new int[64];
+    private int nodeCount = 1;
+
+    private long[] keys = newKeys(128);
+    private int[] children = new int[128];
+
+    // Abstraction function:
+    //   represents a multiset of word id sequences of length 1 to order, in
+    //   which the sequence spelled by the path from the root to node v
+    //   (words[] of each node along the path) occurs counts[v] times; plus
+    //   the last windowLength words fed in, window[0..windowLength), whose
+    //   sequences are not yet counted
+    // Representation invariant:
+    //   order >= 1; window.length == order; 0 <= windowLength < order
+    //   node 0 is the root; every other node v < nodeCount has parent
+    //   parents[v] < v, word words[v] >= 0, and counts[v] > 0
+    //   keys/children is an open-addressing table with linear probing,
+    //   keys.length a power of two greater than 2 * (nodeCount - 1), mapping
+    //   (parents[v] << 32 | words[v]) to v for every non-root node v
+    // Safety from rep exposure:
+    //   all fields are private and never returned
+
+    /**
+     * @param order longest sequence to count, at least 1
+     */
+    ContextTrie(int order) {
+        if (order < 1) {
+            throw new IllegalArgumentException("order must be at least 1: " + order);
+        }
+        this.order = order;
+        this.window = new int[order];
+    }
+
+    /**
+     * Feed in the next word of the stream.
+     *
+     * @param word nonnegative word id
+     */
+    void accept(int word) {
+        window[windowLength++] = word;
+        if (windowLength == order) {
+            insert(0, order);
+            System.arraycopy(window, 1, window, 0, order - 1);
+            windowLength--;
+        }
+    }
+
+    /**
+     * Count the sequences starting at the last few positions of the stream,
+     * which are shorter than order, and start a new stream: later words are
+     * not counted as following earlier ones.
+     */
+    void endStream() {
+        for (int start = 0; start < windowLength; start++) {
+            insert(start, windowLength);
+        }
+        windowLength = 0;
+    }
+
+    /*
+     * Count every prefix of window[start..end).
+     */
+    private void insert(int start, int end) {
+        int node = ROOT;
+        for (int i = start; i < end; i++) {
+            node = childOrNew(node, window[i]);
+            counts[node]++;
+        }
+    }
+
+    private int childOrNew(int parent, int word) {
+        final long key = ((long) parent << 32) | word;
+        final int mask = keys.length - 1;
+        int slot = BigramCounter.mix(key) & mask;
+        for (; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return children[slot];
+            }
+        }
+        if (nodeCount == parents.length) {
+            parents = Arrays.copyOf(parents, nodeCount * 2);
+            words = Arrays.copyOf(words, nodeCount * 2);
+            counts = Arrays.copyOf(counts, nodeCount * 2);
+        }
+        final int node = nodeCount++;
+        parents[node] = parent;
+        words[node] = word;
+        keys[slot] = key;
+        children[slot] = node;
+        if ((nodeCount - 1) * 2 >= keys.length) {
+            rehash();
+        }
+        return node;
+    }
+
+    private void rehash() {
+        final long[] oldKeys = keys;
+        final int[] oldChildren = children;
+        keys = newKeys(oldKeys.length * 2);
+        children = new int[oldKeys.length * 2];
+        final int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = BigramCounter.mix(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                children[slot] = oldChildren[i];
+            }
+        }
+    }
+
+    private static long[] newKeys(int capacity) {
+        final long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    /**
+     * @return number of trie nodes, including the root
+     */
+    int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Freeze the sequences counted so far, not including words fed in since
+     * the last {@link #endStream()}.
+     *
+     * @param vocabulary words named by the ids; must not be mutated afterwards
+     * @return an immutable index of the counted sequences
+     */
+    NgramIndex toIndex(Vocabulary vocabulary) {
+        return new NgramIndex(vocabulary, order, parents, words, counts, nodeCount);
+    }
+}
@@ -0,0 +1,121 @@
+package poet;
+
+/**
+ * A count-min sketch: a fixed-size summary of a multiset of long keys that
+ * answers "how many times was this key added?" with one-sided error.
+ *
+ * <p>With width {@code w = ceil(e / epsilon)} (rounded up to a power of two)
+ * and depth {@code d = ceil(ln(1 / delta))}, for every key the estimate is
+ * never below the true count, and with probability at least {@code 1 - delta}
+ * it is at most the true count plus {@code epsilon * N}, where N is the total
+ * of all counts added. Updates are conservative (only the smallest counters
+ * for a key are raised), which keeps these bounds and tightens them in
+ * practice.
+ */
+class CountMinSketch {
+
+    // largest array length that VMs reliably allocate
+    static final int MAX_COUNTERS = Integer.MAX_VALUE - 8;
+
+    private final int width;
+    private final int depth;
+    private final long[] counters;
+    private final long[] seeds;
+    private long total = 0;
+
+    // Abstraction function:
+    //   represents a multiset of keys, summarized so that the count of key
+    //   is approximated by min over rows r of counters[r * width + cell(r, key)]
+    // Representation invariant:
+    //   width is a power of two, depth >= 1
+    //   counters.length == width * depth, seeds.length == depth
+    //   every counter is in [0, total]
+    // Safety from rep exposure:
+    //   all fields are private and never returned
+
+    /**
+     * @param epsilon additive error as a fraction of the total count, in (0, 1)
+     * @param delta probability that the error bound fails, in (0, 1)
+     * @throws IllegalArgumentException if epsilon or delta is out of range,
+     *         or they need more than {@link #MAX_COUNTERS} counters
+     */
+    CountMinSketch(double epsilon, double delta) {
+        if (!(epsilon > 0 && epsilon < 1 && delta > 0 && delta < 1)) {
+            throw new IllegalArgumentException("epsilon and delta must be in (0, 1)");
+        }
+        final long minWidth = (long) Math.ceil(Math.E / epsilon);
+        if (minWidth > 1 << 30) {
+            throw new IllegalArgumentException("epsilon too small: " + epsilon);
+        }
+        this.width = Integer.highestOneBit((int) minWidth - 1) << 1;
+        this.depth = (int) Math.ceil(Math.log(1 / delta));
+        if ((long) width * depth > MAX_COUNTERS) {
+            throw new IllegalArgumentException("epsilon and delta too small for one array of "
+                    + width + " * " + depth + " counters");
+        }
+        this.counters = new long[width * depth];
+        this.seeds = new long[depth];
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int row = 0; row < depth; row++) {
+            seed = mix(seed + row);
+            seeds[row] = seed;
+        }
+    }
+
+    /**
+     * @return bytes used by the counters
+     */
+    long sizeInBytes() {
+        return counters.length * (long) Long.BYTES;
+    }
+
+    /**
+     * @return total of all counts added
+     */
+    long total() {
+        return total;
+    }
+
+    /**
+     * Add occurrences of a key.
+     *
+     * @param key key to count
+     * @param count positive number of occurrences
+     */
+    void add(long key, long count) {
+        total += count;
+        final long target = estimate(key) + count;
+        for (int row = 0; row < depth; row++) {
+            final int cell = row * width + cell(row, key);
+            if (counters[cell] < target) {
+                counters[cell] = target;
+            }
+        }
+    }
+
+    /**
+     * @param key key to look up
+     * @return an estimate, never too low, of how many times key was added
+     */
+    long estimate(long key) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[row * width + cell(row, key)]);
+        }
+        return min;
+    }
+
+    private int cell(int row, long key) {
+        return (int) mix(key ^ seeds[row]) & (width - 1);
+    }
+
+    /**
+     * @param x any value
+     * @return a well-mixed 64-bit hash of x (the splitmix64 finalizer)
+     */
+    static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+}
@@ -0,0 +1,322 @@
+package poet;
+
+import java.util.Arrays;
+
+/**
+ * A Misra-Gries frequent-items summary of ordered pairs of word ids, keeping
+ * at most a fixed number of pairs.
+ *
+ * <p>A pair that is kept, or that finds room, is counted. A pair that finds
+ * no room is not kept, and instead takes one occurrence away from every kept
+ * pair; pairs left with none are no longer kept. Of N pairs added, every pair
+ * added more than N / (maxPairs + 1) times is then kept, with a count at most
+ * that much below the number of times it was added.
+ *
+ * <p>Each add takes O(1) amortized time. Taking an occurrence from every pair
+ * only raises a single offset that is subtracted from every stored count,
+ * and a histogram of the stored counts says how many pairs that leaves with
+ * none. Pairs left with none stay in the table until they make up half of
+ * it, and are then purged in place; the table only grows while more than a
+ * quarter of it holds kept pairs, so its capacity stays below
+ * max(64, 8 * maxPairs).
+ */
+class FrequentPairCounter {
+
+    private static final long EMPTY = -1L;
+
+    private final int maxPairs;
+    private long[] keys = newKeys(64);
+    private int[] stored = new int[64];
+    private int occupied = 0;
+    private int live = 0;
+    private int base = 0;
+    private final Histogram histogram = new Histogram();
+
+    // Abstraction function:
+    //   represents the summary whose kept pairs are (k >>> 32, (int) k) with
+    //   count stored[i] - base, for every slot i with keys[i] == k != EMPTY
+    //   and stored[i] > base
+    // Representation invariant:
+    //   keys.length == stored.length, a power of two greater than 2 * occupied
+    //   keys is an open-addressing table with linear probing, keys distinct
+    //   occupied is the number of slots with keys[i] != EMPTY
+    //   live is the number of those with stored[i] > base, live <= maxPairs
+    //   histogram counts, for every value v > base, the slots with
+    //   stored[i] == v, and holds no other values
+    // Safety from rep exposure:
+    //   all fields are private and never returned
+
+    /**
+     * @param maxPairs most pairs to keep at once, at least 1
+     * @throws IllegalArgumentException if maxPairs is less than 1
+     */
+    FrequentPairCounter(int maxPairs) {
+        if (maxPairs < 1) {
+            throw new IllegalArgumentException("need room for at least one pair: " + maxPairs);
+        }
+        this.maxPairs = maxPairs;
+    }
+
+    /**
+     * Add one occurrence of a pair.
+     *
+     * @param first nonnegative id of the first word
+     * @param second nonnegative id of the second word
+     * @return true if the pair was counted, false if it found no room and
+     *         took an occurrence from every kept pair instead
+     */
+    boolean add(int first, int second) {
+        final long key = ((long) first << 32) | (second & 0xFFFFFFFFL);
+        final int mask = keys.length - 1;
+        int slot = BigramCounter.mix(key) & mask;
+        for (; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                if (stored[slot] > base) {
+                    histogram.add(stored[slot], -1);
+                    histogram.add(++stored[slot], 1);
+                    return true;
+                }
+                // kept once, then left with none: it may take its slot back
+                return revive(slot);
+            }
+        }
+        if (live == maxPairs) {
+            decrementAll();
+            return false;
+        }
+        keys[slot] = key;
+        occupied++;
+        revive(slot);
+        if (occupied * 2 >= keys.length) {
+            makeRoom();
+        }
+        return true;
+    }
+
+    /*
+     * Count one occurrence of the pair in an occupied slot whose count is
+     * zero, if there is room for it.
+     */
+    private boolean revive(int slot) {
+        if (live == maxPairs) {
+            decrementAll();
+            return false;
+        }
+        stored[slot] = base + 1;
+        histogram.add(base + 1, 1);
+        live++;
+        return true;
+    }
+
+    /*
+     * Take one occurrence from every kept pair.
+     */
+    private void decrementAll() {
+        base++;
+        live -= histogram.remove(base);
+    }
+
+    /*
+     * Purge the pairs left with none if they are at least half of the
+     * table, or else double it.
+     */
+    private void makeRoom() {
+        if ((occupied - live) * 2 >= occupied) {
+            purge();
+        } else {
+            rebuild(keys.length * 2);
+        }
+    }
+
+    /*
+     * Empty the slots of pairs with no occurrences, then move every pair that
+     * follows an emptied slot in its probe sequence back towards its home
+     * slot, all within the current arrays.
+     */
+    private void purge() {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY && stored[slot] <= base) {
+                keys[slot] = EMPTY;
+                occupied--;
+            }
+        }
+        final int mask = keys.length - 1;
+        // start after an empty slot, so no probe sequence wraps past the start
+        int start = 0;
+        while (keys[start] != EMPTY) {
+            start++;
+        }
+        for (int i = 1; i <= keys.length; i++) {
+            final int slot = (start + i) & mask;
+            final long key = keys[slot];
+            if (key == EMPTY) {
+                continue;
+            }
+            int home = BigramCounter.mix(key) & mask;
+            while (home != slot && keys[home] != EMPTY) {
+                home = (home + 1) & mask;
+            }
+            if (home != slot) {
+                keys[home] = key;
+                stored[home] = stored[slot];
+                keys[slot] = EMPTY;
+            }
+        }
+    }
+
+    private void rebuild(int capacity) {
+        final long[] oldKeys = keys;
+        final int[] oldStored = stored;
+        keys = newKeys(capacity);
+        stored = new int[capacity];
+        occupied = 0;
+        final int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY && oldStored[i] > base) {
+                int slot = BigramCounter.mix(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                stored[slot] = oldStored[i];
+                occupied++;
+            }
+        }
+    }
+
+    /**
+     * @return number of kept pairs
+     */
+    int size() {
+        return live;
+    }
+
+    /**
+     * Copy the kept pairs and their counts into parallel arrays, in no
+     * particular order.
+     *
+     * @param firsts array of length at least size() for first word ids
+     * @param seconds array of length at least size() for second word ids
+     * @param weights array of length at least size() for counts
+     */
+    void copyTo(int[] firsts, int[] seconds, int[] weights) {
+        int n = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY && stored[slot] > base) {
+                firsts[n] = (int) (keys[slot] >>> 32);
+                seconds[n] = (int) keys[slot];
+                weights[n] = stored[slot] - base;
+                n++;
+            }
+        }
+    }
+
+    private static long[] newKeys(int capacity) {
+        final long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    /**
+     * A mutable map from ints to positive counts, in an open-addressing table
+     * that deletes by shifting later entries back, so it never fills with
+     * deleted slots.
+     */
+    private static final class Histogram {
+        private int[] values = new int[64];
+        private int[] counts = new int[64];
+        private int size = 0;
+
+        // Abstraction function:
+        //   represents the map from values[i] to counts[i] for every slot i
+        //   with counts[i] > 0
+        // Representation invariant:
+        //   values.length == counts.length, a power of two greater than 2 * size
+        //   the slots with counts[i] > 0 form a linear-probing table with
+        //   distinct values, and every other slot has counts[i] == 0
+        // Safety from rep exposure:
+        //   all fields are private and never returned
+
+        /*
+         * Add delta to the count of value, which must stay nonnegative;
+         * a count of zero removes value.
+         */
+        void add(int value, int delta) {
+            final int mask = values.length - 1;
+            int slot = hash(value) & mask;
+            for (; counts[slot] > 0; slot = (slot + 1) & mask) {
+                if (values[slot] == value) {
+                    counts[slot] += delta;
+                    if (counts[slot] == 0) {
+                        delete(slot);
+                    }
+                    return;
+                }
+            }
+            assert delta > 0;
+            values[slot] = value;
+            counts[slot] = delta;
+            if (++size * 2 >= values.length) {
+                grow();
+            }
+        }
+
+        /*
+         * Remove value and return its count, or 0 if it is absent.
+         */
+        int remove(int value) {
+            final int mask = values.length - 1;
+            for (int slot = hash(value) & mask; counts[slot] > 0; slot = (slot + 1) & mask) {
+                if (values[slot] == value) {
+                    final int count = counts[slot];
+                    delete(slot);
+                    return count;
+                }
+            }
+            return 0;
+        }
+
+        /*
+         * Empty a slot, moving back later entries of its probe run that
+         * could no longer be found.
+         */
+        private void delete(int slot) {
+            final int mask = values.length - 1;
+            counts[slot] = 0;
+            size--;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; counts[next] > 0; next = (next + 1) & mask) {
+                final int home = hash(values[next]) & mask;
+                // move next into the hole unless its home lies cyclically in (hole, next]
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    values[hole] = values[next];
+                    counts[hole] = counts[next];
+                    counts[next] = 0;
+                    hole = next;
+                }
+            }
+        }
+
+        private void grow() {
+            final int[] oldValues = values;
+            final int[] oldCounts = counts;
+            values = new int[oldValues.length * 2];
+            counts = new int[oldValues.length * 2];
+            final int mask = values.length - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldCounts[i] > 0) {
+                    int slot = hash(oldValues[i]) & mask;
+                    while (counts[slot] > 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    values[slot] = oldValues[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        private static int hash(int value) {
+            return BigramCounter.mix(value);
+        }
+    }
+}
@@ -4,9 +4,27 @@
 package poet;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+import java.util.stream.IntStream;
 
+import graph.BatchedGraph;
+import graph.CompressedGraph;
 import graph.Graph;
+import graph.Graphs;
+import graph.PersistentGraph;
+import graph.ShardedGraph;
+import poet.IngestionControl.Phase;
 
 /**
  * A graph-based poetry generator.
@@ -44,6 +62,11 @@ import graph.Graph;
  * <p>the output poem would be:
  * <pre>    Test of the system.    </pre>
  * 
+ * <p>GraphPoet is immutable, except that a poet made by
+ * {@link #fromShards(ShardedGraph)} reads its sharded graph as it is when
+ * each poem is made, so one instance may serve poems to any number of
+ * threads at once.
+ * 
  * <p>PS2 instructions: this is a required ADT class, and you MUST NOT weaken
  * the required specifications. However, you MAY strengthen the specifications
  * and you MAY add additional methods.
@@ -52,26 +75,570 @@ import graph.Graph;
  */
 public class GraphPoet {
     
-    private final Graph<String> graph = Graph.empty();
+    // words whose targets are fetched together from a BatchedGraph
+    private static final int TARGETS_BATCH_SIZE = 4096;
+    
+    // largest graph whose vertices and edges checkRep() compares with the index
+    private static final int CHECK_REP_VERTICES = 4096;
+    
+    private final Graph<String> graph;
+    private final AffinityIndex index;
+    private final NgramIndex ngrams;
+    private final Normalizer normalizer;
     
     // Abstraction function:
-    //   TODO
+    //   represents the poet whose word affinity graph is graph, bridging with
+    //   contexts of up to ngrams.order() - 1 words if ngrams is not null, or
+    //   of one word if it is, and whose words are the normal forms of
+    //   normalizer
     // Representation invariant:
-    //   TODO
+    //   index is null iff graph is a ShardedGraph, which is then read on
+    //   every poem; the rest of the invariant only applies if index is not
+    //   null
+    //   graph's vertices are exactly the lower-case words of index.vocabulary()
+    //   index has exactly the edges of graph, with the same weights: graph is
+    //   the abstract value, and index a cache of it for bridging and walks
+    //   graph is never mutated after construction
+    //   if ngrams is not null, ngrams.order() > 2, its vocabulary is index's,
+    //   and its sequences of two words are exactly the edges of index
+    //   if ngrams is not null, normalizer is Normalizer.LOWER_CASE
     // Safety from rep exposure:
-    //   TODO
+    //   graph, index and ngrams are private and never returned, and every
+    //   constructor except fromShards() builds its own graph or takes a
+    //   snapshot, which a sharded poet only reads; poem() only returns or appends Strings,
+    //   which are immutable
     
     /**
      * Create a new poet with the graph from corpus (as described above).
+     * The corpus is decoded as UTF-8. A word's lower-case form lowers each of
+     * its characters with {@link Character#toLowerCase(char)}, and carriage
+     * returns count as newlines.
      * 
      * @param corpus text file from which to derive the poet's affinity graph
      * @throws IOException if the corpus file cannot be found or read
      */
     public GraphPoet(File corpus) throws IOException {
-        throw new RuntimeException("not implemented");
+        this(corpus, Normalizer.LOWER_CASE);
+    }
+    
+    /**
+     * Create a new poet with the graph from corpus, as {@link #GraphPoet(File)}
+     * does, but with a different notion of which words are the same: the
+     * vertices of the affinity graph are the normal forms of the corpus
+     * words, and words whose normal form is empty are skipped. Input words
+     * are looked up by their normal forms too, but still appear in the poem
+     * as given.
+     * 
+     * <p>The corpus is split into words without decoding it. With a
+     * normalizer that only lower-cases ASCII words, such as
+     * {@link Normalizer#LOWER_CASE} or {@link Normalizer#CASE_FOLD}, only
+     * words with non-ASCII characters are decoded.
+     * 
+     * @param corpus text file from which to derive the poet's affinity graph
+     * @param normalizer normal form of the words
+     * @throws IOException if the corpus file cannot be found or read
+     */
+    public GraphPoet(File corpus, Normalizer normalizer) throws IOException {
+        this(countCorpus(readCorpus(corpus), normalizer), normalizer);
+    }
+    
+    /**
+     * Create a new poet with the graph from corpus, as {@link #GraphPoet(File)}
+     * does, reporting progress and phase timings to control and keeping
+     * within its budgets. If a budget is reached, the affinity graph is
+     * derived from only the start of the corpus, or without some of its
+     * words and rarest adjacencies and with adjacency counts that may be too
+     * low, as control says.
+     * 
+     * <p>Unlike {@link #GraphPoet(File)}, this reads the whole corpus before
+     * splitting it into words, and notes every word's id before counting
+     * adjacencies, so each phase can be timed on its own; this costs four
+     * bytes of heap per word of the corpus while the poet is built.
+     * 
+     * @param corpus text file from which to derive the poet's affinity graph
+     * @param control progress reports, budgets and cancellation for building
+     *                this poet; must not have been used before
+     * @throws IOException if the corpus file cannot be found or read
+     * @throws CancellationException if control is cancelled before the poet
+     *         is built
+     */
+    public GraphPoet(File corpus, IngestionControl control) throws IOException {
+        this(ingest(corpus, control));
     }
     
-    // TODO checkRep
+    private GraphPoet(GraphPoet built) {
+        this(built.graph, built.index, built.ngrams, built.normalizer);
+    }
+    
+    /**
+     * Create a new poet that bridges using longer contexts.
+     * The affinity graph is derived from corpus as described above, but a
+     * bridge is chosen to fit the n - 1 words of the poem before it (input
+     * words and bridges alike) rather than just the one word before: among
+     * candidates b, it maximizes the number of times those n - 1 words are
+     * followed by b, plus the number of times the last n - 2 of them and b are
+     * followed by the next input word. If no bridge fits, shorter contexts
+     * are tried, down to the single word of {@link #GraphPoet(File)}.
+     * 
+     * <p>Word sequences are counted in a trie of word ids, so sequences with
+     * a common prefix share storage.
+     * 
+     * @param corpus text file from which to derive the poet's affinity graph
+     * @param order n, the length of the word sequences counted, at least 2;
+     *              order 2 is the same as {@link #GraphPoet(File)}
+     * @throws IOException if the corpus file cannot be found or read
+     * @throws IllegalArgumentException if order is less than 2
+     */
+    public GraphPoet(File corpus, int order) throws IOException {
+        this(countNgrams(readCorpus(corpus), order));
+    }
+    
+    /**
+     * Create a new poet that blends several corpora.
+     * Each corpus is turned into an affinity graph as described above, and
+     * the poet uses their weighted union: the weight of the edge from w1 to w2
+     * is the sum over corpora of the corpus weight times the number of times
+     * w1 is followed by w2 in that corpus, rounded as described in
+     * {@link Graphs#weightedUnion(List, double[], Graph)}.
+     * 
+     * @param corpora text files from which to derive affinity graphs
+     * @param weights finite nonnegative weight of each corpus, in the same order
+     * @throws IOException if a corpus file cannot be found or read
+     * @throws IllegalArgumentException if corpora and weights differ in
+     *         length, or a weight is negative or not finite
+     */
+    public GraphPoet(List<File> corpora, double[] weights) throws IOException {
+        this(mergeCorpora(corpora, weights));
+    }
+    
+    private GraphPoet(AffinityIndex index) {
+        this(index, Normalizer.LOWER_CASE);
+    }
+    
+    private GraphPoet(AffinityIndex index, Normalizer normalizer) {
+        this(toGraph(index), index, null, normalizer);
+    }
+    
+    private GraphPoet(NgramIndex ngrams) {
+        this(ngrams.bigrams(), ngrams.order() > 2 ? ngrams : null);
+    }
+    
+    private GraphPoet(AffinityIndex index, NgramIndex ngrams) {
+        this(toGraph(index), index, ngrams, Normalizer.LOWER_CASE);
+    }
+    
+    private GraphPoet(Graph<String> graph) {
+        this(graph, indexOf(graph), null, Normalizer.LOWER_CASE);
+    }
+    
+    /**
+     * @param index affinity graph, which the new poet takes ownership of;
+     *              must not be used by the caller afterwards
+     * @return a poet with that affinity graph
+     */
+    static GraphPoet fromIndex(AffinityIndex index) {
+        return new GraphPoet(index);
+    }
+    
+    /**
+     * Create a poet from the current version of an affinity graph.
+     * The poet keeps a snapshot of graph, taken in O(1) time, so graph may go
+     * on being mutated without affecting the poet. Building the poet still
+     * reads every edge of the snapshot once to index it, in O(V + E) time for
+     * V vertices and E edges.
+     * 
+     * @param graph affinity graph whose vertices are lower-case words, as
+     *              described above, and whose edge weights count adjacencies
+     * @return a poet using a snapshot of graph as its affinity graph
+     */
+    public static GraphPoet fromSnapshot(PersistentGraph<String> graph) {
+        return new GraphPoet(graph.snapshot());
+    }
+    
+    /**
+     * Create a poet over a sharded affinity graph, without copying it.
+     * Each poem reads only the edges it can use, as graph is when the poem is
+     * made: the targets of the input words, then the edges from those
+     * targets, with one batched request per shard for each of the two steps,
+     * sent to all shards in parallel. So graph may go on being mutated, and
+     * later poems follow it.
+     * 
+     * @param graph affinity graph whose vertices are lower-case words, as
+     *              described above, and whose edge weights count adjacencies
+     * @return a poet using graph as its affinity graph
+     */
+    public static GraphPoet fromShards(ShardedGraph<String> graph) {
+        return new GraphPoet(graph, null, null, Normalizer.LOWER_CASE);
+    }
+    
+    private GraphPoet(Graph<String> graph, AffinityIndex index, NgramIndex ngrams, Normalizer normalizer) {
+        this.graph = graph;
+        this.index = index;
+        this.ngrams = ngrams;
+        this.normalizer = normalizer;
+        checkRep();
+    }
+    
+    private static byte[] readCorpus(File corpus) throws IOException {
+        return Files.readAllBytes(corpus.toPath());
+    }
+    
+    /*
+     * Tokenize UTF-8 text and count adjacent word pairs.
+     */
+    private static AffinityIndex countCorpus(byte[] text, Normalizer normalizer) {
+        final Vocabulary vocabulary = new Vocabulary();
+        final BigramCounter bigrams = countPairs(text, normalizer, vocabulary);
+        final int edgeCount = bigrams.size();
+        final int[] sources = new int[edgeCount];
+        final int[] targets = new int[edgeCount];
+        final int[] weights = new int[edgeCount];
+        bigrams.copyTo(sources, targets, weights);
+        return new AffinityIndex(vocabulary, sources, targets, weights, edgeCount);
+    }
+    
+    /*
+     * Tokenize UTF-8 text into vocabulary and count adjacent word pairs.
+     */
+    private static BigramCounter countPairs(byte[] text, Normalizer normalizer, Vocabulary vocabulary) {
+        final BigramCounter bigrams = new BigramCounter();
+        final int[] previous = { -1 };
+        new Tokenizer(normalizer).tokenize(text, vocabulary, id -> {
+            if (previous[0] >= 0) {
+                bigrams.increment(previous[0], id);
+            }
+            previous[0] = id;
+        });
+        return bigrams;
+    }
+    
+    /*
+     * Tokenize UTF-8 text and count word sequences of up to order words.
+     */
+    private static NgramIndex countNgrams(byte[] text, int order) {
+        if (order < 2) {
+            throw new IllegalArgumentException("order must be at least 2: " + order);
+        }
+        final Vocabulary vocabulary = new Vocabulary();
+        final ContextTrie trie = new ContextTrie(order);
+        new Tokenizer(Normalizer.LOWER_CASE).tokenize(text, vocabulary, trie::accept);
+        trie.endStream();
+        return trie.toIndex(vocabulary);
+    }
+    
+    /*
+     * Read, tokenize, count and index a corpus in separately timed phases,
+     * within the budgets of control.
+     */
+    private static GraphPoet ingest(File corpus, IngestionControl control) throws IOException {
+        long start = control.startPhase(Phase.READ);
+        final byte[] text = read(corpus, control);
+        control.endPhase(start);
+        
+        start = control.startPhase(Phase.TOKENIZE);
+        final Vocabulary vocabulary = new Vocabulary();
+        vocabulary.limit(control.maxVertices());
+        final TokenLog tokens = new TokenLog(text.length, vocabulary, control);
+        new Tokenizer(Normalizer.LOWER_CASE).tokenizeWhile(text, vocabulary, tokens);
+        control.report(text.length, tokens.count, vocabulary.size(), 0);
+        control.endPhase(start);
+        
+        start = control.startPhase(Phase.COUNT);
+        // pruning counts with a Misra-Gries summary, in which a pair with no
+        // room cancels one occurrence of every kept pair instead of being kept
+        final FrequentPairCounter frequent = control.prunes() ? new FrequentPairCounter(control.maxEdges()) : null;
+        final BigramCounter bigrams = frequent == null ? new BigramCounter() : null;
+        final IntSupplier edgeCount = frequent != null ? frequent::size : bigrams::size;
+        final int[] ids = tokens.ids;
+        for (int i = 1; i < tokens.size; i++) {
+            if (ids[i - 1] >= 0 && ids[i] >= 0) {
+                if (frequent != null) {
+                    if (!frequent.add(ids[i - 1], ids[i])) {
+                        control.reachedBudget();
+                    }
+                } else if (bigrams.size() >= control.maxEdges() && !bigrams.contains(ids[i - 1], ids[i])) {
+                    control.reachedBudget();
+                    break;
+                } else {
+                    bigrams.increment(ids[i - 1], ids[i]);
+                }
+            }
+            if (i % IngestionControl.CHECK_INTERVAL == 0) {
+                control.report(text.length, tokens.count, vocabulary.size(), edgeCount.getAsInt());
+                if (control.checkpoint()) {
+                    break;
+                }
+            }
+        }
+        final int[][] pairs = new int[3][edgeCount.getAsInt()];
+        if (frequent != null) {
+            frequent.copyTo(pairs[0], pairs[1], pairs[2]);
+        } else {
+            bigrams.copyTo(pairs[0], pairs[1], pairs[2]);
+        }
+        control.report(text.length, tokens.count, vocabulary.size(), pairs[0].length);
+        control.endPhase(start);
+        
+        return insert(vocabulary, pairs, control);
+    }
+    
+    /*
+     * Read a whole file, a block at a time, reporting progress to control;
+     * if the heap budget is reached, return only what was read so far.
+     */
+    private static byte[] read(File corpus, IngestionControl control) throws IOException {
+        try (InputStream in = new FileInputStream(corpus)) {
+            final long length = corpus.length();
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new IOException("corpus too large to read into one array: " + corpus);
+            }
+            final byte[] text = new byte[(int) length];
+            int read = 0;
+            while (read < text.length) {
+                final int n = in.read(text, read, Math.min(IngestionControl.CHECK_INTERVAL, text.length - read));
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+                control.report(read, 0, 0, 0);
+                if (control.checkpoint()) {
+                    break;
+                }
+            }
+            return read == text.length ? text : Arrays.copyOf(text, read);
+        }
+    }
+    
+    /*
+     * Build the poet's affinity graph and its index from the counted pairs,
+     * given as arrays of first words, second words and counts, in a timed
+     * phase.
+     */
+    private static GraphPoet insert(Vocabulary vocabulary, int[][] pairs, IngestionControl control) {
+        final long start = control.startPhase(Phase.INSERT);
+        final AffinityIndex index = new AffinityIndex(vocabulary, pairs[0], pairs[1], pairs[2], pairs[0].length);
+        final GraphPoet poet = new GraphPoet(toGraph(index), index, null, Normalizer.LOWER_CASE);
+        control.endPhase(start);
+        return poet;
+    }
+    
+    /**
+     * The word ids of a corpus, in order, noted as it is tokenized, with -1
+     * for a word left out because a budget was reached.
+     */
+    private static final class TokenLog implements IntPredicate {
+        private final long bytes;
+        private final Vocabulary vocabulary;
+        private final IngestionControl control;
+        private int[] ids = new int[1024];
+        private int size = 0;
+        private long count = 0;
+        
+        TokenLog(long bytes, Vocabulary vocabulary, IngestionControl control) {
+            this.bytes = bytes;
+            this.vocabulary = vocabulary;
+            this.control = control;
+        }
+        
+        @Override public boolean test(int id) {
+            count++;
+            if (id < 0) {
+                control.reachedBudget();
+                if (!control.prunes()) {
+                    return false;
+                }
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+            if (count % IngestionControl.CHECK_INTERVAL == 0) {
+                control.report(bytes, count, vocabulary.size(), 0);
+                if (control.checkpoint()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    /*
+     * Count every corpus into one vocabulary and merge their pair counts,
+     * scaled by the corpus weights, in time linear in the number of pairs:
+     * the scaled pairs are bucketed by first word, and each bucket is summed
+     * by second word in a dense scratch array. As in Graphs.weightedUnion,
+     * first words are merged in parallel, here in one range of buckets per
+     * processor, each with its own scratch arrays.
+     */
+    private static AffinityIndex mergeCorpora(List<File> corpora, double[] weights) throws IOException {
+        Graphs.checkUnionWeights(corpora.size(), weights);
+        final Vocabulary vocabulary = new Vocabulary();
+        final List<int[][]> counted = new ArrayList<>();
+        int total = 0;
+        for (File corpus : corpora) {
+            final BigramCounter bigrams = countPairs(readCorpus(corpus), Normalizer.LOWER_CASE, vocabulary);
+            final int[][] pairs = new int[3][bigrams.size()];
+            bigrams.copyTo(pairs[0], pairs[1], pairs[2]);
+            counted.add(pairs);
+            total += bigrams.size();
+        }
+        final int n = vocabulary.size();
+        final int[] offsets = new int[n + 1];
+        for (int[][] pairs : counted) {
+            for (int first : pairs[0]) {
+                offsets[first + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        final int[] fill = Arrays.copyOf(offsets, n);
+        final int[] seconds = new int[total];
+        final double[] scaled = new double[total];
+        for (int c = 0; c < counted.size(); c++) {
+            final int[][] pairs = counted.get(c);
+            for (int e = 0; e < pairs[0].length; e++) {
+                final int position = fill[pairs[0][e]]++;
+                seconds[position] = pairs[1][e];
+                scaled[position] = weights[c] * pairs[2][e];
+            }
+        }
+        // ranges of first words with about the same number of pairs
+        final int chunks = Math.max(1, Math.min(n, Runtime.getRuntime().availableProcessors()));
+        final int[] bounds = new int[chunks + 1];
+        for (int c = 1, first = 0; c < chunks; c++) {
+            final long goal = (long) total * c / chunks;
+            while (first < n && offsets[first] < goal) {
+                first++;
+            }
+            bounds[c] = first;
+        }
+        bounds[chunks] = n;
+        // each row is merged in place, into the start of its bucket
+        final int[] targets = new int[total];
+        final int[] merged = new int[total];
+        final int[] rowSizes = new int[n];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            final double[] sums = new double[n];
+            final int[] seenIn = new int[n];
+            for (int first = bounds[c]; first < bounds[c + 1]; first++) {
+                int end = offsets[first];
+                for (int k = offsets[first]; k < offsets[first + 1]; k++) {
+                    final int second = seconds[k];
+                    if (seenIn[second] != first + 1) {
+                        seenIn[second] = first + 1;
+                        sums[second] = 0;
+                        targets[end++] = second;
+                    }
+                    sums[second] += scaled[k];
+                }
+                int kept = offsets[first];
+                for (int k = offsets[first]; k < end; k++) {
+                    final int weight = Graphs.unionWeight(sums[targets[k]]);
+                    if (weight > 0) {
+                        targets[kept] = targets[k];
+                        merged[kept++] = weight;
+                    }
+                }
+                rowSizes[first] = kept - offsets[first];
+            }
+        });
+        final int[] sources = new int[total];
+        int edgeCount = 0;
+        for (int first = 0; first < n; first++) {
+            for (int k = offsets[first]; k < offsets[first] + rowSizes[first]; k++) {
+                sources[edgeCount] = first;
+                targets[edgeCount] = targets[k];
+                merged[edgeCount++] = merged[k];
+            }
+        }
+        return new AffinityIndex(vocabulary, sources, targets, merged, edgeCount);
+    }
+    
+    /*
+     * Build the affinity graph an index caches, encoding each word's edges
+     * once; the graph takes a few bytes per edge besides the index.
+     */
+    private static Graph<String> toGraph(AffinityIndex index) {
+        final Vocabulary vocabulary = index.vocabulary();
+        final CompressedGraph<String> graph = new CompressedGraph<>();
+        final List<String> sources = new ArrayList<>(index.edgeCount());
+        final List<String> targets = new ArrayList<>(index.edgeCount());
+        final int[] weights = new int[index.edgeCount()];
+        for (int id = 0; id < vocabulary.size(); id++) {
+            final String word = vocabulary.word(id);
+            graph.add(word);
+            for (int k = index.start(id); k < index.start(id + 1); k++) {
+                sources.add(word);
+                targets.add(vocabulary.word(index.target(k)));
+                weights[k] = index.weight(k);
+            }
+        }
+        graph.setAll(sources, targets, weights);
+        graph.trimToSize();
+        return graph;
+    }
+    
+    /*
+     * Index a graph whose labels are already lower case, in time linear in
+     * its size if its targets() is, writing its edges straight into growable
+     * arrays of ids and weights.
+     */
+    static AffinityIndex indexOf(Graph<String> graph) {
+        final Vocabulary vocabulary = new Vocabulary();
+        final List<String> words = new ArrayList<>(graph.vertices());
+        for (String word : words) {
+            vocabulary.intern(word, 0, word.length());
+        }
+        int[] sources = new int[Math.max(16, words.size())];
+        int[] destinations = new int[sources.length];
+        int[] weights = new int[sources.length];
+        int edgeCount = 0;
+        for (int from = 0; from < words.size(); from += TARGETS_BATCH_SIZE) {
+            final List<String> block = words.subList(from, Math.min(words.size(), from + TARGETS_BATCH_SIZE));
+            // a batched graph answers for the whole block in one round trip
+            final Map<String, Map<String, Integer>> targets = graph instanceof BatchedGraph
+                    ? ((BatchedGraph<String>) graph).targetsOfAll(block)
+                    : null;
+            for (String word : block) {
+                final int source = vocabulary.find(word, 0, word.length());
+                final Map<String, Integer> out = targets == null ? graph.targets(word) : targets.get(word);
+                if (edgeCount + out.size() > sources.length) {
+                    final int capacity = Math.max(edgeCount + out.size(), sources.length * 2);
+                    sources = Arrays.copyOf(sources, capacity);
+                    destinations = Arrays.copyOf(destinations, capacity);
+                    weights = Arrays.copyOf(weights, capacity);
+                }
+                for (Map.Entry<String, Integer> edge : out.entrySet()) {
+                    final String target = edge.getKey();
+                    sources[edgeCount] = source;
+                    destinations[edgeCount] = vocabulary.intern(target, 0, target.length());
+                    weights[edgeCount++] = edge.getValue();
+                }
+            }
+        }
+        return new AffinityIndex(vocabulary, sources, destinations, weights, edgeCount);
+    }
+    
+    private void checkRep() {
+        assert (index == null) == (graph instanceof ShardedGraph);
+        if (index == null) {
+            return;
+        }
+        // only compared when small, since vertices() copies every label
+        assert index.vocabulary().size() > CHECK_REP_VERTICES || sameSize(graph, index);
+        assert ngrams == null || ngrams.order() > 2 && ngrams.vocabulary() == index.vocabulary();
+        assert ngrams == null || normalizer == Normalizer.LOWER_CASE;
+    }
+    
+    private static boolean sameSize(Graph<String> graph, AffinityIndex index) {
+        final Set<String> vertices = graph.vertices();
+        long edges = 0;
+        for (String vertex : vertices) {
+            edges += graph.targets(vertex).size();
+        }
+        return vertices.size() == index.vocabulary().size() && edges == index.edgeCount();
+    }
     
     /**
      * Generate a poem.
@@ -80,9 +647,217 @@ public class GraphPoet {
      * @return poem (as described above)
      */
     public String poem(String input) {
-        throw new RuntimeException("not implemented");
+        final StringBuilder poem = new StringBuilder(input.length() + input.length() / 2 + 16);
+        try {
+            poem(input, poem);
+        } catch (IOException ioe) {
+            throw new AssertionError("StringBuilder does not throw IOException", ioe);
+        }
+        return poem.toString();
+    }
+    
+    /**
+     * Generate a poem, as {@link #poem(String)} does, appending it to out.
+     * Words are found in place in input and compared with the affinity graph
+     * without being copied, so the only text this method creates is what it
+     * appends to out. A poet of order 2 allocates nothing else either; a
+     * poet of higher order allocates one small array for the context. A poet
+     * whose normalizer does more than lower-case a word copies the word to
+     * normalize it, except ASCII words if the normalizer only lower-cases
+     * those.
+     * 
+     * @param input text from which to create the poem
+     * @param out destination for the poem
+     * @throws IOException if out throws IOException
+     */
+    public void poem(CharSequence input, Appendable out) throws IOException {
+        if (index == null) {
+            fromIndex(neighbourhood((ShardedGraph<String>) graph, input)).poem(input, out);
+            return;
+        }
+        if (ngrams != null) {
+            poemWithContext(input, out);
+            return;
+        }
+        final Vocabulary vocabulary = index.vocabulary();
+        int previous = -1;
+        boolean first = true;
+        int end;
+        for (int start = skipDelimiters(input, 0); start < input.length(); start = skipDelimiters(input, end)) {
+            end = wordEnd(input, start);
+            final int id = find(vocabulary, input, start, end);
+            if (!first) {
+                out.append(' ');
+                if (previous >= 0 && id >= 0) {
+                    final int bridge = index.bridge(previous, id);
+                    if (bridge >= 0) {
+                        out.append(vocabulary.word(bridge)).append(' ');
+                    }
+                }
+            }
+            out.append(input, start, end);
+            previous = id;
+            first = false;
+        }
+    }
+    
+    /*
+     * Generate a poem as poem() does, bridging on the last order - 1 words of
+     * the poem so far; an input word not in the corpus starts a new context.
+     */
+    private void poemWithContext(CharSequence input, Appendable out) throws IOException {
+        final Vocabulary vocabulary = index.vocabulary();
+        final int[] history = new int[ngrams.order() - 1];
+        int length = 0;
+        boolean first = true;
+        int end;
+        for (int start = skipDelimiters(input, 0); start < input.length(); start = skipDelimiters(input, end)) {
+            end = wordEnd(input, start);
+            final int id = find(vocabulary, input, start, end);
+            if (!first) {
+                out.append(' ');
+                if (length > 0 && id >= 0) {
+                    final int bridge = ngrams.bridge(history, length, id);
+                    if (bridge >= 0) {
+                        out.append(vocabulary.word(bridge)).append(' ');
+                        length = push(history, length, bridge);
+                    }
+                }
+            }
+            out.append(input, start, end);
+            length = id >= 0 ? push(history, length, id) : 0;
+            first = false;
+        }
+    }
+    
+    /*
+     * Index the part of a sharded graph that a poem on input can use: the
+     * edges out of the input words, and the edges from their targets back to
+     * the input words.
+     */
+    private static AffinityIndex neighbourhood(ShardedGraph<String> graph, CharSequence input) {
+        final Vocabulary vocabulary = new Vocabulary();
+        int end;
+        for (int start = skipDelimiters(input, 0); start < input.length(); start = skipDelimiters(input, end)) {
+            end = wordEnd(input, start);
+            vocabulary.intern(input, start, end);
+        }
+        final int inputWords = vocabulary.size();
+        final BigramCounter edges = new BigramCounter();
+        final Map<String, Map<String, Integer>> targets = graph.targetsOfAll(words(vocabulary, 0, inputWords));
+        for (int source = 0; source < inputWords; source++) {
+            for (Map.Entry<String, Integer> edge : targets.get(vocabulary.word(source)).entrySet()) {
+                final String target = edge.getKey();
+                edges.add(source, vocabulary.intern(target, 0, target.length()), edge.getValue());
+            }
+        }
+        // the middle words' edges to input words; input words' edges are all known
+        final int words = vocabulary.size();
+        final Map<String, Map<String, Integer>> back = graph.targetsOfAll(words(vocabulary, inputWords, words));
+        for (int middle = inputWords; middle < words; middle++) {
+            for (Map.Entry<String, Integer> edge : back.get(vocabulary.word(middle)).entrySet()) {
+                final String target = edge.getKey();
+                final int id = vocabulary.find(target, 0, target.length());
+                if (id >= 0 && id < inputWords) {
+                    edges.add(middle, id, edge.getValue());
+                }
+            }
+        }
+        final int[] sources = new int[edges.size()];
+        final int[] destinations = new int[edges.size()];
+        final int[] weights = new int[edges.size()];
+        edges.copyTo(sources, destinations, weights);
+        return new AffinityIndex(vocabulary, sources, destinations, weights, edges.size());
+    }
+    
+    private static List<String> words(Vocabulary vocabulary, int from, int to) {
+        final List<String> words = new ArrayList<>(to - from);
+        for (int id = from; id < to; id++) {
+            words.add(vocabulary.word(id));
+        }
+        return words;
+    }
+    
+    /*
+     * Find an input word by its normal form, without copying it unless the
+     * normalizer does more than lower-case it.
+     */
+    private int find(Vocabulary vocabulary, CharSequence input, int start, int end) {
+        if (normalizer == Normalizer.LOWER_CASE
+                || normalizer.isAsciiLowerCasing() && isAscii(input, start, end)) {
+            return vocabulary.find(input, start, end);
+        }
+        final String normal = normalizer.normalize(input.subSequence(start, end).toString());
+        return normal.isEmpty() ? -1 : vocabulary.find(normal, 0, normal.length());
+    }
+    
+    private static boolean isAscii(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /*
+     * Append word to the fixed-size history, dropping the oldest word if it
+     * is full, and return the new length.
+     */
+    private static int push(int[] history, int length, int word) {
+        if (length == history.length) {
+            System.arraycopy(history, 1, history, 0, length - 1);
+            length--;
+        }
+        history[length] = word;
+        return length + 1;
     }
     
-    // TODO toString()
+    /**
+     * Make a generator of random walks and beam searches over this poet's
+     * affinity graph. The generator caches a sampling table for each word it
+     * leaves, so keep and share one generator rather than calling this often.
+     * A poet made by {@link #fromShards(ShardedGraph)} gives the generator a
+     * copy of its graph as it is now.
+     * 
+     * @return a new walk generator sharing this poet's affinity graph
+     */
+    public WalkGenerator walks() {
+        return new WalkGenerator(index == null ? indexOf(graph) : index);
+    }
+    
+    /**
+     * @return a short description of this poet's affinity graph
+     */
+    @Override
+    public String toString() {
+        if (index == null) {
+            return "GraphPoet(" + ((ShardedGraph<String>) graph).shardCount() + " shards)";
+        }
+        return "GraphPoet(" + index.vocabulary().size() + " words, " + index.edgeCount() + " edges"
+                + (ngrams == null ? "" : ", order " + ngrams.order()) + ")";
+    }
+    
+    /*
+     * Word boundaries, shared with the other ingesters in this package.
+     */
+    
+    static boolean isDelimiter(char c) {
+        return c == ' ' || c == '\n' || c == '\r';
+    }
+    
+    static int skipDelimiters(CharSequence text, int from) {
+        while (from < text.length() && isDelimiter(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+    
+    static int wordEnd(CharSequence text, int start) {
+        while (start < text.length() && !isDelimiter(text.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
     
 }
@@ -0,0 +1,359 @@
+package poet;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Progress, limits and cancellation for building a {@link GraphPoet} from
+ * a corpus, with {@link GraphPoet#GraphPoet(java.io.File, IngestionControl)}.
+ *
+ * <p>Ingestion runs in four phases, each timed separately: reading the
+ * corpus file, splitting it into words, counting adjacent word pairs, and
+ * building the affinity graph and its index from the pairs. While it runs,
+ * a control counts the bytes read, the words (tokens) seen, and the
+ * distinct words (vertices) and pairs (edges) kept, and calls its listener
+ * with itself every so often and at the end of each phase.
+ *
+ * <p>A control may bound the vertices, the edges and the heap in use. When
+ * a budget is reached, ingestion either stops there, building the poet from
+ * what it has counted so far ({@link OverBudget#STOP}), or goes on in a
+ * pruning mode ({@link OverBudget#PRUNE}). Once the vertices are at their
+ * budget no new words are added, and a word not yet seen breaks the chain
+ * of adjacent words as a missing word would. Once the edges are at their
+ * budget, pairs are counted with the Misra-Gries frequent-items summary: a
+ * pair not yet kept is not added, but instead takes one occurrence away
+ * from every kept pair, and pairs left with none are dropped. Of N pairs in
+ * the corpus, every pair seen more than N / (maxEdges + 1) times is then
+ * kept, with a weight at most that much below its true count. The summary
+ * takes O(1) amortized time per pair and O(maxEdges) memory.
+ *
+ * <p>Pruning cannot shrink the corpus text or the word ids noted while
+ * tokenizing, which take most of the heap, so the heap budget always stops
+ * ingestion, as {@link OverBudget#STOP} does.
+ *
+ * <p>Any thread may call {@link #cancel()}; ingestion notices within 64 KB
+ * or 64K words or edges of work and throws {@link CancellationException}.
+ * The budgets are checked as often, except the vertex and edge budgets, which
+ * are checked at every word.
+ *
+ * <p>A control is meant for one ingestion. Its observers are safe to call
+ * from any thread while ingestion runs; the listener is called on the
+ * ingesting thread.
+ */
+public class IngestionControl {
+
+    /**
+     * What ingestion does when a budget is reached.
+     */
+    public enum OverBudget {
+        /** Stop ingesting and build the poet from what was counted so far. */
+        STOP,
+        /**
+         * Go on ingesting past the vertex and edge budgets, adding no new
+         * words and dropping the rarest pairs; the heap budget still stops.
+         */
+        PRUNE
+    }
+
+    /**
+     * A phase of ingestion.
+     */
+    public enum Phase {
+        /** Reading the corpus file. */
+        READ,
+        /** Splitting the corpus into words and interning them. */
+        TOKENIZE,
+        /** Counting adjacent word pairs. */
+        COUNT,
+        /** Building the affinity graph and its index from the pairs. */
+        INSERT
+    }
+
+    /**
+     * Receives progress reports during ingestion.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * Called on the ingesting thread every so often, and at the end of
+         * each phase.
+         *
+         * @param progress the control reporting, whose observers give the
+         *                 counts so far; must not be used to start another
+         *                 ingestion
+         */
+        void progress(IngestionControl progress);
+    }
+
+    // number of units of work (bytes, words, pairs) between checks of the
+    // budgets and cancellation; a power of two
+    static final int CHECK_INTERVAL = 1 << 16;
+
+    private static final int BYTES_READ = 0;
+    private static final int TOKENS = 1;
+    private static final int VERTICES = 2;
+    private static final int EDGES = 3;
+
+    private final int maxVertices;
+    private final int maxEdges;
+    private final long maxHeapBytes;
+    private final OverBudget overBudget;
+    private final Listener listener;
+
+    private final AtomicLongArray counts = new AtomicLongArray(4);
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    private volatile boolean cancelled = false;
+    private volatile boolean budgetReached = false;
+    private volatile Phase phase = null;
+
+    // Abstraction function:
+    //   represents an ingestion with budgets maxVertices, maxEdges and
+    //   maxHeapBytes, handled as overBudget says, reporting to listener;
+    //   that has so far read counts[BYTES_READ] bytes, seen counts[TOKENS]
+    //   words and kept counts[VERTICES] vertices and counts[EDGES] edges,
+    //   spent phaseNanos[p.ordinal()] nanoseconds in each phase p, is in
+    //   phase (null before it starts), and has been cancelled if cancelled
+    //   and reached a budget if budgetReached
+    // Representation invariant:
+    //   maxVertices, maxEdges and maxHeapBytes are positive
+    //   overBudget and listener are not null
+    //   all counts and times are nonnegative
+    // Safety from rep exposure:
+    //   all fields are private; observers return primitives or fresh maps
+    // Thread safety argument:
+    //   the counts and times are atomic and the flags volatile, so observers
+    //   on other threads see each one's latest value; only the ingesting
+    //   thread writes the counts, times and phase, so there are no lost
+    //   updates
+
+    /**
+     * Make a control with no budgets and no listener, only for cancellation
+     * and timing.
+     */
+    public IngestionControl() {
+        this(Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, OverBudget.STOP, progress -> { });
+    }
+
+    /**
+     * Make a control.
+     *
+     * @param maxVertices budget of distinct words, positive
+     * @param maxEdges budget of distinct adjacent word pairs, positive
+     * @param maxHeapBytes budget of heap in use, as
+     *                     {@link Runtime#totalMemory()} minus
+     *                     {@link Runtime#freeMemory()}, positive; the heap in
+     *                     use includes garbage, so this budget is approximate
+     * @param overBudget what to do when a budget is reached
+     * @param listener receives progress reports
+     * @throws IllegalArgumentException if a budget is not positive
+     */
+    public IngestionControl(int maxVertices, int maxEdges, long maxHeapBytes, OverBudget overBudget,
+            Listener listener) {
+        if (maxVertices <= 0 || maxEdges <= 0 || maxHeapBytes <= 0) {
+            throw new IllegalArgumentException("budgets must be positive");
+        }
+        if (overBudget == null || listener == null) {
+            throw new IllegalArgumentException("overBudget and listener must not be null");
+        }
+        this.maxVertices = maxVertices;
+        this.maxEdges = maxEdges;
+        this.maxHeapBytes = maxHeapBytes;
+        this.overBudget = overBudget;
+        this.listener = listener;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert maxVertices > 0 && maxEdges > 0 && maxHeapBytes > 0;
+        assert overBudget != null && listener != null;
+    }
+
+    /**
+     * Ask ingestion to stop. It stops at its next check, throwing
+     * {@link CancellationException}; if it has already finished, this has
+     * no effect.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if {@link #cancel()} has been called
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true if ingestion reached a budget, and so stopped early or
+     *         pruned
+     */
+    public boolean budgetReached() {
+        return budgetReached;
+    }
+
+    /**
+     * @return the phase ingestion is in, or null if it has not started;
+     *         after it ends, its last phase
+     */
+    public Phase phase() {
+        return phase;
+    }
+
+    /**
+     * @return number of bytes of the corpus read so far
+     */
+    public long bytesRead() {
+        return counts.get(BYTES_READ);
+    }
+
+    /**
+     * @return number of words of the corpus seen so far, kept or not
+     */
+    public long tokens() {
+        return counts.get(TOKENS);
+    }
+
+    /**
+     * @return number of distinct words kept so far
+     */
+    public long vertices() {
+        return counts.get(VERTICES);
+    }
+
+    /**
+     * @return number of distinct adjacent word pairs kept so far
+     */
+    public long edges() {
+        return counts.get(EDGES);
+    }
+
+    /**
+     * @param phase a phase
+     * @return nanoseconds spent in that phase so far
+     */
+    public long nanos(Phase phase) {
+        return phaseNanos.get(phase.ordinal());
+    }
+
+    /**
+     * @return nanoseconds spent in each phase so far, in phase order
+     */
+    public Map<Phase, Long> timings() {
+        final Map<Phase, Long> timings = new EnumMap<>(Phase.class);
+        for (Phase p : Phase.values()) {
+            timings.put(p, nanos(p));
+        }
+        return timings;
+    }
+
+    /*
+     * Package-private operations for GraphPoet, called on the ingesting
+     * thread only.
+     */
+
+    int maxVertices() {
+        return maxVertices;
+    }
+
+    int maxEdges() {
+        return maxEdges;
+    }
+
+    boolean prunes() {
+        return overBudget == OverBudget.PRUNE;
+    }
+
+    /**
+     * Start a phase.
+     *
+     * @param next the phase starting
+     * @return the start time, for {@link #endPhase(long)}
+     * @throws CancellationException if cancelled
+     */
+    long startPhase(Phase next) {
+        phase = next;
+        if (cancelled) {
+            throw new CancellationException("ingestion cancelled in phase " + phase);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * End the current phase and report progress.
+     *
+     * @param start value returned when the phase started
+     */
+    void endPhase(long start) {
+        phaseNanos.addAndGet(phase.ordinal(), System.nanoTime() - start);
+        listener.progress(this);
+    }
+
+    /**
+     * Record progress and report it to the listener.
+     *
+     * @param bytesRead bytes read so far
+     * @param tokens words seen so far
+     * @param vertices distinct words kept so far
+     * @param edges distinct pairs kept so far
+     */
+    void report(long bytesRead, long tokens, long vertices, long edges) {
+        counts.set(BYTES_READ, bytesRead);
+        counts.set(TOKENS, tokens);
+        counts.set(VERTICES, vertices);
+        counts.set(EDGES, edges);
+        listener.progress(this);
+    }
+
+    /**
+     * Check for cancellation, and whether the heap in use is over budget.
+     *
+     * @return true if the heap in use is over budget, in which case
+     *         {@link #budgetReached()} becomes true
+     * @throws CancellationException if cancelled
+     */
+    boolean checkpoint() {
+        if (cancelled) {
+            throw new CancellationException("ingestion cancelled in phase " + phase);
+        }
+        if (maxHeapBytes == Long.MAX_VALUE) {
+            return false;
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        final boolean over = runtime.totalMemory() - runtime.freeMemory() > maxHeapBytes;
+        if (over) {
+            budgetReached = true;
+        }
+        return over;
+    }
+
+    /**
+     * Note that the vertex or edge budget was reached.
+     */
+    void reachedBudget() {
+        budgetReached = true;
+    }
+
+    /**
+     * @return a one-line summary of the progress and timings so far
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("IngestionControl(");
+        sb.append(bytesRead()).append(" bytes, ").append(tokens()).append(" tokens, ")
+                .append(vertices()).append(" vertices, ").append(edges()).append(" edges");
+        for (Phase p : Phase.values()) {
+            sb.append(", ").append(p.name().toLowerCase(Locale.ROOT)).append(' ').append(nanos(p) / 1_000_000).append(" ms");
+        }
+        if (budgetReached) {
+            sb.append(", budget reached");
+        }
+        if (cancelled) {
+            sb.append(", cancelled");
+        }
+        return sb.append(')').toString();
+    }
+}
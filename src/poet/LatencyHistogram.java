@@ -0,0 +1,116 @@
+package poet;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of latencies with bounded relative error.
+ *
+ * <p>Latencies are recorded in microseconds into log-linear buckets: each
+ * power-of-two range is split into {@value #SUB_BUCKETS} equal sub-buckets, so
+ * a reported percentile is within about 1/{@value #SUB_BUCKETS} of the true
+ * value. Recording is lock-free and does not allocate.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAGNITUDES = 64 - SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(SUB_BUCKETS * (MAGNITUDES + 1));
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    // Abstraction function:
+    //   represents the multiset of recorded latencies, each rounded down to
+    //   the lower bound of bucket(latency)
+    // Representation invariant:
+    //   count == sum of buckets; max >= every recorded latency
+    // Safety from rep exposure:
+    //   all fields are private and never returned
+
+    /**
+     * Record one latency.
+     *
+     * @param nanos elapsed time in nanoseconds; negative values count as zero
+     */
+    public void recordNanos(long nanos) {
+        final long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        buckets.incrementAndGet(bucket(micros));
+        count.incrementAndGet();
+        long current;
+        while (micros > (current = max.get()) && !max.compareAndSet(current, micros)) {
+            // retry
+        }
+    }
+
+    /**
+     * @return number of latencies recorded
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * @return largest latency recorded, in microseconds, or 0 if none
+     */
+    public long maxMicros() {
+        return max.get();
+    }
+
+    /**
+     * Estimate a percentile. Concurrent recording may or may not be reflected.
+     *
+     * @param percentile in the range [0, 100]
+     * @return lower bound, in microseconds, of the bucket containing the
+     *         given percentile of recorded latencies; the largest latency
+     *         for percentile 100; or 0 if none recorded
+     */
+    public long percentileMicros(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile out of range: " + percentile);
+        }
+        final long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        if (rank >= total) {
+            return max.get();
+        }
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(lowerBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return a one-line summary of count and common percentiles
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d p50=%dus p90=%dus p99=%dus p99.9=%dus max=%dus",
+                count(), percentileMicros(50), percentileMicros(90), percentileMicros(99),
+                percentileMicros(99.9), maxMicros());
+    }
+
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        final int sub = (int) (micros >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowerBound(int bucket) {
+        final int magnitude = bucket / SUB_BUCKETS;
+        final long sub = bucket % SUB_BUCKETS;
+        return magnitude == 0 ? sub : (SUB_BUCKETS + sub) << (magnitude - 1);
+    }
+}
@@ -5,6 +5,9 @@ package poet;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.SplittableRandom;
 
 /**
  * Example program using GraphPoet.
@@ -13,16 +16,88 @@ import java.io.IOException;
  */
 public class Main {
     
+    private static final String EXAMPLE_CORPUS = "src/poet/mugar-omni-theater.txt";
+    private static final String EXAMPLE_INPUT = "Test the system.";
+    
     /**
-     * Generate example poetry.
+     * Generate example poetry, serve or load-test poems over HTTP, or time
+     * random walks.
+     * 
+     * <pre>
+     *   Main                                            print an example poem
+     *   Main serve [corpus [port [threads [queue]]]]    run a PoemServer
+     *   Main load url [concurrency [requests [input]]]  run a PoemLoadClient
+     *   Main walk [corpus [start [words [lines [seed]]]]]
+     *                                                   time random walks
+     * </pre>
      * 
-     * @param args unused
-     * @throws IOException if a poet corpus file cannot be found or read
+     * @param args mode and its arguments, as above
+     * @throws IOException if a poet corpus file cannot be found or read, or
+     *         the server cannot be started
+     * @throws InterruptedException if interrupted while load testing
      */
-    public static void main(String[] args) throws IOException {
-        final GraphPoet nimoy = new GraphPoet(new File("src/poet/mugar-omni-theater.txt"));
-        final String input = "Test the system.";
-        System.out.println(input + "\n>>>\n" + nimoy.poem(input));
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("serve")) {
+            serve(args);
+        } else if (args.length > 0 && args[0].equals("load")) {
+            if (args.length < 2) {
+                System.err.println("usage: Main load url [concurrency [requests [input]]]");
+                System.exit(2);
+            }
+            load(args);
+        } else if (args.length > 0 && args[0].equals("walk")) {
+            walk(args);
+        } else {
+            final GraphPoet nimoy = new GraphPoet(new File(EXAMPLE_CORPUS));
+            System.out.println(EXAMPLE_INPUT + "\n>>>\n" + nimoy.poem(EXAMPLE_INPUT));
+        }
+    }
+    
+    private static void serve(String[] args) throws IOException {
+        final GraphPoet poet = new GraphPoet(new File(arg(args, 1, EXAMPLE_CORPUS)));
+        final int port = Integer.parseInt(arg(args, 2, "8080"));
+        final int threads = Integer.parseInt(arg(args, 3, Integer.toString(Runtime.getRuntime().availableProcessors())));
+        final int queue = Integer.parseInt(arg(args, 4, "1024"));
+        final PoemServer server = new PoemServer(poet, new InetSocketAddress(port), threads, queue);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            System.out.println("latency " + server.latencySummary() + ", rejected " + server.rejectedCount());
+        }));
+        server.start();
+        System.out.println("serving " + poet + " on " + server.address()
+                + " with " + threads + " threads and queue " + queue);
+    }
+    
+    private static void load(String[] args) throws IOException, InterruptedException {
+        final URL url = new URL(args[1]);
+        final int concurrency = Integer.parseInt(arg(args, 2, "16"));
+        final long requests = Long.parseLong(arg(args, 3, "100000"));
+        final PoemLoadClient client = new PoemLoadClient(url, arg(args, 4, EXAMPLE_INPUT));
+        System.out.println(client.run(concurrency, requests));
+    }
+    
+    private static void walk(String[] args) throws IOException {
+        final WalkGenerator walks = new GraphPoet(new File(arg(args, 1, EXAMPLE_CORPUS))).walks();
+        final String start = arg(args, 2, "the");
+        final int words = Integer.parseInt(arg(args, 3, "12"));
+        final long lines = Long.parseLong(arg(args, 4, "1000000"));
+        final SplittableRandom random = new SplittableRandom(Long.parseLong(arg(args, 5, "1")));
+        System.out.println(walks.walk(start, words, random.nextLong()));
+        final StringBuilder line = new StringBuilder();
+        long characters = 0;
+        final long began = System.nanoTime();
+        for (long i = 0; i < lines; i++) {
+            line.setLength(0);
+            walks.walk(start, words, random, line);
+            characters += line.length();
+        }
+        final double seconds = (System.nanoTime() - began) / 1e9;
+        System.out.printf("%d lines (%d chars) in %.2f s: %.0f lines/s%n",
+                lines, characters, seconds, lines / seconds);
+    }
+    
+    private static String arg(String[] args, int index, String otherwise) {
+        return index < args.length ? args[index] : otherwise;
     }
     
 }
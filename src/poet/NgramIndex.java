@@ -0,0 +1,194 @@
+package poet;
+
+import java.util.Arrays;
+
+/**
+ * An immutable trie of word sequence counts, for finding bridge words that
+ * fit the words before them and not only the one word before.
+ *
+ * <p>Each node stands for the sequence of word ids on its path from the root
+ * and holds that sequence's count. A node at depth d is a context of d words,
+ * and its children are the words seen after that context, weighted by their
+ * counts; so the nodes at depth 1 and 2 form the plain word affinity graph.
+ * Children are stored in compressed-sparse-row form sorted by word id.
+ */
+class NgramIndex {
+
+    private final Vocabulary vocabulary;
+    private final int order;
+    private final int[] counts;
+    private final int[] childStart;
+    private final int[] childWord;
+    private final int[] childNode;
+
+    // Abstraction function:
+    //   represents the count of every word id sequence of length 1 to order:
+    //   the sequence spelled by the path from node 0 to node v, following
+    //   the child childNode[k] labeled childWord[k] for k in
+    //   [childStart[u], childStart[u + 1]) from each node u, occurs counts[v]
+    //   times; sequences without a node occur 0 times
+    // Representation invariant:
+    //   childStart.length == counts.length + 1, childStart[0] == 0,
+    //   nondecreasing, and childStart[counts.length] == counts.length - 1
+    //   == childWord.length == childNode.length
+    //   within each row, childWord is strictly increasing
+    //   every node except 0 is the child of exactly one node, at depth at
+    //   most order, and has a positive count
+    // Safety from rep exposure:
+    //   all fields are private and never returned; vocabulary is not mutated
+    //   after construction
+
+    /**
+     * Make an index from the nodes of a trie.
+     *
+     * @param vocabulary words named by the ids; must not be mutated afterwards
+     * @param order greatest depth of the trie
+     * @param parents parent of each node except node 0, the root
+     * @param words word id of each node except the root
+     * @param nodeCounts positive count of each node except the root
+     * @param nodeCount number of nodes, including the root
+     */
+    NgramIndex(Vocabulary vocabulary, int order, int[] parents, int[] words, int[] nodeCounts, int nodeCount) {
+        this.vocabulary = vocabulary;
+        this.order = order;
+        this.counts = Arrays.copyOf(nodeCounts, nodeCount);
+        this.childStart = new int[nodeCount + 1];
+        for (int v = 1; v < nodeCount; v++) {
+            childStart[parents[v] + 1]++;
+        }
+        for (int u = 0; u < nodeCount; u++) {
+            childStart[u + 1] += childStart[u];
+        }
+        // sort each row by word, carrying the child node in the low bits
+        final long[] packed = new long[nodeCount - 1];
+        final int[] fill = Arrays.copyOf(childStart, nodeCount);
+        for (int v = 1; v < nodeCount; v++) {
+            packed[fill[parents[v]]++] = ((long) words[v] << 32) | v;
+        }
+        for (int u = 0; u < nodeCount; u++) {
+            Arrays.sort(packed, childStart[u], childStart[u + 1]);
+        }
+        this.childWord = new int[nodeCount - 1];
+        this.childNode = new int[nodeCount - 1];
+        for (int k = 0; k < packed.length; k++) {
+            childWord[k] = (int) (packed[k] >>> 32);
+            childNode[k] = (int) packed[k];
+        }
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert childStart.length == counts.length + 1;
+        assert childStart[counts.length] == childWord.length;
+        assert childWord.length == childNode.length;
+        assert childNode.length == counts.length - 1;
+    }
+
+    /**
+     * @return the words of this index
+     */
+    Vocabulary vocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * @return longest sequence counted
+     */
+    int order() {
+        return order;
+    }
+
+    /**
+     * @return number of nodes, including the root
+     */
+    int nodeCount() {
+        return counts.length;
+    }
+
+    /**
+     * @param node a node
+     * @param word a word id
+     * @return the node for node's sequence followed by word, or -1 if that
+     *         sequence was never seen
+     */
+    int child(int node, int word) {
+        final int k = Arrays.binarySearch(childWord, childStart[node], childStart[node + 1], word);
+        return k >= 0 ? childNode[k] : -1;
+    }
+
+    /**
+     * @param words word ids
+     * @param from start of the sequence in words
+     * @param to end of the sequence in words
+     * @return the node for sequence words[from..to), or -1 if it was never seen
+     */
+    int find(int[] words, int from, int to) {
+        int node = ContextTrie.ROOT;
+        for (int i = from; i < to && node >= 0; i++) {
+            node = child(node, words[i]);
+        }
+        return node;
+    }
+
+    /**
+     * Find the best bridge after a context: the word b maximizing the count
+     * of (context, b) plus the count of (context minus its first word, b,
+     * next), using the longest suffix of history, up to order - 1 words,
+     * for which any bridge exists. With a one-word context this is the
+     * maximum-weight two-edge path of the plain affinity graph. Ties go to
+     * the lowest word id.
+     *
+     * @param history word ids of the text so far, most recent last
+     * @param length number of valid ids at the start of history, at least 1
+     * @param next word id that follows the bridge
+     * @return id of the bridge word, or -1 if there is none
+     */
+    int bridge(int[] history, int length, int next) {
+        for (int context = Math.min(order - 1, length); context >= 1; context--) {
+            final int node = find(history, length - context, length);
+            if (node < 0) {
+                continue;
+            }
+            // every suffix of a counted sequence is counted too
+            final int suffix = find(history, length - context + 1, length);
+            int best = -1;
+            long bestWeight = 0;
+            for (int k = childStart[node]; k < childStart[node + 1]; k++) {
+                final int shifted = child(suffix, childWord[k]);
+                final int after = shifted < 0 ? -1 : child(shifted, next);
+                if (after >= 0) {
+                    final long weight = (long) counts[childNode[k]] + counts[after];
+                    if (weight > bestWeight) {
+                        best = childWord[k];
+                        bestWeight = weight;
+                    }
+                }
+            }
+            if (best >= 0) {
+                return best;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the plain word affinity graph: an edge from a to b weighted by
+     *         the count of the sequence (a, b)
+     */
+    AffinityIndex bigrams() {
+        final int[] sources = new int[counts.length];
+        final int[] targets = new int[counts.length];
+        final int[] weights = new int[counts.length];
+        int edgeCount = 0;
+        for (int k = childStart[ContextTrie.ROOT]; k < childStart[ContextTrie.ROOT + 1]; k++) {
+            final int first = childNode[k];
+            for (int j = childStart[first]; j < childStart[first + 1]; j++) {
+                sources[edgeCount] = childWord[k];
+                targets[edgeCount] = childWord[j];
+                weights[edgeCount] = counts[childNode[j]];
+                edgeCount++;
+            }
+        }
+        return new AffinityIndex(vocabulary, sources, targets, weights, edgeCount);
+    }
+}
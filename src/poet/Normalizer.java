@@ -0,0 +1,92 @@
+package poet;
+
+import java.util.Locale;
+
+/**
+ * A normal form for corpus words, which decides which words a poet treats
+ * as the same.
+ *
+ * <p>A normalizer is applied to each word of a corpus, as delimited in
+ * {@link GraphPoet}, before the word is counted, and to each input word of a
+ * poem before it is looked up. Normalizers must be immutable and safe for
+ * use by several threads at once.
+ */
+public interface Normalizer {
+
+    /**
+     * Lower-cases each character with {@link Character#toLowerCase(char)},
+     * as the {@link GraphPoet} specification does. This is the default.
+     */
+    public static final Normalizer LOWER_CASE = new Normalizer() {
+        @Override public String normalize(String word) {
+            return Vocabulary.lowerCase(word, 0, word.length());
+        }
+        @Override public boolean isAsciiLowerCasing() {
+            return true;
+        }
+        @Override public String toString() {
+            return "LOWER_CASE";
+        }
+    };
+
+    /**
+     * Folds case with the full Unicode case mappings, which may change a
+     * word's length: "Stra&szlig;e", "STRASSE" and "strasse" are one word.
+     */
+    public static final Normalizer CASE_FOLD = new Normalizer() {
+        @Override public String normalize(String word) {
+            return word.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+        }
+        @Override public boolean isAsciiLowerCasing() {
+            return true;
+        }
+        @Override public String toString() {
+            return "CASE_FOLD";
+        }
+    };
+
+    /**
+     * @param word a nonempty word
+     * @return the normal form of word, lower case as defined by
+     *         {@link Character#toLowerCase(char)}, or the empty string if
+     *         word should be skipped, as if it were not in the text at all
+     */
+    public String normalize(String word);
+
+    /**
+     * @return true if, on every word made only of ASCII characters, this
+     *         normalizer does nothing but lower-case the letters A-Z; such
+     *         words are then normalized in place without being decoded
+     */
+    public default boolean isAsciiLowerCasing() {
+        return false;
+    }
+
+    /**
+     * Make a normalizer that strips punctuation from both ends of a word
+     * before normalizing it, so "Hello," and "hello" are one word and a word
+     * made only of punctuation, such as "--", is skipped. Punctuation is any
+     * code point in one of Unicode's punctuation categories.
+     *
+     * @param then normalizer applied to what is left of each word
+     * @return a normalizer that strips punctuation, then applies then
+     */
+    public static Normalizer stripPunctuation(Normalizer then) {
+        return new Normalizer() {
+            @Override public String normalize(String word) {
+                int start = 0;
+                int end = word.length();
+                while (start < end && Tokenizer.isPunctuation(word.codePointAt(start))) {
+                    start += Character.charCount(word.codePointAt(start));
+                }
+                while (end > start && Tokenizer.isPunctuation(word.codePointBefore(end))) {
+                    end -= Character.charCount(word.codePointBefore(end));
+                }
+                return start == end ? "" : then.normalize(word.substring(start, end));
+            }
+            @Override public String toString() {
+                return "stripPunctuation(" + then + ")";
+            }
+        };
+    }
+}
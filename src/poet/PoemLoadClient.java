@@ -0,0 +1,119 @@
+package poet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A closed-loop load generator for PoemServer.
+ *
+ * <p>Each of a fixed number of client threads sends {@code POST /poem}
+ * requests back to back until the shared request budget is used up, and
+ * records the end-to-end latency of every successful request.
+ */
+public class PoemLoadClient {
+
+    private final URL poemUrl;
+    private final byte[] body;
+    private final AtomicLong remaining = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private LatencyHistogram latency = new LatencyHistogram();
+
+    // Abstraction function:
+    //   represents a load generator that posts body to poemUrl, whose
+    //   current or last run has remaining requests left to send, has
+    //   recorded the latency of successful requests in latency and has
+    //   counted shed and failed requests in rejected and failed
+    // Representation invariant:
+    //   remaining >= 0
+    // Safety from rep exposure:
+    //   all fields are private; only counts and Strings are returned
+    // Thread safety argument:
+    //   run() is synchronized, so runs take turns; it resets the counts and
+    //   replaces latency before starting its client threads and reads them
+    //   after joining them, so the threads see the new histogram; they only
+    //   use atomic counters and the thread-safe histogram
+
+    /**
+     * @param poemUrl URL of a PoemServer's /poem endpoint
+     * @param input poem input to send with every request
+     */
+    public PoemLoadClient(URL poemUrl, String input) {
+        this.poemUrl = poemUrl;
+        this.body = input.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Send requests and wait for all of them to finish. Each run starts with
+     * fresh counts and latencies, so its summary covers only its own
+     * requests; runs on one client take turns.
+     *
+     * @param concurrency number of client threads, at least 1
+     * @param requests total number of requests to send
+     * @return a summary of throughput, latency percentiles and errors
+     * @throws InterruptedException if interrupted while waiting for clients
+     * @throws IllegalArgumentException if concurrency is less than 1 or
+     *         requests is negative
+     */
+    public synchronized String run(int concurrency, long requests) throws InterruptedException {
+        if (concurrency < 1 || requests < 0) {
+            throw new IllegalArgumentException("need concurrency >= 1 and requests >= 0");
+        }
+        remaining.set(requests);
+        rejected.set(0);
+        failed.set(0);
+        latency = new LatencyHistogram();
+        final List<Thread> clients = new ArrayList<>();
+        final long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            final Thread client = new Thread(this::sendUntilDone, "poem-client-" + i);
+            client.start();
+            clients.add(client);
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        return String.format("%d ok in %.2fs (%.0f req/s), %d rejected, %d failed%nlatency %s",
+                latency.count(), seconds, latency.count() / seconds, rejected.get(), failed.get(), latency);
+    }
+
+    private void sendUntilDone() {
+        final byte[] buffer = new byte[4096];
+        // take one request from the budget, never counting below zero
+        while (remaining.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0) {
+            final long begin = System.nanoTime();
+            try {
+                final HttpURLConnection connection = (HttpURLConnection) poemUrl.openConnection();
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body);
+                }
+                final int status = connection.getResponseCode();
+                try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                    while (in != null && in.read(buffer) > 0) {
+                        // drain so the connection can be reused
+                    }
+                }
+                if (status == HttpURLConnection.HTTP_OK) {
+                    latency.recordNanos(System.nanoTime() - begin);
+                } else if (status == HttpURLConnection.HTTP_UNAVAILABLE) {
+                    rejected.incrementAndGet();
+                } else {
+                    failed.incrementAndGet();
+                }
+            } catch (IOException ioe) {
+                failed.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package poet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An HTTP front end that serves poems from one shared GraphPoet.
+ *
+ * <p>Endpoints:
+ * <ul><li> {@code POST /poem} with the input as a UTF-8 body of at most
+ *          1 MB, or {@code GET /poem?input=...}; responds with the poem as
+ *          text, or with {@code 413 Payload Too Large} if the body is
+ *          longer.
+ *     <li> {@code GET /stats}; responds with request counts and latency
+ *          percentiles, measured from when a request is handed to the worker
+ *          pool until its response is sent. </ul>
+ *
+ * <p>Requests run on a fixed pool of worker threads in front of a bounded
+ * queue. When both are full, new requests are answered immediately with
+ * {@code 503 Service Unavailable} instead of queueing without limit.
+ */
+public class PoemServer {
+
+    private static final int OK = 200;
+    private static final int BAD_METHOD = 405;
+    private static final int TOO_LARGE = 413;
+    private static final int UNAVAILABLE = 503;
+    
+    // set while an exchange rejected by the worker pool runs on the dispatcher
+    private static final ThreadLocal<Boolean> SHEDDING = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    // System.nanoTime() at which the current worker's exchange was submitted
+    private static final ThreadLocal<long[]> STARTED = ThreadLocal.withInitial(() -> new long[1]);
+    
+    // longest POST body accepted, in bytes
+    static final int MAX_BODY_BYTES = 1 << 20;
+
+    private final GraphPoet poet;
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong rejected = new AtomicLong();
+
+    // Abstraction function:
+    //   represents a poem service for poet listening on server's address,
+    //   whose completed request latencies are latency and whose shed
+    //   request count is rejected
+    // Representation invariant:
+    //   server dispatches to a ShedExecutor over workers
+    // Safety from rep exposure:
+    //   all fields are private; only counts and Strings are returned
+
+    /**
+     * Create a server; it does not accept connections until start().
+     *
+     * @param poet poet to serve poems from; must not be used concurrently by
+     *             anything that mutates it
+     * @param address address to listen on; port 0 picks a free port
+     * @param threads number of worker threads, at least 1
+     * @param queueCapacity number of requests allowed to wait for a worker,
+     *                      at least 0
+     * @throws IOException if the address cannot be bound
+     */
+    public PoemServer(GraphPoet poet, InetSocketAddress address, int threads, int queueCapacity)
+            throws IOException {
+        if (threads < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("need threads >= 1 and queueCapacity >= 0");
+        }
+        this.poet = poet;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                queueCapacity == 0 ? new SynchronousQueue<Runnable>()
+                                   : new ArrayBlockingQueue<Runnable>(queueCapacity),
+                r -> {
+                    final Thread t = new Thread(r, "poem-worker-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(new ShedExecutor());
+        server.createContext("/poem", this::handlePoem);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * Start accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests, wait up to delaySeconds for exchanges in
+     * progress, and stop the worker threads.
+     *
+     * @param delaySeconds maximum time to wait
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        workers.shutdownNow();
+    }
+
+    /**
+     * @return the address this server is listening on
+     */
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    /**
+     * @return latencies of requests answered by a worker so far
+     */
+    public String latencySummary() {
+        return latency.toString();
+    }
+
+    /**
+     * @return number of requests shed with 503 so far
+     */
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    /*
+     * Hands exchanges to the worker pool. A rejected exchange is run on the
+     * dispatcher thread with the shedding flag set, which makes the handler
+     * answer 503 without doing any work.
+     */
+    private class ShedExecutor implements Executor {
+        @Override public void execute(Runnable exchange) {
+            final long enqueued = System.nanoTime();
+            try {
+                workers.execute(() -> {
+                    STARTED.get()[0] = enqueued;
+                    exchange.run();
+                });
+            } catch (RejectedExecutionException ree) {
+                SHEDDING.set(Boolean.TRUE);
+                try {
+                    exchange.run();
+                } finally {
+                    SHEDDING.set(Boolean.FALSE);
+                }
+            }
+        }
+    }
+
+    private void handlePoem(HttpExchange exchange) throws IOException {
+        try {
+            if (SHEDDING.get()) {
+                rejected.incrementAndGet();
+                respond(exchange, UNAVAILABLE, "overloaded\n");
+                return;
+            }
+            final String input;
+            if ("POST".equals(exchange.getRequestMethod())) {
+                input = readBody(exchange);
+                if (input == null) {
+                    respond(exchange, TOO_LARGE, "body longer than " + MAX_BODY_BYTES + " bytes\n");
+                    return;
+                }
+            } else if ("GET".equals(exchange.getRequestMethod())) {
+                input = queryInput(exchange.getRequestURI().getRawQuery());
+            } else {
+                respond(exchange, BAD_METHOD, "use GET or POST\n");
+                return;
+            }
+            respond(exchange, OK, poet.poem(input));
+            latency.recordNanos(System.nanoTime() - STARTED.get()[0]);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            respond(exchange, OK, "latency " + latency + "\nrejected " + rejected.get() + "\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /*
+     * Read a request body as UTF-8, or return null if it is longer than
+     * MAX_BODY_BYTES, reading no more than one byte past the limit.
+     */
+    private static String readBody(HttpExchange exchange) throws IOException {
+        final String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (declared != null) {
+            try {
+                if (Long.parseLong(declared.trim()) > MAX_BODY_BYTES) {
+                    return null;
+                }
+            } catch (NumberFormatException nfe) {
+                // the server itself rejects a malformed length before this
+            }
+        }
+        final InputStream in = exchange.getRequestBody();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer, 0, Math.min(buffer.length, MAX_BODY_BYTES + 1 - body.size()))) > 0) {
+            body.write(buffer, 0, n);
+            if (body.size() > MAX_BODY_BYTES) {
+                return null;
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String queryInput(String rawQuery) throws UnsupportedEncodingException {
+        if (rawQuery == null) {
+            return "";
+        }
+        for (String parameter : rawQuery.split("&")) {
+            if (parameter.startsWith("input=")) {
+                return URLDecoder.decode(parameter.substring("input=".length()), "UTF-8");
+            }
+        }
+        return "";
+    }
+}
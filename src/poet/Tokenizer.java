@@ -0,0 +1,207 @@
+package poet;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Splits UTF-8 text into words, as delimited in {@link GraphPoet}, and
+ * interns their normal forms, without decoding the text first.
+ *
+ * <p>The delimiters, space, newline and carriage return, are single bytes
+ * in UTF-8 that never occur inside the encoding of another character, so
+ * words can be found by scanning bytes. The scan reads eight bytes at a time
+ * as one long and finds the delimiters among them with a few word-wide
+ * arithmetic operations (SIMD within a register), building a bitmap of the
+ * delimiters and one of the non-ASCII bytes for each block of 64 bytes.
+ * Word boundaries are then the bits where the delimiter bitmap changes, so
+ * each word costs a few bit operations however long it is. If the
+ * normalizer only lower-cases ASCII words, they are interned straight from
+ * the bytes; other words are decoded and normalized as Strings.
+ *
+ * <p>A Tokenizer is immutable.
+ */
+final class Tokenizer {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long SPACES = ONES * ' ';
+    private static final long NEWLINES = ONES * '\n';
+    private static final long RETURNS = ONES * '\r';
+    private static final long GATHER = 0x0002040810204081L;
+    private static final int BLOCK = 64;
+
+    private final Normalizer normalizer;
+
+    // Abstraction function:
+    //   represents the tokenizer that normalizes words with normalizer
+    // Representation invariant:
+    //   normalizer != null
+    // Safety from rep exposure:
+    //   the only field is private, final and immutable
+
+    /**
+     * @param normalizer normal form of the words
+     */
+    Tokenizer(Normalizer normalizer) {
+        if (normalizer == null) {
+            throw new IllegalArgumentException("normalizer must not be null");
+        }
+        this.normalizer = normalizer;
+    }
+
+    /**
+     * Intern the normal form of every word of a text, in order, skipping
+     * words whose normal form is empty.
+     *
+     * @param text UTF-8 text; malformed bytes are decoded as U+FFFD, as
+     *             {@link String#String(byte[], java.nio.charset.Charset)} does
+     * @param vocabulary vocabulary to intern the words in
+     * @param words receives the id of each word, in order
+     */
+    void tokenize(byte[] text, Vocabulary vocabulary, IntConsumer words) {
+        tokenizeWhile(text, vocabulary, id -> {
+            words.accept(id);
+            return true;
+        });
+    }
+
+    /**
+     * Intern the normal form of every word of a text, in order, as
+     * {@link #tokenize(byte[], Vocabulary, IntConsumer)} does, but with a
+     * way to stop early.
+     *
+     * @param text UTF-8 text
+     * @param vocabulary vocabulary to intern the words in; a word that does
+     *                   not fit under its limit is passed on as id -1
+     * @param words receives the id of each word, in order, and returns false
+     *              to stop tokenizing
+     * @return true if the whole text was tokenized, false if words stopped it
+     */
+    boolean tokenizeWhile(byte[] text, Vocabulary vocabulary, IntPredicate words) {
+        final ByteBuffer longs = ByteBuffer.wrap(text).order(ByteOrder.LITTLE_ENDIAN);
+        final byte[] padded = new byte[BLOCK];
+        final ByteBuffer paddedLongs = ByteBuffer.wrap(padded).order(ByteOrder.LITTLE_ENDIAN);
+        // the byte before the text counts as a delimiter
+        boolean afterDelimiter = true;
+        int wordStart = 0;
+        int lastNonAscii = -1;
+        for (int block = 0; block < text.length; block += BLOCK) {
+            final ByteBuffer source;
+            final int offset;
+            if (block + BLOCK <= text.length) {
+                source = longs;
+                offset = block;
+            } else {
+                // pad the last block with spaces, which end its last word
+                Arrays.fill(padded, (byte) ' ');
+                System.arraycopy(text, block, padded, 0, text.length - block);
+                source = paddedLongs;
+                offset = 0;
+            }
+            // one bit per byte of the block, lowest bit first
+            long delimiters = 0;
+            long nonAscii = 0;
+            for (int i = 0; i < BLOCK; i += Long.BYTES) {
+                final long chunk = source.getLong(offset + i);
+                delimiters |= movemask(delimiters(chunk)) << i;
+                nonAscii |= movemask(chunk & HIGH_BITS) << i;
+            }
+            // a word starts or ends wherever a byte and the one before it differ
+            final long afterDelimiters = (delimiters << 1) | (afterDelimiter ? 1 : 0);
+            for (long boundaries = delimiters ^ afterDelimiters; boundaries != 0; boundaries &= boundaries - 1) {
+                final int bit = Long.numberOfTrailingZeros(boundaries);
+                if ((delimiters & (1L << bit)) == 0) {
+                    wordStart = block + bit;
+                } else {
+                    final long before = nonAscii & ((1L << bit) - 1);
+                    final int lastBefore = before == 0 ? lastNonAscii : block + 63 - Long.numberOfLeadingZeros(before);
+                    if (!emit(text, wordStart, block + bit, lastBefore < wordStart, vocabulary, words)) {
+                        return false;
+                    }
+                }
+            }
+            afterDelimiter = delimiters < 0;
+            if (nonAscii != 0) {
+                lastNonAscii = block + 63 - Long.numberOfLeadingZeros(nonAscii);
+            }
+        }
+        // the text may end exactly at a block boundary, in a word
+        return afterDelimiter
+                || emit(text, wordStart, text.length, lastNonAscii < wordStart, vocabulary, words);
+    }
+
+    /*
+     * Intern the normal form of the word text[start..end) and pass on its id,
+     * unless the normal form is empty; return false if words says to stop.
+     */
+    private boolean emit(byte[] text, int start, int end, boolean ascii, Vocabulary vocabulary,
+            IntPredicate words) {
+        if (ascii && normalizer.isAsciiLowerCasing()) {
+            return words.test(vocabulary.intern(text, start, end));
+        }
+        final String word = new String(text, start, end - start, StandardCharsets.UTF_8);
+        final String normal = normalizer == Normalizer.LOWER_CASE ? word : normalizer.normalize(word);
+        if (normal.isEmpty()) {
+            return true;
+        }
+        return words.test(vocabulary.intern(normal, 0, normal.length()));
+    }
+
+    /*
+     * Gather the high bits of the eight bytes of v, in which only high bits
+     * may be set, into the low eight bits, byte 0 lowest. The multiplier
+     * moves the high bit of byte k to bit 56 + k, and no two partial
+     * products overlap, so nothing carries.
+     */
+    private static long movemask(long v) {
+        return (v * GATHER) >>> 56;
+    }
+
+    /*
+     * Return a long with the high bit set in exactly those bytes of chunk
+     * that are delimiters.
+     */
+    private static long delimiters(long chunk) {
+        return zeroBytes(chunk ^ SPACES) | zeroBytes(chunk ^ NEWLINES) | zeroBytes(chunk ^ RETURNS);
+    }
+
+    /*
+     * Return a long with the high bit set in exactly those bytes of v that
+     * are zero. Adding 0x7F to the low seven bits of a byte carries into its
+     * high bit unless they are all zero, and no carry crosses into the next
+     * byte, so unlike the shorter (v - ONES) & ~v test there are no false
+     * positives above the first zero byte.
+     */
+    private static long zeroBytes(long v) {
+        return ~(((v & LOW_BITS) + LOW_BITS) | v | LOW_BITS);
+    }
+
+    /**
+     * @param codePoint a Unicode code point
+     * @return true if codePoint is in one of Unicode's punctuation categories
+     */
+    static boolean isPunctuation(int codePoint) {
+        switch (Character.getType(codePoint)) {
+        case Character.CONNECTOR_PUNCTUATION:
+        case Character.DASH_PUNCTUATION:
+        case Character.START_PUNCTUATION:
+        case Character.END_PUNCTUATION:
+        case Character.INITIAL_QUOTE_PUNCTUATION:
+        case Character.FINAL_QUOTE_PUNCTUATION:
+        case Character.OTHER_PUNCTUATION:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Tokenizer(" + normalizer + ")";
+    }
+}
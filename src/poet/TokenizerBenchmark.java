@@ -0,0 +1,80 @@
+package poet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Measures the throughput of corpus tokenizing: the byte-level
+ * {@link Tokenizer} against decoding the corpus to a String and scanning it
+ * one char at a time, as GraphPoet used to.
+ *
+ * <pre>
+ *   TokenizerBenchmark [corpus [megabytes [rounds]]]
+ * </pre>
+ *
+ * <p>The corpus, by default the example corpus, is repeated up to the given
+ * size, by default 64 MB. Each round tokenizes it once each way, interning
+ * every word in a fresh vocabulary, and prints the throughput in MB/s; the
+ * early rounds also warm up the JIT compiler.
+ */
+public class TokenizerBenchmark {
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args corpus file, megabytes of text and number of rounds, each
+     *             optional
+     * @throws IOException if the corpus cannot be found or read
+     */
+    public static void main(String[] args) throws IOException {
+        final File corpus = new File(args.length > 0 ? args[0] : "src/poet/mugar-omni-theater.txt");
+        final int megabytes = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        final int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        final byte[] text = repeat(Files.readAllBytes(corpus.toPath()), megabytes << 20);
+        final Tokenizer tokenizer = new Tokenizer(Normalizer.LOWER_CASE);
+        for (int round = 1; round <= rounds; round++) {
+            final long[] checksum = { 0 };
+            long start = System.nanoTime();
+            final Vocabulary bytes = new Vocabulary();
+            tokenizer.tokenize(text, bytes, id -> checksum[0] += id);
+            final long byteNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            final Vocabulary chars = new Vocabulary();
+            final String decoded = new String(text, StandardCharsets.UTF_8);
+            int end;
+            for (int from = GraphPoet.skipDelimiters(decoded, 0); from < decoded.length();
+                    from = GraphPoet.skipDelimiters(decoded, end)) {
+                end = GraphPoet.wordEnd(decoded, from);
+                checksum[0] -= chars.intern(decoded, from, end);
+            }
+            final long charNanos = System.nanoTime() - start;
+
+            if (checksum[0] != 0 || bytes.size() != chars.size()) {
+                throw new AssertionError("tokenizers disagree");
+            }
+            System.out.printf("round %d: bytes %.0f MB/s, chars %.0f MB/s, %d words%n",
+                    round, throughput(text.length, byteNanos), throughput(text.length, charNanos), bytes.size());
+        }
+    }
+
+    private static byte[] repeat(byte[] corpus, int length) {
+        if (corpus.length == 0) {
+            throw new IllegalArgumentException("corpus is empty");
+        }
+        final byte[] text = new byte[Math.max(length, corpus.length)];
+        for (int i = 0; i < text.length; i += corpus.length + 1) {
+            System.arraycopy(corpus, 0, text, i, Math.min(corpus.length, text.length - i));
+            if (i + corpus.length < text.length) {
+                text[i + corpus.length] = '\n';
+            }
+        }
+        return text;
+    }
+
+    private static double throughput(int bytes, long nanos) {
+        return bytes / (nanos / 1e9) / (1 << 20);
+    }
+}
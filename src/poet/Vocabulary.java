@@ -0,0 +1,219 @@
+package poet;
+
+import java.util.Arrays;
+
+/**
+ * A mutable mapping between lower-case words and dense int ids.
+ *
+ * <p>Words are looked up by a range of any {@link CharSequence}, compared
+ * case-insensitively, so finding a word does not allocate a lower-cased copy
+ * of it. A word's lower-case form lowers each character with
+ * {@link Character#toLowerCase(char)}.
+ */
+class Vocabulary {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] words = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int size = 0;
+    private int maxSize = Integer.MAX_VALUE;
+
+    // Abstraction function:
+    //   represents the mapping id -> words[id] for 0 <= id < size
+    // Representation invariant:
+    //   words[0..size) are distinct and lower case, hashes[id] == hash(words[id])
+    //   size <= maxSize, unless the limit was set below size
+    //   slots.length is a power of two greater than 2 * size
+    //   slots is an open-addressing table with linear probing; a slot holds
+    //     id + 1 for the word stored there, or 0 if empty
+    // Safety from rep exposure:
+    //   all fields are private; only immutable Strings are returned
+
+    /**
+     * @return number of words
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Stop adding words once this vocabulary has a given number of them;
+     * words already present stay.
+     *
+     * @param maxSize number of words at which interning new words stops
+     */
+    void limit(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param id a word id, 0 <= id < size()
+     * @return the lower-case word with that id
+     */
+    String word(int id) {
+        return words[id];
+    }
+
+    /**
+     * Find a word without adding it.
+     *
+     * @param text text containing the word
+     * @param start index of the first character of the word
+     * @param end index after the last character of the word
+     * @return id of the word, or -1 if it is not in this vocabulary
+     */
+    int find(CharSequence text, int start, int end) {
+        final int hash = hash(text, start, end);
+        final int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final int entry = slots[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            final int id = entry - 1;
+            if (hashes[id] == hash && matches(words[id], text, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Find a word, adding it if it is not already present.
+     *
+     * @param text text containing the word
+     * @param start index of the first character of the word
+     * @param end index after the last character of the word
+     * @return id of the word, or -1 if it is absent and this vocabulary is
+     *         at its {@link #limit(int) limit}
+     */
+    int intern(CharSequence text, int start, int end) {
+        final int hash = hash(text, start, end);
+        final int mask = slots.length - 1;
+        int slot = hash & mask;
+        for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+            final int id = slots[slot] - 1;
+            if (hashes[id] == hash && matches(words[id], text, start, end)) {
+                return id;
+            }
+        }
+        return size >= maxSize ? -1 : add(lowerCase(text, start, end), hash, slot);
+    }
+
+    /**
+     * Find a word of ASCII characters given as bytes, adding it if it is not
+     * already present, as {@link #intern(CharSequence, int, int)} does for
+     * the same characters.
+     *
+     * @param ascii text containing the word, whose bytes in [start, end) are
+     *              all ASCII, that is, less than 0x80
+     * @param start index of the first byte of the word
+     * @param end index after the last byte of the word
+     * @return id of the word, or -1 if it is absent and this vocabulary is
+     *         at its {@link #limit(int) limit}
+     */
+    int intern(byte[] ascii, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + lowerCase(ascii[i]);
+        }
+        final int hash = h ^ (h >>> 16);
+        final int mask = slots.length - 1;
+        int slot = hash & mask;
+        for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+            final int id = slots[slot] - 1;
+            if (hashes[id] == hash && matches(words[id], ascii, start, end)) {
+                return id;
+            }
+        }
+        if (size >= maxSize) {
+            return -1;
+        }
+        final char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = (char) lowerCase(ascii[i]);
+        }
+        return add(new String(chars), hash, slot);
+    }
+
+    /*
+     * Add a new lower-case word with the given hash at an empty slot.
+     */
+    private int add(String word, int hash, int slot) {
+        final int id = size++;
+        if (id == words.length) {
+            words = Arrays.copyOf(words, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        words[id] = word;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        if (size * 2 >= slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        final int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * @param text text containing a word
+     * @param start index of the first character of the word
+     * @param end index after the last character of the word
+     * @return the word in lower case
+     */
+    static String lowerCase(CharSequence text, int start, int end) {
+        final char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = Character.toLowerCase(text.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + Character.toLowerCase(text.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String word, CharSequence text, int start, int end) {
+        if (word.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (word.charAt(i - start) != Character.toLowerCase(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(String word, byte[] ascii, int start, int end) {
+        if (word.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (word.charAt(i - start) != lowerCase(ascii[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+}
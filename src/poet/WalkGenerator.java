@@ -0,0 +1,278 @@
+package poet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import graph.Graph;
+
+/**
+ * Generates text by walking a word affinity graph.
+ *
+ * <p>A random walk from a word repeatedly moves along one of the current
+ * word's out-edges, chosen with probability proportional to its weight.
+ * Each step costs O(1): the first time a word is left, an alias table is
+ * built from its out-edge weights and cached, and every later step from
+ * that word draws from the table with two random numbers. Walks are
+ * reproducible: the same seed always gives the same walk.
+ *
+ * <p>Beam search instead finds a most probable walk of a given length,
+ * where a walk's probability is the product of its steps' probabilities.
+ *
+ * <p>A WalkGenerator may be shared by any number of threads, each with its
+ * own {@link SplittableRandom}.
+ */
+public class WalkGenerator {
+
+    private final AffinityIndex index;
+    private final double[] probability;
+    private final int[] alias;
+    private final AtomicIntegerArray built;
+
+    // Abstraction function:
+    //   represents a walker over the affinity graph of index, in which the
+    //   step from word s along edge k (start(s) <= k < start(s + 1)) has
+    //   probability weight(k) / (total weight of s's out-edges)
+    // Representation invariant:
+    //   probability.length == alias.length == index.edgeCount()
+    //   built.length() == number of words
+    //   if built.get(s) == 1, then for each k in s's row, probability[k] is in
+    //   [0, 1] and alias[k] is in s's row, and drawing a uniform k in the row
+    //   and keeping it with probability probability[k], else taking alias[k],
+    //   picks each edge with probability proportional to its weight
+    // Safety from rep exposure:
+    //   all fields are private and never returned; index is never mutated
+    // Thread safety argument:
+    //   a row of the tables is written before its built flag is set, and read
+    //   only after the flag is seen set, so the volatile flag orders the
+    //   writes before the reads; two threads that build the same row at once
+    //   write identical values, so the race between them is harmless
+
+    /**
+     * Create a generator for an affinity graph.
+     *
+     * @param graph affinity graph whose vertices are lower-case words, as
+     *              described in {@link GraphPoet}; it is copied, so later
+     *              changes to graph do not affect this generator
+     */
+    public WalkGenerator(Graph<String> graph) {
+        this(GraphPoet.indexOf(graph));
+    }
+
+    WalkGenerator(AffinityIndex index) {
+        this.index = index;
+        this.probability = new double[index.edgeCount()];
+        this.alias = new int[index.edgeCount()];
+        this.built = new AtomicIntegerArray(index.vocabulary().size());
+    }
+
+    /**
+     * Generate a random walk.
+     *
+     * @param start first word of the walk
+     * @param words number of words in the walk, at least 1
+     * @param seed seed for the random choices
+     * @return the words of the walk separated by single spaces: start as
+     *         given, then lower-case words; shorter than words if it reaches
+     *         a word with no out-edges, or if start is not in the graph
+     * @throws IllegalArgumentException if words is less than 1
+     */
+    public String walk(String start, int words, long seed) {
+        final StringBuilder walk = new StringBuilder(start.length() + 8 * words);
+        try {
+            walk(start, words, new SplittableRandom(seed), walk);
+        } catch (IOException ioe) {
+            throw new AssertionError("StringBuilder does not throw IOException", ioe);
+        }
+        return walk.toString();
+    }
+
+    /**
+     * Generate a random walk, as {@link #walk(String, int, long)} does,
+     * appending it to out. Once the alias tables of the words visited are
+     * built, the only text this method creates is what it appends to out.
+     *
+     * @param start first word of the walk
+     * @param words number of words in the walk, at least 1
+     * @param random source of the random choices, advanced by this call
+     * @param out destination for the walk
+     * @throws IOException if out throws IOException
+     * @throws IllegalArgumentException if words is less than 1
+     */
+    public void walk(CharSequence start, int words, SplittableRandom random, Appendable out) throws IOException {
+        if (words < 1) {
+            throw new IllegalArgumentException("need at least one word: " + words);
+        }
+        final Vocabulary vocabulary = index.vocabulary();
+        out.append(start);
+        int current = vocabulary.find(start, 0, start.length());
+        for (int i = 1; i < words && current >= 0; i++) {
+            current = next(current, random);
+            if (current >= 0) {
+                out.append(' ').append(vocabulary.word(current));
+            }
+        }
+    }
+
+    /**
+     * Take one random step.
+     *
+     * @param source a word id
+     * @param random source of the random choices
+     * @return id of a target of source, chosen with probability proportional
+     *         to the weight of its edge, or -1 if source has no out-edges
+     */
+    int next(int source, SplittableRandom random) {
+        final int first = index.start(source);
+        final int n = index.start(source + 1) - first;
+        if (n == 0) {
+            return -1;
+        }
+        if (built.get(source) == 0) {
+            buildTable(source);
+            built.set(source, 1);
+        }
+        final int k = first + random.nextInt(n);
+        return index.target(random.nextDouble() < probability[k] ? k : alias[k]);
+    }
+
+    /*
+     * Build the alias table of source's row with Vose's method: scale the
+     * weights so they average 1, then repeatedly pair a column below 1 with
+     * one above 1, which fills the rest of the small column.
+     */
+    private void buildTable(int source) {
+        final int first = index.start(source);
+        final int n = index.start(source + 1) - first;
+        long total = 0;
+        for (int k = first; k < first + n; k++) {
+            total += index.weight(k);
+        }
+        final double[] scaled = new double[n];
+        final int[] small = new int[n];
+        final int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = (double) index.weight(first + i) * n / total;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            final int less = small[--smallCount];
+            final int more = large[--largeCount];
+            probability[first + less] = scaled[less];
+            alias[first + less] = first + more;
+            scaled[more] -= 1 - scaled[less];
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // whatever is left is 1 up to rounding error
+        while (largeCount > 0) {
+            final int column = large[--largeCount];
+            probability[first + column] = 1;
+            alias[first + column] = first + column;
+        }
+        while (smallCount > 0) {
+            final int column = small[--smallCount];
+            probability[first + column] = 1;
+            alias[first + column] = first + column;
+        }
+    }
+
+    /**
+     * Find a most probable walk by beam search: keep the width most probable
+     * walks so far, extend each along every out-edge, and keep the width most
+     * probable of those. Ties go to walks whose words have lower ids, so the
+     * result is deterministic.
+     *
+     * @param start first word of the walk
+     * @param words number of words in the walk, at least 1
+     * @param width number of walks kept at each step, at least 1
+     * @return the words of the walk separated by single spaces: start as
+     *         given, then lower-case words; if no walk of the full length
+     *         exists, a most probable walk of the greatest length that does
+     * @throws IllegalArgumentException if words or width is less than 1
+     */
+    public String beam(String start, int words, int width) {
+        if (words < 1 || width < 1) {
+            throw new IllegalArgumentException("need words >= 1 and width >= 1");
+        }
+        final Vocabulary vocabulary = index.vocabulary();
+        final int startId = vocabulary.find(start, 0, start.length());
+        if (startId < 0) {
+            return start;
+        }
+        List<Walk> beam = Collections.singletonList(new Walk(new int[] { startId }, 0));
+        for (int length = 1; length < words; length++) {
+            final List<Walk> extended = new ArrayList<>();
+            for (Walk walk : beam) {
+                final int last = walk.words[walk.words.length - 1];
+                long total = 0;
+                for (int k = index.start(last); k < index.start(last + 1); k++) {
+                    total += index.weight(k);
+                }
+                for (int k = index.start(last); k < index.start(last + 1); k++) {
+                    final int[] next = Arrays.copyOf(walk.words, length + 1);
+                    next[length] = index.target(k);
+                    extended.add(new Walk(next, walk.logProbability + Math.log((double) index.weight(k) / total)));
+                }
+            }
+            if (extended.isEmpty()) {
+                break;
+            }
+            Collections.sort(extended);
+            beam = extended.subList(0, Math.min(width, extended.size()));
+        }
+        final StringBuilder result = new StringBuilder(start);
+        final int[] best = beam.get(0).words;
+        for (int i = 1; i < best.length; i++) {
+            result.append(' ').append(vocabulary.word(best[i]));
+        }
+        return result.toString();
+    }
+
+    /**
+     * A walk during beam search, ordered most probable first.
+     */
+    private static class Walk implements Comparable<Walk> {
+        private final int[] words;
+        private final double logProbability;
+
+        Walk(int[] words, double logProbability) {
+            this.words = words;
+            this.logProbability = logProbability;
+        }
+
+        @Override public int compareTo(Walk that) {
+            final int byProbability = Double.compare(that.logProbability, logProbability);
+            if (byProbability != 0) {
+                return byProbability;
+            }
+            for (int i = 0; i < words.length; i++) {
+                if (words[i] != that.words[i]) {
+                    return Integer.compare(words[i], that.words[i]);
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * @return a short description of this generator's affinity graph
+     */
+    @Override
+    public String toString() {
+        return "WalkGenerator(" + index.vocabulary().size() + " words, " + index.edgeCount() + " edges)";
+    }
+}
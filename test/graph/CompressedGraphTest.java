@@ -0,0 +1,186 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for CompressedGraph.
+ *
+ * This class runs the GraphInstanceTest tests against CompressedGraph, as
+ * well as tests for the encoding.
+ */
+public class CompressedGraphTest extends GraphInstanceTest {
+
+    /*
+     * Provide a CompressedGraph for tests in GraphInstanceTest.
+     */
+    @Override public Graph<String> emptyInstance() {
+        return new CompressedGraph<>();
+    }
+
+    // Testing strategy for CompressedGraph:
+    //   encoding: gaps and weights of one and several varint bytes, weight
+    //     runs of length 1 and more, Integer.MAX_VALUE weight
+    //   rows that grow (appended), shrink (rewritten in place), and empty;
+    //     enough churn to compact
+    //   remove(): self loop, ids of removed vertices reused
+    //   setAll(): into empty and nonempty graphs; repeated edges, removals,
+    //     removals of absent vertices; a hub row too large to build by set()
+    //   sizeInBytes(): affinity-like graph versus a plain int-array CSR
+
+    @Test
+    public void testWideIdsAndWeights() {
+        CompressedGraph<Integer> graph = new CompressedGraph<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 20_000; i += 97) {
+            int weight = i % 3 == 0 ? 1 : i % 3 == 1 ? i : Integer.MAX_VALUE;
+            graph.set(0, i, weight);
+            expected.put(i, weight);
+        }
+        assertEquals(expected, graph.targets(0));
+        for (Map.Entry<Integer, Integer> edge : expected.entrySet()) {
+            assertEquals(Collections.singletonMap(0, edge.getValue()), graph.sources(edge.getKey()));
+        }
+    }
+
+    @Test
+    public void testChurnMatchesHashMaps() {
+        CompressedGraph<Integer> graph = new CompressedGraph<>();
+        Map<Integer, Map<Integer, Integer>> expected = new HashMap<>();
+        Random random = new Random(6005);
+        for (int i = 0; i < 50_000; i++) {
+            int source = random.nextInt(40);
+            int target = random.nextInt(400);
+            int weight = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(random.nextBoolean() ? 2 : 1000);
+            Map<Integer, Integer> row = expected.computeIfAbsent(source, s -> new HashMap<>());
+            Integer previous = weight == 0 ? row.remove(target) : row.put(target, weight);
+            assertEquals(previous == null ? 0 : previous.intValue(), graph.set(source, target, weight));
+        }
+        graph.trimToSize();
+        for (int source = 0; source < 40; source++) {
+            assertEquals(expected.getOrDefault(source, Collections.emptyMap()), graph.targets(source));
+        }
+        for (int target = 0; target < 400; target++) {
+            Map<Integer, Integer> sources = new HashMap<>();
+            for (Map.Entry<Integer, Map<Integer, Integer>> row : expected.entrySet()) {
+                if (row.getValue().containsKey(target)) {
+                    sources.put(row.getKey(), row.getValue().get(target));
+                }
+            }
+            assertEquals(sources, graph.sources(target));
+        }
+    }
+
+    @Test
+    public void testRemoveReusesIds() {
+        CompressedGraph<String> graph = new CompressedGraph<>();
+        graph.set("a", "a", 1);
+        graph.set("a", "b", 2);
+        graph.set("c", "a", 3);
+        assertTrue(graph.remove("a"));
+        assertFalse(graph.remove("a"));
+        assertEquals(new HashSet<>(Arrays.asList("b", "c")), graph.vertices());
+        assertTrue(graph.sources("b").isEmpty());
+        assertTrue(graph.targets("c").isEmpty());
+        // d takes a's id and must not inherit its edges
+        assertTrue(graph.add("d"));
+        assertTrue(graph.targets("d").isEmpty());
+        assertTrue(graph.sources("d").isEmpty());
+        graph.set("d", "b", 4);
+        assertEquals(Collections.singletonMap("d", 4), graph.sources("b"));
+    }
+
+    @Test
+    public void testSetAllMatchesSet() {
+        CompressedGraph<Integer> bySet = new CompressedGraph<>();
+        CompressedGraph<Integer> byBatch = new CompressedGraph<>();
+        Random random = new Random(6031);
+        for (int batch = 0; batch < 20; batch++) {
+            int size = random.nextInt(3_000);
+            List<Integer> sources = new ArrayList<>();
+            List<Integer> targets = new ArrayList<>();
+            int[] weights = new int[size];
+            for (int i = 0; i < size; i++) {
+                // vertices above 80 are rare, so some removals name absent ones
+                sources.add(random.nextInt(random.nextInt(10) == 0 ? 90 : 30));
+                targets.add(random.nextInt(random.nextInt(10) == 0 ? 300 : 80));
+                weights[i] = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(random.nextBoolean() ? 2 : 1000);
+                bySet.set(sources.get(i), targets.get(i), weights[i]);
+            }
+            byBatch.setAll(sources, targets, weights);
+            assertEquals(bySet.vertices(), byBatch.vertices());
+            for (int vertex : bySet.vertices()) {
+                assertEquals(bySet.targets(vertex), byBatch.targets(vertex));
+                assertEquals(bySet.sources(vertex), byBatch.sources(vertex));
+            }
+        }
+    }
+
+    @Test(timeout=10_000)
+    public void testSetAllHubRow() {
+        // one edge at a time this row would cost O(d^2) to encode
+        int degree = 500_000;
+        List<Integer> sources = new ArrayList<>(Collections.nCopies(degree, -1));
+        List<Integer> targets = new ArrayList<>();
+        int[] weights = new int[degree];
+        for (int i = 0; i < degree; i++) {
+            targets.add(degree - i);
+            weights[i] = 1 + i % 7;
+        }
+        CompressedGraph<Integer> graph = new CompressedGraph<>();
+        graph.setAll(sources, targets, weights);
+        Map<Integer, Integer> row = graph.targets(-1);
+        assertEquals(degree, row.size());
+        assertEquals(Integer.valueOf(1), row.get(degree));
+        assertEquals(Collections.singletonMap(-1, 1 + 9 % 7), graph.sources(degree - 9));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetAllNegativeWeight() {
+        CompressedGraph<String> graph = new CompressedGraph<>();
+        try {
+            graph.setAll(Arrays.asList("a", "b"), Arrays.asList("b", "c"), new int[] { 1, -1 });
+        } finally {
+            assertTrue("nothing should change", graph.vertices().isEmpty());
+        }
+    }
+
+    @Test
+    public void testSmallerThanCsr() {
+        // bigrams of text drawn from a Zipf-like vocabulary, as in GraphPoet
+        Random random = new Random(1);
+        int words = 5_000;
+        Map<Long, Integer> bigrams = new HashMap<>();
+        int previous = 0;
+        for (int i = 0; i < 200_000; i++) {
+            int word = (int) Math.floor(Math.pow(words, random.nextDouble())) - 1;
+            bigrams.merge((long) previous << 32 | word, 1, Integer::sum);
+            previous = word;
+        }
+        List<Integer> sources = new ArrayList<>();
+        List<Integer> targets = new ArrayList<>();
+        int[] weights = new int[bigrams.size()];
+        for (Map.Entry<Long, Integer> bigram : bigrams.entrySet()) {
+            sources.add((int) (bigram.getKey() >>> 32));
+            targets.add((int) (long) bigram.getKey());
+            weights[sources.size() - 1] = bigram.getValue();
+        }
+        CompressedGraph<Integer> graph = new CompressedGraph<>();
+        graph.setAll(sources, targets, weights);
+        graph.trimToSize();
+        long edges = bigrams.size();
+        // out and in rows of int targets and int weights, plus row starts
+        long csrBytes = 2 * (8 * edges + 4L * (graph.vertices().size() + 1));
+        assertTrue(graph.sizeInBytes() + " vs " + csrBytes, graph.sizeInBytes() * 3 <= csrBytes);
+    }
+}
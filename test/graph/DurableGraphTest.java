@@ -0,0 +1,266 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for DurableGraph.
+ * 
+ * This class runs the GraphInstanceTest tests against DurableGraph, as well
+ * as tests for recovery and compaction.
+ */
+public class DurableGraphTest extends GraphInstanceTest {
+    
+    private final List<Path> directories = new ArrayList<>();
+    private final List<DurableGraph> opened = new ArrayList<>();
+    
+    /*
+     * Provide a DurableGraph in a fresh directory for tests in GraphInstanceTest.
+     */
+    @Override public Graph<String> emptyInstance() {
+        try {
+            return open(newDirectory(), 1, 0, 1 << 20);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+    
+    private Path newDirectory() throws IOException {
+        final Path directory = Files.createTempDirectory("durable");
+        directories.add(directory);
+        return directory;
+    }
+    
+    private DurableGraph open(Path directory, int syncEveryRecords, long syncIntervalMillis,
+            long compactionBytes) throws IOException {
+        final DurableGraph graph = new DurableGraph(directory, syncEveryRecords, syncIntervalMillis,
+                compactionBytes);
+        opened.add(graph);
+        return graph;
+    }
+    
+    @After
+    public void deleteDirectories() throws IOException {
+        for (DurableGraph graph : opened) {
+            graph.close();
+        }
+        for (Path directory : directories) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+    
+    // Testing strategy for DurableGraph:
+    //   reopen after: close, sync without close, torn last record, corrupt
+    //     record, compaction, several compactions, a snapshot still being
+    //     written (several logs), a torn log followed by another
+    //   sync grouping: every record, groups of records, background interval
+    //   mutations that change nothing: not logged
+    //   log write fails: mutation not applied, later mutations refused
+    //   use after close
+    
+    private static void populate(Graph<String> graph) {
+        graph.add("a");
+        graph.add("b");
+        graph.set("a", "b", 4);
+        graph.add("c\twith\ttabs");
+        graph.set("b", "c\twith\ttabs", 2);
+        graph.add("gone");
+        graph.set("gone", "a", 1);
+        graph.remove("gone");
+    }
+    
+    private static void assertPopulated(Graph<String> graph) {
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c\twith\ttabs")), graph.vertices());
+        assertEquals(Integer.valueOf(4), graph.targets("a").get("b"));
+        assertEquals(Integer.valueOf(2), graph.targets("b").get("c\twith\ttabs"));
+        assertTrue(graph.sources("a").isEmpty());
+    }
+    
+    @Test
+    public void testReopenAfterClose() throws IOException {
+        Path dir = newDirectory();
+        try (DurableGraph graph = open(dir, 100, 0, 1 << 20)) {
+            populate(graph);
+        }
+        try (DurableGraph graph = open(dir, 100, 0, 1 << 20)) {
+            assertPopulated(graph);
+        }
+    }
+    
+    @Test
+    public void testReopenAfterSyncWithoutClose() throws IOException {
+        Path dir = newDirectory();
+        DurableGraph crashed = open(dir, 1000, 0, 1 << 20);
+        populate(crashed);
+        crashed.sync();
+        crashed.add("unsynced");  // still pending in memory when the process "dies"
+        try (DurableGraph graph = open(dir, 1, 0, 1 << 20)) {
+            assertPopulated(graph);
+        }
+    }
+    
+    @Test
+    public void testTornAndCorruptTail() throws IOException {
+        Path dir = newDirectory();
+        try (DurableGraph graph = open(dir, 1, 0, 1 << 20)) {
+            populate(graph);
+        }
+        Path log = dir.resolve("wal.0");
+        long intact = Files.size(log);
+        try (FileChannel out = FileChannel.open(log, StandardOpenOption.APPEND)) {
+            // a header promising a 100 byte record, followed by only 3 bytes
+            out.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 100, 1, 2, 3, 4, 9, 9, 9 }));
+        }
+        try (DurableGraph graph = open(dir, 1, 0, 1 << 20)) {
+            assertPopulated(graph);
+            assertEquals("torn tail should be truncated", intact, Files.size(log));
+            graph.add("after");
+        }
+        try (DurableGraph graph = open(dir, 1, 0, 1 << 20)) {
+            assertTrue(graph.vertices().contains("after"));
+        }
+        // flip a payload byte of the first record: nothing after it is trusted
+        try (FileChannel out = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.wrap(new byte[] { 'z' }), 13);
+        }
+        try (DurableGraph graph = open(dir, 1, 0, 1 << 20)) {
+            assertTrue(graph.vertices().isEmpty());
+        }
+    }
+    
+    @Test
+    public void testCompaction() throws IOException {
+        Path dir = newDirectory();
+        try (DurableGraph graph = open(dir, 10, 0, 256)) {
+            for (int i = 0; i < 200; i++) {
+                graph.add("v" + i);
+                graph.set("v" + i, "v" + (i / 2), i + 1);
+            }
+            populate(graph);
+        }
+        assertFalse("old generation should be deleted", Files.exists(dir.resolve("wal.0")));
+        try (DurableGraph graph = open(dir, 10, 0, 256)) {
+            assertEquals(Integer.valueOf(4), graph.targets("a").get("b"));
+            assertEquals(Integer.valueOf(2), graph.targets("b").get("c\twith\ttabs"));
+            assertFalse(graph.vertices().contains("gone"));
+            assertEquals(Integer.valueOf(200), graph.targets("v199").get("v99"));
+            assertEquals(203, graph.vertices().size());
+        }
+    }
+    
+    @Test
+    public void testBackgroundSync() throws Exception {
+        Path dir = newDirectory();
+        DurableGraph crashed = open(dir, 1000, 10, 1 << 20);
+        populate(crashed);
+        Thread.sleep(500);
+        try (DurableGraph graph = open(dir, 1, 0, 1 << 20)) {
+            assertPopulated(graph);
+        }
+        crashed.close();
+    }
+    
+    @Test
+    public void testReopenWithSeveralLogs() throws IOException {
+        // a crash while a snapshot is being written leaves wal.0 and wal.1
+        Path dir = newDirectory();
+        try (DurableGraph graph = open(dir, 1, 0, 1 << 20)) {
+            graph.add("a");
+            graph.add("b");
+        }
+        Path other = newDirectory();
+        try (DurableGraph graph = open(other, 1, 0, 1 << 20)) {
+            graph.set("a", "b", 4);
+            graph.add("c");
+        }
+        Files.copy(other.resolve("wal.0"), dir.resolve("wal.1"));
+        try (DurableGraph graph = open(dir, 1, 0, 1 << 20)) {
+            assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), graph.vertices());
+            assertEquals(Integer.valueOf(4), graph.targets("a").get("b"));
+            graph.add("d");
+        }
+        try (DurableGraph graph = open(dir, 1, 0, 1 << 20)) {
+            assertTrue(graph.vertices().contains("d"));
+        }
+        // a torn record in wal.0 makes the records of wal.1 meaningless
+        try (FileChannel out = FileChannel.open(dir.resolve("wal.0"), StandardOpenOption.APPEND)) {
+            out.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 100, 1, 2, 3, 4, 9 }));
+        }
+        try (DurableGraph graph = open(dir, 1, 0, 1 << 20)) {
+            assertEquals(new HashSet<>(Arrays.asList("a", "b")), graph.vertices());
+            assertFalse(Files.exists(dir.resolve("wal.1")));
+        }
+    }
+    
+    @Test
+    public void testUnchangedIsNotLogged() throws IOException {
+        Path dir = newDirectory();
+        try (DurableGraph graph = open(dir, 1, 0, 1 << 20)) {
+            populate(graph);
+            long size = Files.size(dir.resolve("wal.0"));
+            assertEquals(0, graph.set("a", "c\twith\ttabs", 0));
+            assertEquals(0, graph.set("nowhere", "else", 0));
+            assertEquals(4, graph.set("a", "b", 4));
+            assertFalse(graph.add("a"));
+            assertFalse(graph.remove("gone"));
+            assertEquals(size, Files.size(dir.resolve("wal.0")));
+            assertFalse(graph.vertices().contains("nowhere"));
+        }
+    }
+    
+    @Test
+    public void testFailedWriteIsNotApplied() throws IOException {
+        Path dir = newDirectory();
+        DurableGraph graph = open(dir, 1, 0, 1 << 20);
+        populate(graph);
+        // an interrupted thread cannot write to a FileChannel
+        Thread.currentThread().interrupt();
+        try {
+            graph.set("a", "b", 9);
+            fail("expected the log write to fail");
+        } catch (UncheckedIOException expected) {
+            // the mutation must not be visible
+        } finally {
+            Thread.interrupted();
+        }
+        assertPopulated(graph);
+        try {
+            graph.add("later");
+            fail("expected a failed graph to refuse mutations");
+        } catch (IllegalStateException expected) {
+            // the log's tail is unknown
+        }
+        graph.close();
+        try (DurableGraph reopened = open(dir, 1, 0, 1 << 20)) {
+            assertPopulated(reopened);
+        }
+    }
+    
+    @Test(expected=IllegalStateException.class)
+    public void testClosed() throws IOException {
+        DurableGraph graph = open(newDirectory(), 1, 0, 1 << 20);
+        graph.close();
+        graph.add("a");
+    }
+    
+}
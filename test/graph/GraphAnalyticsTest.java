@@ -0,0 +1,203 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests for CsrGraph and GraphAnalytics.
+ */
+public class GraphAnalyticsTest {
+
+    // Testing strategy
+    //   CsrGraph.of(): empty graph, isolated vertices, self loops, weights
+    //     kept, in-edges match out-edges
+    //   degreeDistribution(): out and in degrees, empty graph
+    //   pageRank(): cycle (uniform), star (hub ranks highest), dangling
+    //     vertices, heavier edges attract more rank, bad arguments
+    //   components: none, singletons, several weak components, cycles with
+    //     tails, random graphs against a reachability-based reference
+
+    private static Graph<String> graph(String... edges) {
+        Graph<String> graph = new ConcreteEdgesGraph<>();
+        for (int i = 0; i < edges.length; i += 3) {
+            graph.add(edges[i]);
+            graph.add(edges[i + 1]);
+            graph.set(edges[i], edges[i + 1], Integer.parseInt(edges[i + 2]));
+        }
+        return graph;
+    }
+
+    private static Set<String> set(String... labels) {
+        return new HashSet<>(Arrays.asList(labels));
+    }
+
+    @Test
+    public void testCsrGraphOf() {
+        Graph<String> graph = graph("a", "b", "2", "b", "c", "3", "c", "c", "1", "a", "c", "4");
+        graph.add("lonely");
+        CsrGraph<String> csr = CsrGraph.of(graph);
+        assertEquals(4, csr.vertexCount());
+        assertEquals(4, csr.edgeCount());
+        int a = csr.indexOf("a");
+        int b = csr.indexOf("b");
+        int c = csr.indexOf("c");
+        assertEquals("a", csr.label(a));
+        assertEquals(-1, csr.indexOf("missing"));
+        assertEquals(2, csr.weight(a, b));
+        assertEquals(4, csr.weight(a, c));
+        assertEquals(1, csr.weight(c, c));
+        assertEquals(0, csr.weight(b, a));
+        assertEquals(2, csr.outDegree(a));
+        assertEquals(0, csr.inDegree(a));
+        assertEquals(3, csr.inDegree(c));
+        assertEquals(0, csr.outDegree(csr.indexOf("lonely")));
+        assertEquals("CsrGraph(4 vertices, 4 edges)", csr.toString());
+    }
+
+    @Test
+    public void testEmpty() {
+        CsrGraph<String> csr = CsrGraph.of(new ConcreteEdgesGraph<String>());
+        assertArrayEquals(new long[] { 0 }, GraphAnalytics.degreeDistribution(csr, true));
+        assertEquals(0, GraphAnalytics.pageRank(csr, 0.85, 1e-9, 100).length);
+        assertEquals(0, GraphAnalytics.weaklyConnectedComponents(csr).length);
+        assertEquals(0, GraphAnalytics.stronglyConnectedComponents(csr).length);
+        assertEquals(Collections.emptyList(), GraphAnalytics.groupByComponent(csr, new int[0]));
+    }
+
+    @Test
+    public void testDegreeDistribution() {
+        CsrGraph<String> csr = CsrGraph.of(graph("a", "b", "1", "a", "c", "1", "a", "d", "1", "b", "c", "1"));
+        assertArrayEquals(new long[] { 2, 1, 0, 1 }, GraphAnalytics.degreeDistribution(csr, true));
+        assertArrayEquals(new long[] { 1, 2, 1 }, GraphAnalytics.degreeDistribution(csr, false));
+    }
+
+    @Test
+    public void testPageRankCycleIsUniform() {
+        CsrGraph<String> csr = CsrGraph.of(graph("a", "b", "5", "b", "c", "1", "c", "a", "2"));
+        double[] rank = GraphAnalytics.pageRank(csr, 0.85, 1e-12, 1000);
+        for (double r : rank) {
+            assertEquals(1.0 / 3, r, 1e-9);
+        }
+    }
+
+    @Test
+    public void testPageRankHubAndDangling() {
+        // every leaf links to the hub; the hub has no out-edges
+        CsrGraph<String> csr = CsrGraph.of(graph("x", "hub", "1", "y", "hub", "1", "z", "hub", "1"));
+        double[] rank = GraphAnalytics.pageRank(csr, 0.85, 1e-12, 1000);
+        assertEquals(1.0, Arrays.stream(rank).sum(), 1e-9);
+        int hub = csr.indexOf("hub");
+        for (int v = 0; v < rank.length; v++) {
+            if (v != hub) {
+                assertTrue(rank[hub] > rank[v]);
+                assertEquals(rank[csr.indexOf("x")], rank[v], 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testPageRankFollowsWeights() {
+        CsrGraph<String> csr = CsrGraph.of(graph("a", "heavy", "9", "a", "light", "1",
+                "heavy", "a", "1", "light", "a", "1"));
+        double[] rank = GraphAnalytics.pageRank(csr, 0.85, 1e-12, 1000);
+        assertTrue(rank[csr.indexOf("heavy")] > 2 * rank[csr.indexOf("light")]);
+        assertEquals(1.0, Arrays.stream(rank).sum(), 1e-9);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testPageRankBadDamping() {
+        GraphAnalytics.pageRank(CsrGraph.of(graph("a", "b", "1")), 1.0, 1e-9, 10);
+    }
+
+    @Test
+    public void testComponents() {
+        Graph<String> graph = graph("a", "b", "1", "b", "a", "1", "b", "c", "1",
+                "d", "e", "1", "e", "f", "1", "f", "d", "1", "f", "g", "1");
+        graph.add("h");
+        CsrGraph<String> csr = CsrGraph.of(graph);
+        List<Set<String>> weak = GraphAnalytics.groupByComponent(csr,
+                GraphAnalytics.weaklyConnectedComponents(csr));
+        assertEquals(new HashSet<>(Arrays.asList(set("a", "b", "c"), set("d", "e", "f", "g"), set("h"))),
+                new HashSet<>(weak));
+        assertEquals(3, weak.size());
+        List<Set<String>> strong = GraphAnalytics.groupByComponent(csr,
+                GraphAnalytics.stronglyConnectedComponents(csr));
+        assertEquals(new HashSet<>(Arrays.asList(set("a", "b"), set("c"), set("d", "e", "f"), set("g"), set("h"))),
+                new HashSet<>(strong));
+        assertEquals(5, strong.size());
+    }
+
+    @Test
+    public void testComponentIdsOrderedByLowestVertex() {
+        CsrGraph<String> csr = CsrGraph.of(graph("a", "b", "1", "c", "d", "1", "d", "c", "1"));
+        for (int[] component : Arrays.asList(GraphAnalytics.weaklyConnectedComponents(csr),
+                GraphAnalytics.stronglyConnectedComponents(csr))) {
+            int next = 0;
+            for (int v = 0; v < component.length; v++) {
+                assertTrue(component[v] <= next);
+                if (component[v] == next) {
+                    next++;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRandomComponentsAgainstReachability() {
+        Random random = new Random(33);
+        for (int trial = 0; trial < 20; trial++) {
+            Graph<Integer> graph = new ConcreteEdgesGraph<>();
+            int n = 1 + random.nextInt(60);
+            for (int v = 0; v < n; v++) {
+                graph.add(v);
+            }
+            int edges = random.nextInt(2 * n);
+            for (int e = 0; e < edges; e++) {
+                graph.set(random.nextInt(n), random.nextInt(n), 1 + random.nextInt(3));
+            }
+            CsrGraph<Integer> csr = CsrGraph.of(graph);
+            boolean[][] reaches = new boolean[n][];
+            for (int v = 0; v < n; v++) {
+                reaches[v] = reachable(csr, v);
+            }
+            int[] strong = GraphAnalytics.stronglyConnectedComponents(csr);
+            int[] weak = GraphAnalytics.weaklyConnectedComponents(csr);
+            for (int u = 0; u < n; u++) {
+                for (int v = 0; v < n; v++) {
+                    assertEquals(reaches[u][v] && reaches[v][u], strong[u] == strong[v]);
+                    if (reaches[u][v]) {
+                        assertEquals(weak[u], weak[v]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean[] reachable(CsrGraph<Integer> csr, int from) {
+        boolean[] seen = new boolean[csr.vertexCount()];
+        Deque<Integer> queue = new ArrayDeque<>();
+        seen[from] = true;
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            int v = queue.remove();
+            for (int w = 0; w < csr.vertexCount(); w++) {
+                if (!seen[w] && csr.weight(v, w) > 0) {
+                    seen[w] = true;
+                    queue.add(w);
+                }
+            }
+        }
+        return seen;
+    }
+
+}
@@ -0,0 +1,184 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+/**
+ * Tests for GraphIO.
+ */
+public class GraphIOTest {
+
+    // Testing strategy:
+    //   format: TSV, CSV, DOT
+    //   labels: plain, containing delimiters/quotes/escapes/newlines, non-ASCII,
+    //     empty, containing bare carriage returns and CRLF
+    //   graph: empty, isolated vertex, edges; batched (exported a block of
+    //     vertices at a time), compressed (imported with setAll)
+    //   input: well-formed, blank lines, CR and CRLF line ends, wrong field
+    //     count, bad weight
+
+    private static Graph<String> sample() {
+        Graph<String> graph = new ConcreteEdgesGraph<>();
+        for (String v : Arrays.asList("a", "b,c", "d\t\"e\"", "f\\g\nh", "caf\u00e9", "lonely")) {
+            graph.add(v);
+        }
+        graph.set("a", "b,c", 3);
+        graph.set("b,c", "d\t\"e\"", 1);
+        graph.set("d\t\"e\"", "f\\g\nh", 7);
+        graph.set("f\\g\nh", "caf\u00e9", 2);
+        graph.set("caf\u00e9", "a", 5);
+        return graph;
+    }
+
+    private static String export(Graph<String> graph, GraphIO.Format format) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GraphIO.writeEdgeList(graph, Channels.newChannel(bytes), format);
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Graph<String> importFrom(String text, GraphIO.Format format) throws IOException {
+        Graph<String> graph = new ConcreteEdgesGraph<>();
+        GraphIO.readEdgeList(Channels.newChannel(
+                new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))), format, graph);
+        return graph;
+    }
+
+    private static void assertSameGraph(Graph<String> expected, Graph<String> actual) {
+        assertEquals("vertices", expected.vertices(), actual.vertices());
+        for (String v : expected.vertices()) {
+            assertEquals("targets of " + v, expected.targets(v), actual.targets(v));
+        }
+    }
+
+    @Test
+    public void testTsvRoundTrip() throws IOException {
+        Graph<String> graph = sample();
+        assertSameGraph(graph, importFrom(export(graph, GraphIO.Format.TSV), GraphIO.Format.TSV));
+    }
+
+    @Test
+    public void testCsvRoundTrip() throws IOException {
+        Graph<String> graph = sample();
+        assertSameGraph(graph, importFrom(export(graph, GraphIO.Format.CSV), GraphIO.Format.CSV));
+    }
+
+    private static Graph<String> awkwardLabels() {
+        Graph<String> graph = new HashGraph<>();
+        graph.add("");
+        graph.add("carriage\rreturn");
+        graph.set("crlf\r\n", "", 2);
+        graph.set("\r", "crlf\r\n", 4);
+        return graph;
+    }
+
+    @Test
+    public void testTsvRoundTripEmptyAndCarriageReturnLabels() throws IOException {
+        Graph<String> graph = awkwardLabels();
+        graph.remove("crlf\r\n");
+        // the empty label is isolated, so its record holds only the marker
+        String tsv = export(graph, GraphIO.Format.TSV);
+        assertTrue(tsv, tsv.contains("\\e\n"));
+        assertSameGraph(graph, importFrom(tsv, GraphIO.Format.TSV));
+        assertSameGraph(awkwardLabels(), importFrom(export(awkwardLabels(), GraphIO.Format.TSV), GraphIO.Format.TSV));
+    }
+
+    @Test
+    public void testCsvRoundTripEmptyAndCarriageReturnLabels() throws IOException {
+        Graph<String> graph = awkwardLabels();
+        assertSameGraph(graph, importFrom(export(graph, GraphIO.Format.CSV), GraphIO.Format.CSV));
+        graph.remove("crlf\r\n");
+        assertSameGraph(graph, importFrom(export(graph, GraphIO.Format.CSV), GraphIO.Format.CSV));
+    }
+
+    @Test
+    public void testLineEnds() throws IOException {
+        Graph<String> graph = importFrom("a,b,2\r\nc\rd,\"e\r\nf\",3\r", GraphIO.Format.CSV);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d", "e\r\nf")), graph.vertices());
+        assertEquals(Integer.valueOf(3), graph.targets("d").get("e\r\nf"));
+    }
+
+    @Test
+    public void testEmptyGraph() throws IOException {
+        assertEquals("", export(new ConcreteEdgesGraph<>(), GraphIO.Format.TSV));
+        assertEquals(new HashSet<String>(), importFrom("", GraphIO.Format.TSV).vertices());
+    }
+
+    @Test
+    public void testLargeExportSpansBuffers() throws IOException {
+        Graph<String> graph = new ConcreteEdgesGraph<>();
+        for (int i = 0; i < 5000; i++) {
+            graph.add("vertex-" + i + "-\u00fc");
+            graph.add("vertex-" + (i + 1) + "-\u00fc");
+            graph.set("vertex-" + i + "-\u00fc", "vertex-" + (i + 1) + "-\u00fc", i + 1);
+        }
+        String text = export(graph, GraphIO.Format.TSV);
+        assertTrue("export should be larger than one buffer", text.length() > 64 * 1024);
+        assertSameGraph(graph, importFrom(text, GraphIO.Format.TSV));
+    }
+
+    @Test
+    public void testBatchedExportCompressedImport() throws IOException {
+        // more vertices than one export block, and more records than one import batch
+        ShardedGraph<String> graph = new ShardedGraph<>(3);
+        for (int i = 0; i < 20_000; i++) {
+            graph.add("v" + i);
+            graph.set("v" + (i % 100), "v" + i, 1 + i % 5);
+        }
+        String text = export(graph, GraphIO.Format.TSV);
+        CompressedGraph<String> compressed = new CompressedGraph<>();
+        GraphIO.readEdgeList(Channels.newChannel(
+                new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))), GraphIO.Format.TSV, compressed);
+        assertSameGraph(graph, compressed);
+        // later records win, and a zero weight removes an edge
+        GraphIO.readEdgeList(Channels.newChannel(new ByteArrayInputStream(
+                "v0\tv7\t9\nv0\tv7\t4\nv0\tv100\t0\n".getBytes(StandardCharsets.UTF_8))),
+                GraphIO.Format.TSV, compressed);
+        graph.set("v0", "v7", 4);
+        graph.set("v0", "v100", 0);
+        assertSameGraph(graph, compressed);
+        graph.close();
+    }
+
+    @Test
+    public void testBlankLinesIgnored() throws IOException {
+        Graph<String> graph = importFrom("a\tb\t2\n\nc\n", GraphIO.Format.TSV);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), graph.vertices());
+        assertEquals(Integer.valueOf(2), graph.targets("a").get("b"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testWrongFieldCount() throws IOException {
+        importFrom("a\tb\n", GraphIO.Format.TSV);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadWeight() throws IOException {
+        importFrom("a,b,heavy\n", GraphIO.Format.CSV);
+    }
+
+    @Test
+    public void testDot() throws IOException {
+        Graph<String> graph = new ConcreteEdgesGraph<>();
+        graph.add("x");
+        graph.add("say \"hi\"");
+        graph.set("x", "say \"hi\"", 4);
+        graph.add("two\r\nlines");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GraphIO.writeDot(graph, Channels.newChannel(bytes));
+        String dot = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(dot.startsWith("digraph G {\n"));
+        assertTrue(dot.endsWith("}\n"));
+        assertTrue(dot.contains("  \"x\" -> \"say \\\"hi\\\"\" [weight=4];\n"));
+        assertTrue(dot.contains("  \"say \\\"hi\\\"\";\n"));
+        assertTrue(dot.contains("  \"two\\r\\nlines\";\n"));
+    }
+}
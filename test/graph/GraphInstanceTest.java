@@ -2,14 +2,35 @@ package graph;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
+import org.junit.Assume;
 import org.junit.Test;
 
 public abstract class GraphInstanceTest {
 
+    // Testing strategy for the differential harness:
+    //   random sequences of add, set (weights 0, small, large, negative) and
+    //   remove over a small label pool, so operations often hit existing
+    //   vertices and edges; after every operation the return value and every
+    //   observer are compared with a simple reference model
+    //   a mismatch is shrunk to a minimal sequence of operations
+    //   high-volume mode: run with -Dgraph.differential.operations=N to
+    //   replay N operations over a larger label pool
+
+    private static final String OPERATIONS_PROPERTY = "graph.differential.operations";
+    private static final int SHRINK_RUNS = 2_000;
+
     public abstract Graph<String> emptyInstance();
 
     @Test
@@ -76,4 +97,312 @@ public abstract class GraphInstanceTest {
         assertTrue("A should have B as a target", targetsA.containsKey("B"));
         assertEquals("Edge from A to B should have weight 5", (int) targetsA.get("B"), 5);
     }
+
+    @Test
+    public void testSetReturnsPreviousWeight() {
+        Graph<String> graph = emptyInstance();
+        assertEquals(0, graph.set("A", "B", 3));
+        assertEquals(3, graph.set("A", "B", 4));
+        assertEquals(4, graph.set("A", "B", 4));
+        assertEquals(4, graph.set("A", "B", 0));
+        assertEquals(0, graph.set("A", "B", 0));
+    }
+
+    @Test
+    public void testSetAddsVertices() {
+        Graph<String> graph = emptyInstance();
+        graph.set("A", "B", 1);
+        assertEquals(new HashSet<>(Arrays.asList("A", "B")), graph.vertices());
+    }
+
+    @Test
+    public void testSetZeroRemovesOnlyTheEdge() {
+        Graph<String> graph = emptyInstance();
+        graph.set("A", "B", 2);
+        graph.set("A", "B", 0);
+        graph.set("C", "D", 0);
+        assertTrue(graph.targets("A").isEmpty());
+        assertTrue(graph.sources("B").isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("A", "B")), graph.vertices());
+    }
+
+    @Test
+    public void testDifferentialAgainstReferenceModel() {
+        for (long seed = 0; seed < 10; seed++) {
+            checkAgainstModel(randomOperations(new Random(seed), 200, 6), 1);
+        }
+    }
+
+    @Test
+    public void testDifferentialHighVolume() {
+        final String operations = System.getProperty(OPERATIONS_PROPERTY);
+        Assume.assumeNotNull(operations);
+        final int count = Integer.parseInt(operations);
+        checkAgainstModel(randomOperations(new Random(count), count, (int) Math.sqrt(count) + 8), 1_000);
+    }
+
+    /*
+     * Run operations against a fresh instance and the reference model,
+     * comparing the whole graph every compareEvery operations and at the end;
+     * on a mismatch, fail with a shrunk sequence of operations.
+     */
+    private void checkAgainstModel(List<Operation> operations, int compareEvery) {
+        final int failedAt = firstMismatch(operations, compareEvery);
+        if (failedAt < 0) {
+            return;
+        }
+        // operations after the mismatch cannot matter
+        List<Operation> failing = new ArrayList<>(operations.subList(0, failedAt + 1));
+        failing = shrink(failing);
+        final StringBuilder message = new StringBuilder("graph differs from reference model after:");
+        for (Operation operation : failing) {
+            message.append("\n  ").append(operation);
+        }
+        message.append("\n").append(mismatch(failing));
+        fail(message.toString());
+    }
+
+    /*
+     * Return the index of the first operation after which the instance and
+     * the model disagree, or -1 if they never do.
+     */
+    private int firstMismatch(List<Operation> operations, int compareEvery) {
+        final Graph<String> graph = emptyInstance();
+        final ReferenceGraph model = new ReferenceGraph();
+        for (int i = 0; i < operations.size(); i++) {
+            final Operation operation = operations.get(i);
+            if (!operation.apply(graph).equals(operation.apply(model))) {
+                return i;
+            }
+            if ((i + 1) % compareEvery == 0 || i == operations.size() - 1) {
+                if (!sameGraph(graph, model, operation)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Describe how a failing sequence's last operation or final state differs.
+     */
+    private String mismatch(List<Operation> operations) {
+        final Graph<String> graph = emptyInstance();
+        final ReferenceGraph model = new ReferenceGraph();
+        for (int i = 0; i < operations.size() - 1; i++) {
+            operations.get(i).apply(graph);
+            operations.get(i).apply(model);
+        }
+        final Operation last = operations.get(operations.size() - 1);
+        final Object actual = last.apply(graph);
+        final Object expected = last.apply(model);
+        if (!actual.equals(expected)) {
+            return "last operation returned " + actual + ", expected " + expected;
+        }
+        return "graph is " + describe(graph, model.vertices()) + ", expected " + describe(model, model.vertices());
+    }
+
+    private static boolean sameGraph(Graph<String> graph, ReferenceGraph model, Operation last) {
+        final Set<String> labels = new HashSet<>(model.vertices());
+        labels.addAll(last.labels());
+        if (!graph.vertices().equals(model.vertices())) {
+            return false;
+        }
+        for (String label : labels) {
+            if (!graph.sources(label).equals(model.sources(label))
+                    || !graph.targets(label).equals(model.targets(label))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String describe(Graph<String> graph, Set<String> labels) {
+        final StringBuilder description = new StringBuilder(new TreeSet<>(graph.vertices()).toString());
+        for (String label : new TreeSet<>(labels)) {
+            description.append(' ').append(label).append("->").append(new TreeMap<>(graph.targets(label)));
+        }
+        return description.toString();
+    }
+
+    /*
+     * Greedily shrink a failing sequence: drop ever smaller blocks of
+     * operations, then simplify the operations that remain, keeping each
+     * change that still fails.
+     */
+    private List<Operation> shrink(List<Operation> failing) {
+        int runs = 0;
+        for (int block = Math.max(1, failing.size() / 2); block >= 1 && runs < SHRINK_RUNS; block /= 2) {
+            for (int start = 0; start + block <= failing.size() && runs < SHRINK_RUNS; ) {
+                final List<Operation> candidate = new ArrayList<>(failing.subList(0, start));
+                candidate.addAll(failing.subList(start + block, failing.size()));
+                runs++;
+                final int failedAt = candidate.isEmpty() ? -1 : firstMismatch(candidate, 1);
+                if (failedAt >= 0) {
+                    failing = candidate.subList(0, failedAt + 1);
+                } else {
+                    start += block;
+                }
+            }
+        }
+        for (int i = 0; i < failing.size() && runs < SHRINK_RUNS; i++) {
+            for (Operation simpler : failing.get(i).simplifications()) {
+                final List<Operation> candidate = new ArrayList<>(failing);
+                candidate.set(i, simpler);
+                runs++;
+                final int failedAt = firstMismatch(candidate, 1);
+                if (failedAt >= 0) {
+                    failing = candidate.subList(0, failedAt + 1);
+                    break;
+                }
+            }
+        }
+        return failing;
+    }
+
+    private static List<Operation> randomOperations(Random random, int count, int labelCount) {
+        final List<Operation> operations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final String a = "v" + random.nextInt(labelCount);
+            final String b = "v" + random.nextInt(labelCount);
+            final int choice = random.nextInt(10);
+            if (choice < 2) {
+                operations.add(new Operation(Operation.Kind.ADD, a, null, 0));
+            } else if (choice < 3) {
+                operations.add(new Operation(Operation.Kind.REMOVE, a, null, 0));
+            } else {
+                final int kind = random.nextInt(20);
+                final int weight = kind == 0 ? -1 - random.nextInt(5)
+                        : kind < 5 ? 0
+                        : kind == 5 ? Integer.MAX_VALUE
+                        : 1 + random.nextInt(4);
+                operations.add(new Operation(Operation.Kind.SET, a, b, weight));
+            }
+        }
+        return operations;
+    }
+
+    /*
+     * One mutator call with its arguments.
+     */
+    private static final class Operation {
+        enum Kind { ADD, SET, REMOVE }
+
+        final Kind kind;
+        final String first;
+        final String second;
+        final int weight;
+
+        Operation(Kind kind, String first, String second, int weight) {
+            this.kind = kind;
+            this.first = first;
+            this.second = second;
+            this.weight = weight;
+        }
+
+        /*
+         * Apply to graph and return its result, or the class of the unchecked
+         * exception it threw.
+         */
+        Object apply(Graph<String> graph) {
+            try {
+                switch (kind) {
+                case ADD: return graph.add(first);
+                case SET: return graph.set(first, second, weight);
+                default:  return graph.remove(first);
+                }
+            } catch (RuntimeException re) {
+                return re.getClass();
+            }
+        }
+
+        Set<String> labels() {
+            return second == null ? Collections.singleton(first) : new HashSet<>(Arrays.asList(first, second));
+        }
+
+        /*
+         * Variants with simpler arguments, simplest first.
+         */
+        List<Operation> simplifications() {
+            final List<Operation> simpler = new ArrayList<>();
+            if (!first.equals("v0")) {
+                simpler.add(new Operation(kind, "v0", second, weight));
+            }
+            if (second != null && !second.equals("v0")) {
+                simpler.add(new Operation(kind, first, "v0", weight));
+            }
+            if (kind == Kind.SET && weight != 0 && weight != 1) {
+                simpler.add(new Operation(kind, first, second, weight < 0 ? -1 : 1));
+            }
+            return simpler;
+        }
+
+        @Override public String toString() {
+            switch (kind) {
+            case ADD: return "add(" + first + ")";
+            case SET: return "set(" + first + ", " + second + ", " + weight + ")";
+            default:  return "remove(" + first + ")";
+            }
+        }
+    }
+
+    /*
+     * A straightforward implementation of the Graph spec, used as the
+     * reference for every backend.
+     */
+    private static final class ReferenceGraph implements Graph<String> {
+        private final Map<String, Map<String, Integer>> targets = new HashMap<>();
+
+        @Override public boolean add(String vertex) {
+            return targets.putIfAbsent(vertex, new HashMap<String, Integer>()) == null;
+        }
+
+        @Override public int set(String source, String target, int weight) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("negative weight");
+            }
+            final Map<String, Integer> out = targets.get(source);
+            final Integer previous = out == null ? null : out.get(target);
+            if (weight == 0) {
+                if (previous != null) {
+                    out.remove(target);
+                }
+            } else {
+                add(source);
+                add(target);
+                targets.get(source).put(target, weight);
+            }
+            return previous == null ? 0 : previous;
+        }
+
+        @Override public boolean remove(String vertex) {
+            if (targets.remove(vertex) == null) {
+                return false;
+            }
+            for (Map<String, Integer> out : targets.values()) {
+                out.remove(vertex);
+            }
+            return true;
+        }
+
+        @Override public Set<String> vertices() {
+            return new HashSet<>(targets.keySet());
+        }
+
+        @Override public Map<String, Integer> sources(String target) {
+            final Map<String, Integer> sources = new HashMap<>();
+            for (Map.Entry<String, Map<String, Integer>> vertex : targets.entrySet()) {
+                final Integer weight = vertex.getValue().get(target);
+                if (weight != null) {
+                    sources.put(vertex.getKey(), weight);
+                }
+            }
+            return sources;
+        }
+
+        @Override public Map<String, Integer> targets(String source) {
+            final Map<String, Integer> out = targets.get(source);
+            return out == null ? new HashMap<String, Integer>() : new HashMap<>(out);
+        }
+    }
 }
@@ -14,7 +14,7 @@ public class GraphStaticTest {
     // This setup method will run before each test to create a new empty graph.
     @Before
     public void setUp() {
-        graph = new ConcreteEdgesGraph(); // Assuming ConcreteEdgesGraph is your graph implementation.
+        graph = new ConcreteEdgesGraph<>(); // Assuming ConcreteEdgesGraph is your graph implementation.
     }
 
     // Testing strategy:
@@ -88,10 +88,21 @@ public class GraphStaticTest {
     // Testing strategy for empty()
     @Test
     public void testEmptyVerticesEmpty() {
-        equals("Expected empty() graph to have no vertices");
-             
+        assertEquals("Expected empty() graph to have no vertices",
+                Collections.emptySet(), Graph.empty().vertices());
     }
 
-    
-    // TODO test other vertex label types in Problem 3.2
+    // Testing strategy for other vertex label types:
+    //   use Integer labels through empty(), with an edge and a removal
+    @Test
+    public void testIntegerLabels() {
+        Graph<Integer> numbers = Graph.empty();
+        numbers.add(1);
+        numbers.add(2);
+        numbers.set(1, 2, 3);
+        assertEquals("Weight of edge from 1 to 2 should be 3", Integer.valueOf(3), numbers.targets(1).get(2));
+        assertTrue("1 should be a source of 2", numbers.sources(2).containsKey(1));
+        numbers.remove(2);
+        assertTrue("Removing 2 should remove its edges", numbers.targets(1).isEmpty());
+    }
 }
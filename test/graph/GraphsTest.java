@@ -0,0 +1,101 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for Graphs.
+ */
+public class GraphsTest {
+    
+    // Testing strategy for weightedUnion():
+    //   number of graphs: 0, 1, >1
+    //   edges: only in one graph, in several graphs, weighted sum rounds to 0
+    //   weights: 0, fractional, > 1, negative, infinite, mismatched count
+    // Testing strategy for unionWeight():
+    //   sum: 0, below 1, half way between integers, above Integer.MAX_VALUE
+    //   vertices: isolated vertex, vertex only in some graphs
+    
+    private static Graph<String> graph(String... edges) {
+        Graph<String> graph = new ConcreteEdgesGraph<>();
+        for (int i = 0; i < edges.length; i += 3) {
+            graph.add(edges[i]);
+            graph.add(edges[i + 1]);
+            graph.set(edges[i], edges[i + 1], Integer.parseInt(edges[i + 2]));
+        }
+        return graph;
+    }
+    
+    @Test
+    public void testNoGraphs() {
+        Graph<String> merged = Graphs.weightedUnion(Collections.<Graph<String>>emptyList(), new double[0],
+                new ConcreteEdgesGraph<String>());
+        assertEquals(Collections.emptySet(), merged.vertices());
+    }
+    
+    @Test
+    public void testSingleGraphScaled() {
+        Graph<String> merged = Graphs.weightedUnion(Arrays.asList(graph("a", "b", "3", "b", "c", "1")),
+                new double[] { 2 }, new ConcreteEdgesGraph<String>());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), merged.vertices());
+        assertEquals(Collections.singletonMap("b", 6), merged.targets("a"));
+        assertEquals(Collections.singletonMap("c", 2), merged.targets("b"));
+    }
+    
+    @Test
+    public void testOverlappingEdges() {
+        Graph<String> first = graph("a", "b", "4", "a", "c", "2");
+        Graph<String> second = graph("a", "c", "10", "a", "d", "1", "d", "a", "5");
+        second.add("lonely");
+        Graph<String> merged = Graphs.weightedUnion(Arrays.asList(first, second),
+                new double[] { 0.5, 0.25 }, new ConcreteEdgesGraph<String>());
+        
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("b", 2);             // 0.5 * 4
+        expected.put("c", 4);             // 0.5 * 2 + 0.25 * 10 = 3.5, rounded
+        expected.put("d", 1);             // 0.25 * 1, at least 1
+        assertEquals(expected, merged.targets("a"));
+        assertEquals(Collections.singletonMap("a", 1), merged.targets("d"));
+        assertTrue(merged.vertices().contains("lonely"));
+    }
+    
+    @Test
+    public void testZeroWeightDropsEdges() {
+        Graph<String> merged = Graphs.weightedUnion(Arrays.asList(graph("a", "b", "3"), graph("b", "a", "1")),
+                new double[] { 0, 1 }, new ConcreteEdgesGraph<String>());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), merged.vertices());
+        assertTrue(merged.targets("a").isEmpty());
+        assertEquals(Collections.singletonMap("a", 1), merged.targets("b"));
+    }
+    
+    @Test
+    public void testUnionWeight() {
+        assertEquals(0, Graphs.unionWeight(0));
+        assertEquals(1, Graphs.unionWeight(0.01));
+        assertEquals(3, Graphs.unionWeight(2.5));
+        assertEquals(Integer.MAX_VALUE, Graphs.unionWeight(1e20));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testInfiniteWeight() {
+        Graphs.checkUnionWeights(1, new double[] { Double.POSITIVE_INFINITY });
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testMismatchedWeights() {
+        Graphs.weightedUnion(Arrays.asList(graph(), graph()), new double[] { 1 }, new ConcreteEdgesGraph<String>());
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testNegativeWeight() {
+        Graphs.weightedUnion(Arrays.asList(graph()), new double[] { -1 }, new ConcreteEdgesGraph<String>());
+    }
+    
+}
@@ -0,0 +1,79 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+/**
+ * Tests for HashGraph.
+ *
+ * This class runs the GraphInstanceTest tests against HashGraph, as well as
+ * tests for its contract and its running time.
+ */
+public class HashGraphTest extends GraphInstanceTest {
+
+    /*
+     * Provide a HashGraph for tests in GraphInstanceTest.
+     */
+    @Override public Graph<String> emptyInstance() {
+        return new HashGraph<>();
+    }
+
+    // Testing strategy for HashGraph:
+    //   set(): new edge, changed weight, weight 0 on present and absent edges
+    //   remove(): vertex with in-edges, out-edges and a self loop
+    //   Graph.empty(): is a HashGraph
+    //   scaling: setting many edges takes time linear in their number
+
+    @Test
+    public void testSetContract() {
+        Graph<String> graph = emptyInstance();
+        assertEquals(0, graph.set("a", "b", 2));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), graph.vertices());
+        assertEquals(2, graph.set("a", "b", 5));
+        assertEquals(5, graph.set("a", "b", 0));
+        assertTrue(graph.targets("a").isEmpty());
+        assertTrue(graph.sources("b").isEmpty());
+        assertEquals(0, graph.set("x", "y", 0));
+        assertFalse(graph.vertices().contains("x"));
+    }
+
+    @Test
+    public void testSelfLoopAndRemove() {
+        Graph<String> graph = emptyInstance();
+        graph.set("a", "a", 1);
+        graph.set("a", "b", 2);
+        graph.set("c", "a", 3);
+        assertTrue(graph.remove("a"));
+        assertEquals(new HashSet<>(Arrays.asList("b", "c")), graph.vertices());
+        assertTrue(graph.sources("b").isEmpty());
+        assertTrue(graph.targets("c").isEmpty());
+        assertFalse(graph.remove("a"));
+    }
+
+    @Test
+    public void testEmptyIsHashGraph() {
+        assertTrue(Graph.empty() instanceof HashGraph);
+    }
+
+    @Test(timeout=10_000)
+    public void testLinearScaling() {
+        // a list-backed graph takes minutes for this many edges
+        Graph<Integer> graph = new HashGraph<>();
+        int vertices = 20_000;
+        for (int s = 0; s < vertices; s++) {
+            for (int k = 1; k <= 10; k++) {
+                graph.set(s, (s * 31 + k * k) % vertices, k);
+            }
+        }
+        int edges = 0;
+        for (int s = 0; s < vertices; s++) {
+            edges += graph.targets(s).size();
+        }
+        assertEquals(vertices * 10, edges);
+    }
+
+}
@@ -0,0 +1,105 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for HashTrieMap.
+ */
+public class HashTrieMapTest {
+    
+    // Testing strategy
+    //   operations: put new key, put existing key with same/different value,
+    //     remove present/absent key, remove down to empty
+    //   hashes: distinct, sharing prefixes, fully colliding
+    //   persistence: old versions unchanged after updates
+    
+    /*
+     * A key whose hash code is chosen by the test, to force collisions.
+     */
+    private static final class Key {
+        private final int id;
+        private final int hash;
+        
+        Key(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+        
+        @Override public boolean equals(Object that) {
+            return that instanceof Key && ((Key) that).id == id;
+        }
+        
+        @Override public int hashCode() {
+            return hash;
+        }
+        
+        @Override public String toString() {
+            return "k" + id;
+        }
+    }
+    
+    @Test
+    public void testEmpty() {
+        HashTrieMap<String, Integer> map = HashTrieMap.empty();
+        assertEquals(0, map.size());
+        assertNull(map.get("a"));
+        assertSame(map, map.remove("a"));
+        assertTrue(map.toMap().isEmpty());
+    }
+    
+    @Test
+    public void testPersistence() {
+        HashTrieMap<String, Integer> one = HashTrieMap.<String, Integer>empty().put("a", 1);
+        HashTrieMap<String, Integer> two = one.put("b", 2);
+        HashTrieMap<String, Integer> changed = two.put("a", 3);
+        HashTrieMap<String, Integer> removed = changed.remove("b");
+        assertSame(two, two.put("b", 2));
+        assertEquals("{a=1}", one.toString());
+        assertEquals(2, two.size());
+        assertEquals(Integer.valueOf(1), two.get("a"));
+        assertEquals(Integer.valueOf(3), changed.get("a"));
+        assertEquals(1, removed.size());
+        assertNull(removed.get("b"));
+        assertEquals(Integer.valueOf(2), changed.get("b"));
+    }
+    
+    @Test
+    public void testRandomOperationsAgainstHashMap() {
+        for (int hashBits : new int[] { 32, 8, 1 }) {
+            Random random = new Random(hashBits);
+            Map<Key, Integer> expected = new HashMap<>();
+            HashTrieMap<Key, Integer> actual = HashTrieMap.empty();
+            Key[] keys = new Key[2000];
+            for (int i = 0; i < keys.length; i++) {
+                // narrow hashes collide in their low bits, or entirely
+                int hash = hashBits == 32 ? random.nextInt() : random.nextInt(1 << hashBits) << (32 - hashBits);
+                keys[i] = new Key(i, hash);
+            }
+            for (int step = 0; step < 20_000; step++) {
+                Key key = keys[random.nextInt(keys.length)];
+                if (random.nextInt(3) == 0) {
+                    expected.remove(key);
+                    actual = actual.remove(key);
+                } else {
+                    int value = random.nextInt(5);
+                    expected.put(key, value);
+                    actual = actual.put(key, value);
+                }
+                assertEquals(expected.size(), actual.size());
+                assertEquals(expected.get(key), actual.get(key));
+            }
+            assertEquals(expected, actual.toMap());
+            for (Key key : keys) {
+                actual = actual.remove(key);
+            }
+            assertEquals(0, actual.size());
+        }
+    }
+    
+}
@@ -0,0 +1,105 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests for PersistentGraph.
+ * 
+ * This class runs the GraphInstanceTest tests against PersistentGraph, as
+ * well as tests for snapshots.
+ */
+public class PersistentGraphTest extends GraphInstanceTest {
+    
+    /*
+     * Provide a PersistentGraph for tests in GraphInstanceTest.
+     */
+    @Override public Graph<String> emptyInstance() {
+        return new PersistentGraph<>();
+    }
+    
+    // Testing strategy for PersistentGraph:
+    //   set(): new edge, changed weight, same weight, weight 0 on present and
+    //     absent edges, self loop, missing vertices
+    //   remove(): vertex with in-edges, out-edges and a self loop
+    //   snapshot(): mutate original after snapshot, mutate snapshot,
+    //     concurrent reader while a writer mutates
+    
+    @Test
+    public void testSetContract() {
+        PersistentGraph<String> graph = new PersistentGraph<>();
+        assertEquals(0, graph.set("a", "b", 2));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), graph.vertices());
+        assertEquals(2, graph.set("a", "b", 5));
+        assertEquals(5, graph.set("a", "b", 5));
+        assertEquals(5, graph.set("a", "b", 0));
+        assertTrue(graph.targets("a").isEmpty());
+        assertTrue(graph.sources("b").isEmpty());
+        assertEquals(0, graph.set("x", "y", 0));
+        assertFalse(graph.vertices().contains("x"));
+    }
+    
+    @Test
+    public void testSelfLoopAndRemove() {
+        PersistentGraph<String> graph = new PersistentGraph<>();
+        graph.set("a", "a", 1);
+        graph.set("a", "b", 2);
+        graph.set("c", "a", 3);
+        assertEquals(Integer.valueOf(1), graph.sources("a").get("a"));
+        assertEquals(Integer.valueOf(1), graph.targets("a").get("a"));
+        assertTrue(graph.remove("a"));
+        assertEquals(new HashSet<>(Arrays.asList("b", "c")), graph.vertices());
+        assertTrue(graph.sources("b").isEmpty());
+        assertTrue(graph.targets("c").isEmpty());
+        assertFalse(graph.remove("a"));
+    }
+    
+    @Test
+    public void testSnapshotIsolation() {
+        PersistentGraph<String> graph = new PersistentGraph<>();
+        graph.set("a", "b", 1);
+        PersistentGraph<String> snapshot = graph.snapshot();
+        graph.set("a", "b", 7);
+        graph.remove("b");
+        graph.add("c");
+        snapshot.set("b", "d", 4);
+        
+        assertEquals(new HashSet<>(Arrays.asList("a", "c")), graph.vertices());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "d")), snapshot.vertices());
+        assertEquals(Integer.valueOf(1), snapshot.targets("a").get("b"));
+        assertTrue(graph.targets("a").isEmpty());
+    }
+    
+    @Test
+    public void testReaderSeesConsistentSnapshots() throws InterruptedException {
+        PersistentGraph<Integer> graph = new PersistentGraph<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                // each mutation keeps the in-weights of vertex 0 summing to 0 mod 10
+                graph.set(i % 100 + 1, 0, 10);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            PersistentGraph<Integer> snapshot = graph.snapshot();
+            int total = 0;
+            for (int weight : snapshot.sources(0).values()) {
+                total += weight;
+            }
+            assertEquals(snapshot.sources(0).size() * 10, total);
+            assertEquals(snapshot.sources(0).keySet(), withoutZero(snapshot.vertices()));
+        }
+        writer.join();
+    }
+    
+    private static Set<Integer> withoutZero(Set<Integer> vertices) {
+        vertices.remove(0);
+        return vertices;
+    }
+    
+}
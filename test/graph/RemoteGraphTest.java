@@ -0,0 +1,218 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for RemoteGraph and ShardServer.
+ *
+ * This class runs the GraphInstanceTest tests against a RemoteGraph talking
+ * to a ShardServer on the loopback interface, as well as tests for
+ * ShardedGraph over remote shards.
+ */
+public class RemoteGraphTest extends GraphInstanceTest {
+
+    private final List<ShardServer> servers = new ArrayList<>();
+    private final List<RemoteGraph> clients = new ArrayList<>();
+
+    /*
+     * Provide a RemoteGraph for tests in GraphInstanceTest.
+     */
+    @Override public Graph<String> emptyInstance() {
+        try {
+            return connect(new PersistentGraph<String>());
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private RemoteGraph connect(Graph<String> served) throws IOException {
+        ShardServer server = new ShardServer(served, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        servers.add(server);
+        RemoteGraph client = new RemoteGraph(server.address());
+        clients.add(client);
+        return client;
+    }
+
+    @After
+    public void stopServers() throws IOException {
+        for (RemoteGraph client : clients) {
+            client.close();
+        }
+        for (ShardServer server : servers) {
+            server.stop();
+        }
+    }
+
+    // Testing strategy for RemoteGraph and ShardServer:
+    //   labels: empty, non-ASCII, containing delimiters
+    //   errors: negative weight reported as IllegalArgumentException and the
+    //     connection still usable afterwards; other exception from the served
+    //     graph reported as IllegalStateException, connection still usable;
+    //     connection lost, reported as UncheckedIOException and reopened by
+    //     the next call; malformed label length from a client closes its
+    //     connection and is passed to the failure handler; unresolved address
+    //   targetsOfAll(): several sources, absent source
+    //   two clients of one server see each other's changes
+    //   ShardedGraph over several remote shards, closed with them
+
+    @Test
+    public void testLabelsRoundTrip() throws IOException {
+        RemoteGraph graph = connect(new PersistentGraph<String>());
+        String odd = "tab\there\nnew \u00e9t\u00e9";
+        assertEquals(0, graph.set("", odd, 7));
+        assertEquals(new HashSet<>(Arrays.asList("", odd)), graph.vertices());
+        assertEquals(Collections.singletonMap("", 7), graph.sources(odd));
+    }
+
+    @Test
+    public void testBadWeightKeepsConnection() throws IOException {
+        RemoteGraph graph = connect(new PersistentGraph<String>());
+        try {
+            graph.set("a", "b", -1);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        assertTrue(graph.add("a"));
+        assertEquals(Collections.singleton("a"), graph.vertices());
+    }
+
+    @Test
+    public void testReconnectAfterFailure() throws IOException {
+        PersistentGraph<String> served = new PersistentGraph<>();
+        RemoteGraph graph = connect(served);
+        graph.set("a", "b", 2);
+        ShardServer stopped = servers.get(servers.size() - 1);
+        stopped.stop();
+        try {
+            graph.add("c");
+            fail("expected UncheckedIOException");
+        } catch (UncheckedIOException expected) {
+            // the server closed the connection
+        }
+        ShardServer restarted = new ShardServer(served, stopped.address());
+        restarted.start();
+        servers.add(restarted);
+        assertEquals(Collections.singletonMap("b", 2), graph.targets("a"));
+        assertTrue(graph.add("c"));
+    }
+
+    @Test
+    public void testTargetsOfAll() throws IOException {
+        RemoteGraph graph = connect(new PersistentGraph<String>());
+        graph.set("a", "b", 1);
+        graph.set("a", "c", 2);
+        graph.set("b", "c", 3);
+        Map<String, Map<String, Integer>> targets = graph.targetsOfAll(Arrays.asList("a", "b", "missing"));
+        assertEquals(2, targets.get("a").size());
+        assertEquals(Collections.singletonMap("c", 3), targets.get("b"));
+        assertTrue(targets.get("missing").isEmpty());
+    }
+
+    @Test
+    public void testGraphFailureKeepsConnection() throws IOException {
+        RemoteGraph graph = connect(new PersistentGraph<String>() {
+            @Override public synchronized boolean add(String vertex) {
+                if (vertex.equals("bad")) {
+                    throw new UnsupportedOperationException("no bad vertices");
+                }
+                return super.add(vertex);
+            }
+        });
+        try {
+            graph.add("bad");
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException ise) {
+            assertTrue(ise.getMessage(), ise.getMessage().contains("no bad vertices"));
+        }
+        assertTrue(graph.add("good"));
+        assertEquals(Collections.singleton("good"), graph.vertices());
+    }
+
+    @Test
+    public void testBadLabelLengthReported() throws Exception {
+        BlockingQueue<IOException> failures = new LinkedBlockingQueue<>();
+        ShardServer server = new ShardServer(new PersistentGraph<String>(),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), failures::add);
+        server.start();
+        servers.add(server);
+        try (Socket socket = new Socket()) {
+            socket.connect(server.address());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeByte(ShardProtocol.ADD);
+            out.writeInt(-5);
+            out.flush();
+            assertEquals("server should close the connection", -1, socket.getInputStream().read());
+        }
+        IOException failure = failures.poll(10, TimeUnit.SECONDS);
+        assertNotNull("expected a reported failure", failure);
+        assertTrue(failure.getMessage(), failure.getMessage().contains("-5"));
+        // other clients are unaffected
+        RemoteGraph graph = new RemoteGraph(server.address());
+        clients.add(graph);
+        assertTrue(graph.add("a"));
+    }
+
+    @Test(expected=UnknownHostException.class)
+    public void testUnresolvedAddress() throws IOException {
+        new RemoteGraph(InetSocketAddress.createUnresolved("localhost", 1));
+    }
+
+    @Test
+    public void testClientsShareServer() throws IOException {
+        RemoteGraph first = connect(new PersistentGraph<String>());
+        RemoteGraph second = new RemoteGraph(servers.get(servers.size() - 1).address());
+        clients.add(second);
+        first.set("a", "b", 2);
+        assertEquals(Collections.singletonMap("b", 2), second.targets("a"));
+    }
+
+    @Test
+    public void testShardedOverRemoteShards() throws IOException {
+        List<Graph<String>> shards = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            shards.add(connect(new PersistentGraph<String>()));
+        }
+        ShardedGraph<String> graph = new ShardedGraph<>(shards);
+        for (int i = 0; i < 30; i++) {
+            graph.set("w" + i, "w" + ((i * 7) % 30), i + 1);
+        }
+        assertEquals(30, graph.vertices().size());
+        assertEquals(Integer.valueOf(2), graph.sources("w7").get("w1"));
+        Map<String, Map<String, Integer>> targets = graph.targetsOfAll(graph.vertices());
+        assertEquals(30, targets.size());
+        assertEquals(Collections.singletonMap("w21", 4), targets.get("w3"));
+        assertTrue(graph.remove("w7"));
+        assertTrue(graph.targets("w1").isEmpty());
+        assertEquals(29, graph.vertices().size());
+        graph.close();
+        try {
+            shards.get(0).vertices();
+            fail("expected closing the sharded graph to close its shards");
+        } catch (UncheckedIOException expected) {
+            // the connection is closed
+        }
+    }
+
+}
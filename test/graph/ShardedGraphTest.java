@@ -0,0 +1,115 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for ShardedGraph.
+ *
+ * This class runs the GraphInstanceTest tests against a ShardedGraph of
+ * in-process shards, as well as tests for partitioning.
+ */
+public class ShardedGraphTest extends GraphInstanceTest {
+
+    /*
+     * Provide a ShardedGraph for tests in GraphInstanceTest.
+     */
+    @Override public Graph<String> emptyInstance() {
+        return new ShardedGraph<>(3);
+    }
+
+    // Testing strategy for ShardedGraph:
+    //   shards: 1, several; edges within one shard and across shards
+    //   set(): target owned by another shard, weight 0, negative weight
+    //   remove(): vertex with in-edges from other shards
+    //   vertices(): stand-in targets not reported twice or after removal
+    //   targetsOfAll(): sources on several shards, absent source, no sources
+
+    private static String ownedBy(ShardedGraph<String> graph, int shard, String prefix) {
+        for (int i = 0; ; i++) {
+            if (graph.owner(prefix + i) == shard) {
+                return prefix + i;
+            }
+        }
+    }
+
+    @Test
+    public void testEdgesAcrossShards() {
+        ShardedGraph<String> graph = new ShardedGraph<>(4);
+        String a = ownedBy(graph, 0, "a");
+        String b = ownedBy(graph, 1, "b");
+        String c = ownedBy(graph, 2, "c");
+        assertEquals(0, graph.set(a, b, 3));
+        assertEquals(0, graph.set(c, b, 4));
+        assertEquals(0, graph.set(b, a, 5));
+        assertEquals(new HashSet<>(Arrays.asList(a, b, c)), graph.vertices());
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put(a, 3);
+        expected.put(c, 4);
+        assertEquals(expected, graph.sources(b));
+        assertEquals(Collections.singletonMap(b, 3), graph.targets(a));
+        assertEquals(3, graph.set(a, b, 0));
+        assertEquals(Collections.singletonMap(c, 4), graph.sources(b));
+        assertEquals(new HashSet<>(Arrays.asList(a, b, c)), graph.vertices());
+    }
+
+    @Test
+    public void testRemoveAcrossShards() {
+        ShardedGraph<String> graph = new ShardedGraph<>(4);
+        String a = ownedBy(graph, 0, "a");
+        String b = ownedBy(graph, 1, "b");
+        String c = ownedBy(graph, 2, "c");
+        graph.set(a, b, 1);
+        graph.set(c, b, 1);
+        graph.set(b, c, 1);
+        assertTrue(graph.remove(b));
+        assertFalse(graph.remove(b));
+        assertEquals(new HashSet<>(Arrays.asList(a, c)), graph.vertices());
+        assertTrue(graph.targets(a).isEmpty());
+        assertTrue(graph.targets(c).isEmpty());
+        assertTrue(graph.sources(c).isEmpty());
+        assertTrue(graph.add(b));
+        assertTrue(graph.sources(b).isEmpty());
+    }
+
+    @Test
+    public void testTargetsOfAll() {
+        ShardedGraph<String> graph = new ShardedGraph<>(5);
+        for (int i = 0; i < 20; i++) {
+            graph.set("w" + i, "w" + (i + 1), i + 1);
+        }
+        Map<String, Map<String, Integer>> targets = graph.targetsOfAll(Arrays.asList("w0", "w7", "w19", "none"));
+        assertEquals(4, targets.size());
+        assertEquals(Collections.singletonMap("w1", 1), targets.get("w0"));
+        assertEquals(Collections.singletonMap("w8", 8), targets.get("w7"));
+        assertEquals(Collections.singletonMap("w20", 20), targets.get("w19"));
+        assertTrue(targets.get("none").isEmpty());
+        assertTrue(graph.targetsOfAll(Collections.<String>emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testOneShard() {
+        ShardedGraph<String> graph = new ShardedGraph<>(1);
+        graph.set("a", "b", 1);
+        assertEquals(0, graph.owner("a"));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), graph.vertices());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNegativeWeight() {
+        new ShardedGraph<String>(2).set("a", "b", -1);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNoShards() {
+        new ShardedGraph<String>(0);
+    }
+
+}
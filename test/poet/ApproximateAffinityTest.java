@@ -0,0 +1,119 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.junit.Test;
+
+import graph.Graph;
+
+/**
+ * Tests for ApproximateAffinity and CountMinSketch.
+ */
+public class ApproximateAffinityTest {
+    
+    // Testing strategy
+    //   CountMinSketch: estimates never below true counts, error within
+    //     epsilon * N for nearly all keys, bad parameters, parameters
+    //     needing more counters than one array holds
+    //   ApproximateAffinity:
+    //     stream: empty, one chunk, many chunks, Reader with small reads
+    //     vocabulary: fits in maxSources, much larger than maxSources
+    //     poem(): same bridges as exact mode for frequent pairs
+    
+    @Test
+    public void testSketchBounds() {
+        CountMinSketch sketch = new CountMinSketch(0.001, 0.01);
+        int[] truth = new int[5000];
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            // skewed keys: low keys are much more frequent
+            int key = (int) Math.min(truth.length - 1, Math.abs(random.nextGaussian()) * 300);
+            truth[key]++;
+            sketch.add(key, 1);
+        }
+        assertEquals(200_000, sketch.total());
+        int violations = 0;
+        for (int key = 0; key < truth.length; key++) {
+            long estimate = sketch.estimate(key);
+            assertTrue("underestimate for " + key, estimate >= truth[key]);
+            if (estimate > truth[key] + 0.001 * sketch.total()) {
+                violations++;
+            }
+        }
+        assertTrue("too many keys over the error bound: " + violations, violations <= 0.01 * truth.length);
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testSketchBadEpsilon() {
+        new CountMinSketch(0, 0.1);
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testSketchTooManyCounters() {
+        // 2^30 counters per row, 5 rows
+        new CountMinSketch(3e-9, 0.01);
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testTooManyTargets() {
+        new ApproximateAffinity(1 << 16, 1 << 16, 0.01, 0.01);
+    }
+    
+    @Test
+    public void testEmptyStream() {
+        ApproximateAffinity affinity = new ApproximateAffinity(10, 4, 0.01, 0.01);
+        assertEquals(0, affinity.pairCount());
+        assertTrue(affinity.affinityGraph().vertices().isEmpty());
+        assertEquals("a b", affinity.toPoet().poem("a b"));
+    }
+    
+    @Test
+    public void testSmallVocabularyIsExact() {
+        ApproximateAffinity affinity = new ApproximateAffinity(100, 10, 0.001, 0.001);
+        affinity.accept("This is a test of the");
+        affinity.accept("Mugar Omni Theater sound system.");
+        assertEquals(10, affinity.pairCount());
+        Graph<String> graph = affinity.affinityGraph();
+        assertEquals(Integer.valueOf(1), graph.targets("the").get("mugar"));
+        assertEquals("Test of the system.", affinity.toPoet().poem("Test the system."));
+        assertEquals("GraphPoet(11 words, 10 edges)", affinity.toPoet().toString());
+    }
+    
+    @Test
+    public void testFrequentPairsSurviveNoise() throws IOException {
+        // a frequent phrase repeated among a long tail of one-off words
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            text.append("the quick brown fox jumps over the lazy dog ");
+            for (int j = 0; j < 5; j++) {
+                text.append("noise").append(random.nextInt(1_000_000)).append(' ');
+            }
+        }
+        ApproximateAffinity affinity = new ApproximateAffinity(64, 8, 0.0005, 0.001);
+        affinity.accept(new SmallReads(text.toString()));
+        assertEquals(64, affinity.sourceCount());
+        GraphPoet poet = affinity.toPoet();
+        assertEquals("The quick brown fox jumps over the lazy Dog",
+                poet.poem("The brown jumps the Dog"));
+    }
+    
+    /*
+     * A reader that returns at most a few characters per read, to split
+     * words across buffers.
+     */
+    private static class SmallReads extends StringReader {
+        SmallReads(String s) {
+            super(s);
+        }
+        
+        @Override public int read(char[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, 7));
+        }
+    }
+    
+}
@@ -5,21 +5,332 @@ package poet;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assume;
 import org.junit.Test;
 
+import graph.Graph;
+import graph.Graphs;
+import graph.PersistentGraph;
+import graph.ShardedGraph;
+
 /**
  * Tests for GraphPoet.
  */
 public class GraphPoetTest {
     
     // Testing strategy
-    //   TODO
+    //   corpus: empty, one word, repeated words, mixed case, extra whitespace
+    //   input: empty, one word, words absent from corpus, words with and
+    //     without a bridge, several candidate bridges with different weights
+    //   output: original case of input words kept, bridges lower case,
+    //     single spaces between words
+    //   poem(CharSequence, Appendable): same output, no allocation when
+    //     appending to a presized StringBuilder
+    //   several corpora: weights that change which bridge wins, zero weight,
+    //     weight below one that rounds up, mismatched weights, corpora with
+    //     hundreds of thousands of adjacencies
+    //   fromSnapshot: graph mutated after the poet is created
+    //   fromShards: words on several shards, graph mutated afterwards and
+    //     followed by later poems, input words absent from the graph
+    //   scaling: a corpus with hundreds of thousands of distinct adjacencies
+    //   order: 2 (same as the single-corpus constructor), 3 with a context
+    //     that changes the bridge, context broken by an unknown word, context
+    //     shorter than order - 1, order less than 2
+    
+    private static File corpus(String text) throws IOException {
+        File file = File.createTempFile("corpus", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
     
     @Test(expected=AssertionError.class)
     public void testAssertionsEnabled() {
         assert false; // make sure assertions are enabled with VM argument: -ea
     }
     
-    // TODO tests
+    @Test
+    public void testSpecExample() throws IOException {
+        GraphPoet poet = new GraphPoet(corpus("This is a test of the Mugar Omni Theater sound system."));
+        assertEquals("Test of the system.", poet.poem("Test the system."));
+    }
+    
+    @Test
+    public void testMugarCorpusFile() throws IOException {
+        GraphPoet poet = new GraphPoet(new File("src/poet/mugar-omni-theater.txt"));
+        assertEquals("Test of the system.", poet.poem("Test the system."));
+    }
+    
+    @Test
+    public void testEmptyCorpusAndInput() throws IOException {
+        GraphPoet poet = new GraphPoet(corpus(""));
+        assertEquals("", poet.poem(""));
+        assertEquals("hello world", poet.poem("hello world"));
+    }
+    
+    @Test
+    public void testOneWordInput() throws IOException {
+        GraphPoet poet = new GraphPoet(corpus("a b c"));
+        assertEquals("A", poet.poem("A"));
+    }
+    
+    @Test
+    public void testCaseAndWhitespace() throws IOException {
+        GraphPoet poet = new GraphPoet(corpus("  Seek TO\n\nexplore   strange\r\nnew worlds  "));
+        assertEquals("seek to EXPLORE strange NEW Worlds",
+                poet.poem("  seek \n EXPLORE\n\nstrange NEW   Worlds "));
+    }
+    
+    @Test
+    public void testWordsAbsentFromCorpus() throws IOException {
+        GraphPoet poet = new GraphPoet(corpus("a b c"));
+        assertEquals("x a b c y", poet.poem("x a c y"));
+    }
+    
+    @Test
+    public void testMaximumWeightBridge() throws IOException {
+        // a -> b -> e has weight 1 + 1, a -> c -> e has weight 2 + 1,
+        // a -> d -> e has weight 1 + 3
+        GraphPoet poet = new GraphPoet(corpus("a b e a c e a c a d e d e d e"));
+        assertEquals("a d E", poet.poem("a E"));
+    }
+    
+    @Test
+    public void testSelfLoopBridge() throws IOException {
+        GraphPoet poet = new GraphPoet(corpus("Hello, HELLO, hello, goodbye!"));
+        assertEquals("hello, hello, goodbye!", poet.poem("hello, goodbye!"));
+    }
+    
+    @Test
+    public void testWeightedCorpora() throws IOException {
+        File viaB = corpus("a b c a b c");
+        File viaD = corpus("a d c");
+        assertEquals("a b c", new GraphPoet(Arrays.asList(viaB, viaD), new double[] { 1, 1 }).poem("a c"));
+        assertEquals("a d c", new GraphPoet(Arrays.asList(viaB, viaD), new double[] { 1, 5 }).poem("a c"));
+        assertEquals("a d c", new GraphPoet(Arrays.asList(viaB, viaD), new double[] { 0, 1 }).poem("a c"));
+        // a zero weight keeps a corpus's words but none of its adjacencies
+        assertEquals("GraphPoet(4 words, 2 edges)",
+                new GraphPoet(Arrays.asList(viaB, viaD), new double[] { 0, 1 }).toString());
+        assertEquals("GraphPoet(4 words, 5 edges)",
+                new GraphPoet(Arrays.asList(viaB, viaD), new double[] { 0.1, 1 }).toString());
+    }
+    
+    @Test(timeout=20_000)
+    public void testLargeCorporaMergeLinearly() throws IOException {
+        Random random = new Random(6005);
+        File[] corpora = new File[2];
+        for (int c = 0; c < corpora.length; c++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 200_000; i++) {
+                text.append('w').append(random.nextInt(20_000)).append(' ');
+            }
+            corpora[c] = corpus(text.toString());
+        }
+        GraphPoet merged = new GraphPoet(Arrays.asList(corpora), new double[] { 1, 0.5 });
+        assertTrue(merged.toString(), merged.toString().matches("GraphPoet\\(20000 words, 3\\d{5} edges\\)"));
+    }
+    
+    @Test
+    public void testSingleCorpusListMatchesFile() throws IOException {
+        File nimoy = new File("src/poet/mugar-omni-theater.txt");
+        assertEquals(new GraphPoet(nimoy).poem("Test the system."),
+                new GraphPoet(Arrays.asList(nimoy), new double[] { 1 }).poem("Test the system."));
+    }
+    
+    @Test
+    public void testOrderTwoMatchesBigrams() throws IOException {
+        File nimoy = new File("src/poet/mugar-omni-theater.txt");
+        assertEquals(new GraphPoet(nimoy).poem("Test the system."),
+                new GraphPoet(nimoy, 2).poem("Test the system."));
+        assertEquals(new GraphPoet(nimoy).toString(), new GraphPoet(nimoy, 2).toString());
+    }
+    
+    @Test
+    public void testContextChangesBridge() throws IOException {
+        // x -> y1 -> z outweighs x -> y2 -> z, but only y2 ever follows "p x"
+        File text = corpus("x y1 . x y1 . x y1 z . p x y2 z .");
+        GraphPoet bigrams = new GraphPoet(text);
+        GraphPoet trigrams = new GraphPoet(text, 3);
+        assertEquals("P x y1 z", bigrams.poem("P x z"));
+        assertEquals("P x y2 z", trigrams.poem("P x z"));
+        assertEquals("x y1 z", trigrams.poem("x z"));
+        assertEquals("q x y1 z", trigrams.poem("q x z"));
+        assertEquals("GraphPoet(6 words, 9 edges, order 3)", trigrams.toString());
+    }
+    
+    @Test
+    public void testContextIncludesBridges() throws IOException {
+        // w3 -> x -> w5 outweighs w3 -> y -> w5, but after the bridge w2,
+        // "w2 w3" is only ever followed by y
+        File text = corpus("w1 w2 w3 y w5 . w3 x w5 . w3 x w5 .");
+        assertEquals("w1 w2 w3 x w5", new GraphPoet(text).poem("w1 w3 w5"));
+        assertEquals("w1 w2 w3 y w5", new GraphPoet(text, 3).poem("w1 w3 w5"));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testOrderTooSmall() throws IOException {
+        new GraphPoet(corpus("a b"), 1);
+    }
+    
+    @Test
+    public void testContextTrieSharesPrefixes() {
+        ContextTrie trie = new ContextTrie(3);
+        for (int word : new int[] { 1, 2, 1, 2 }) {
+            trie.accept(word);
+        }
+        trie.endStream();
+        // (1) (1 2) (1 2 1) (2) (2 1) (2 1 2), plus the root
+        assertEquals(7, trie.nodeCount());
+        Vocabulary vocabulary = new Vocabulary();
+        for (String word : new String[] { "zero", "one", "two" }) {
+            vocabulary.intern(word, 0, word.length());
+        }
+        NgramIndex index = trie.toIndex(vocabulary);
+        assertEquals(7, index.nodeCount());
+        assertTrue(index.find(new int[] { 1, 2 }, 0, 2) > 0);
+        assertEquals(-1, index.find(new int[] { 2, 2 }, 0, 2));
+        assertEquals(2, index.bigrams().edgeCount());
+    }
+    
+    @Test
+    public void testManyCorporaMatchWeightedUnion() throws IOException {
+        // enough first words to be merged in several parallel ranges
+        Random random = new Random(6029);
+        double[] weights = { 0.5, 2, 0.25 };
+        List<File> corpora = new ArrayList<>();
+        List<Graph<String>> graphs = new ArrayList<>();
+        for (int c = 0; c < weights.length; c++) {
+            StringBuilder text = new StringBuilder();
+            Graph<String> graph = new PersistentGraph<>();
+            String previous = null;
+            for (int i = 0; i < 20_000; i++) {
+                String word = "w" + random.nextInt(2_000);
+                text.append(word).append(' ');
+                if (previous != null) {
+                    graph.set(previous, word, graph.targets(previous).getOrDefault(word, 0) + 1);
+                }
+                graph.add(word);
+                previous = word;
+            }
+            corpora.add(corpus(text.toString()));
+            graphs.add(graph);
+        }
+        PersistentGraph<String> union = new PersistentGraph<>();
+        Graphs.weightedUnion(graphs, weights, union);
+        GraphPoet merged = new GraphPoet(corpora, weights);
+        assertEquals(GraphPoet.fromSnapshot(union).toString(), merged.toString());
+        // ties between bridges go by word id, which differs between the two
+        // poets, so check that each bridge makes a best path of the union
+        for (int i = 0; i < 200; i++) {
+            String first = "w" + random.nextInt(2_000);
+            String second = "w" + random.nextInt(2_000);
+            int best = 0;
+            for (Map.Entry<String, Integer> edge : union.targets(first).entrySet()) {
+                int next = union.targets(edge.getKey()).getOrDefault(second, 0);
+                if (next > 0) {
+                    best = Math.max(best, edge.getValue() + next);
+                }
+            }
+            String[] poem = merged.poem(first + " " + second).split(" ");
+            if (best == 0) {
+                assertEquals(2, poem.length);
+            } else {
+                assertEquals(3, poem.length);
+                assertEquals(best, union.targets(first).get(poem[1]) + union.targets(poem[1]).get(second));
+            }
+        }
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testMismatchedCorpusWeights() throws IOException {
+        new GraphPoet(Arrays.asList(corpus("a b")), new double[] { 1, 2 });
+    }
+    
+    @Test
+    public void testFromSnapshotIgnoresLaterMutation() {
+        PersistentGraph<String> graph = new PersistentGraph<>();
+        graph.set("a", "b", 1);
+        graph.set("b", "c", 1);
+        GraphPoet poet = GraphPoet.fromSnapshot(graph);
+        graph.set("a", "d", 5);
+        graph.set("d", "c", 5);
+        graph.remove("b");
+        assertEquals("a b c", poet.poem("a c"));
+        assertEquals("a d c", GraphPoet.fromSnapshot(graph).poem("a c"));
+    }
+    
+    @Test
+    public void testFromShards() {
+        ShardedGraph<String> graph = new ShardedGraph<>(4);
+        graph.set("this", "is", 1);
+        graph.set("is", "a", 1);
+        graph.set("a", "test", 1);
+        graph.set("is", "the", 2);
+        graph.set("the", "test", 2);
+        GraphPoet poet = GraphPoet.fromShards(graph);
+        assertEquals("This is the test", poet.poem("This is test"));
+        assertEquals("Unknown this is the Test", poet.poem("Unknown this is Test"));
+        graph.remove("the");
+        assertEquals("This is a test", poet.poem("This is test"));
+        assertEquals("GraphPoet(4 shards)", poet.toString());
+        assertEquals("WalkGenerator(4 words, 3 edges)", poet.walks().toString());
+    }
+    
+    @Test(timeout=20_000)
+    public void testLargeCorpusScalesLinearly() throws IOException {
+        // copying the edges into a list-backed graph took minutes at this size
+        Random random = new Random(6005);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300_000; i++) {
+            text.append('w').append(random.nextInt(20_000)).append(' ');
+        }
+        GraphPoet poet = new GraphPoet(corpus(text.toString()));
+        assertTrue(poet.toString(), poet.toString().matches("GraphPoet\\(20000 words, 2\\d{5} edges\\)"));
+    }
+    
+    @Test
+    public void testAppendable() throws IOException {
+        GraphPoet poet = new GraphPoet(corpus("This is a test of the Mugar Omni Theater sound system."));
+        StringBuilder out = new StringBuilder(">");
+        poet.poem(new StringBuilder("Test the system."), out);
+        assertEquals(">Test of the system.", out.toString());
+    }
+    
+    @Test
+    public void testPoemToAppendableDoesNotAllocate() throws IOException {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        
+        GraphPoet poet = new GraphPoet(new File("src/poet/mugar-omni-theater.txt"));
+        String input = "Test the system. This is a test of the Omni Theater sound system";
+        StringBuilder out = new StringBuilder(1024);
+        final int calls = 10_000;
+        for (int i = 0; i < calls; i++) {
+            out.setLength(0);
+            poet.poem(input, out);
+        }
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < calls; i++) {
+            out.setLength(0);
+            poet.poem(input, out);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue("expected no allocation per call, measured " + allocated + " bytes for " + calls + " calls",
+                allocated < calls);
+    }
     
 }
@@ -0,0 +1,235 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+import poet.IngestionControl.OverBudget;
+import poet.IngestionControl.Phase;
+
+/**
+ * Tests for IngestionControl and GraphPoet(File, IngestionControl).
+ */
+public class IngestionControlTest {
+
+    // Testing strategy
+    //   no budgets: same poet as GraphPoet(File), progress reported at the
+    //     end of every phase, timings recorded
+    //   budget reached: vertices, edges, heap; STOP and PRUNE
+    //   PRUNE over the edge budget: a frequent pair survives later new
+    //     pairs; many distinct pairs against a small budget finish quickly;
+    //     the summary agrees with textbook Misra-Gries; heap budget stops as
+    //     STOP does
+    //   cancellation: before ingestion, from the listener mid-ingestion
+    //   budgets not positive
+
+    private static File corpus(String text) throws IOException {
+        File file = File.createTempFile("corpus", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /*
+     * A corpus of more than IngestionControl.CHECK_INTERVAL bytes and words.
+     */
+    private static File largeCorpus() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < IngestionControl.CHECK_INTERVAL + 10; i++) {
+            text.append('w').append(i % 100).append(' ');
+        }
+        return corpus(text.toString());
+    }
+
+    @Test
+    public void testProgressAndTimings() throws IOException {
+        File nimoy = new File("src/poet/mugar-omni-theater.txt");
+        List<Phase> reported = new ArrayList<>();
+        IngestionControl control = new IngestionControl(Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE,
+                OverBudget.STOP, progress -> reported.add(progress.phase()));
+        GraphPoet poet = new GraphPoet(nimoy, control);
+        GraphPoet plain = new GraphPoet(nimoy);
+        assertEquals(plain.toString(), poet.toString());
+        assertEquals(plain.poem("Test the system."), poet.poem("Test the system."));
+        assertTrue(reported.containsAll(EnumSet.allOf(Phase.class)));
+        assertEquals(Phase.INSERT, control.phase());
+        assertEquals(nimoy.length(), control.bytesRead());
+        assertEquals(11, control.tokens());
+        assertEquals(11, control.vertices());
+        assertEquals(10, control.edges());
+        assertFalse(control.budgetReached());
+        long total = 0;
+        for (long nanos : control.timings().values()) {
+            assertTrue(nanos >= 0);
+            total += nanos;
+        }
+        assertTrue(total > 0);
+        assertTrue(control.toString(), control.toString().contains("11 vertices"));
+    }
+
+    @Test
+    public void testVertexBudget() throws IOException {
+        File text = corpus("a b c d e a b c");
+        IngestionControl stop = new IngestionControl(3, 100, Long.MAX_VALUE, OverBudget.STOP, progress -> { });
+        assertEquals("GraphPoet(3 words, 2 edges)", new GraphPoet(text, stop).toString());
+        assertTrue(stop.budgetReached());
+        assertEquals(4, stop.tokens());
+        // d and e are left out, so c -> d -> e -> a adds no edges
+        IngestionControl prune = new IngestionControl(3, 100, Long.MAX_VALUE, OverBudget.PRUNE, progress -> { });
+        GraphPoet poet = new GraphPoet(text, prune);
+        assertEquals("GraphPoet(3 words, 2 edges)", poet.toString());
+        assertEquals("a b c", poet.poem("a c"));
+        assertTrue(prune.budgetReached());
+        assertEquals(8, prune.tokens());
+    }
+
+    @Test
+    public void testEdgeBudget() throws IOException {
+        File text = corpus("x y x y x y a b c");
+        IngestionControl stop = new IngestionControl(100, 2, Long.MAX_VALUE, OverBudget.STOP, progress -> { });
+        GraphPoet stopped = new GraphPoet(text, stop);
+        assertEquals("GraphPoet(5 words, 2 edges)", stopped.toString());
+        assertEquals("x y x", stopped.poem("x x"));
+        assertTrue(stop.budgetReached());
+        // x -> y, seen 3 of 8 times, is kept; y -> a and a -> b only cancel
+        // counts, and b -> c takes the room that y -> x left
+        IngestionControl prune = new IngestionControl(100, 2, Long.MAX_VALUE, OverBudget.PRUNE, progress -> { });
+        GraphPoet pruned = new GraphPoet(text, prune);
+        assertEquals("GraphPoet(5 words, 2 edges)", pruned.toString());
+        WalkGenerator walks = pruned.walks();
+        assertEquals("x y", walks.walk("x", 3, 1));
+        assertEquals("b c", walks.walk("b", 3, 1));
+        assertEquals("a", walks.walk("a", 3, 1));
+        assertTrue(prune.budgetReached());
+    }
+
+    @Test
+    public void testEdgeBudgetKeepsFrequentPairs() throws IOException {
+        // every pair seen more than N / (maxEdges + 1) times survives a
+        // stream of rare pairs, each seen once
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append(i % 3 == 0 ? "common pair " : "rare" + i + " other" + i + " ");
+        }
+        IngestionControl prune = new IngestionControl(Integer.MAX_VALUE, 10, Long.MAX_VALUE, OverBudget.PRUNE,
+                progress -> { });
+        GraphPoet poet = new GraphPoet(corpus(text.toString()), prune);
+        assertTrue(prune.budgetReached());
+        assertTrue(prune.edges() <= 10);
+        assertEquals("common pair", poet.walks().walk("common", 2, 1));
+    }
+
+    @Test(timeout=10000)
+    public void testEdgeBudgetManyDistinctPairs() throws IOException {
+        // nearly every pair finds no room, so each one takes an occurrence
+        // from every kept pair; that must not cost time per kept pair
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000000; i++) {
+            text.append(i % 4 == 0 ? "common" : "w" + random.nextInt(50000)).append(' ');
+        }
+        IngestionControl prune = new IngestionControl(Integer.MAX_VALUE, 1000, Long.MAX_VALUE, OverBudget.PRUNE,
+                progress -> { });
+        GraphPoet poet = new GraphPoet(corpus(text.toString()), prune);
+        assertTrue(prune.budgetReached());
+        assertTrue(prune.edges() <= 1000);
+        assertTrue(poet.toString(), prune.edges() > 0);
+    }
+
+    @Test
+    public void testFrequentPairCounterMatchesMisraGries() {
+        // against the textbook summary, which takes from every kept pair in turn
+        Random random = new Random(11);
+        FrequentPairCounter counter = new FrequentPairCounter(50);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            int first = random.nextInt(3) == 0 ? random.nextInt(5) : random.nextInt(2000);
+            int second = random.nextInt(3) == 0 ? 0 : random.nextInt(2000);
+            long key = ((long) first << 32) | second;
+            boolean counted = expected.containsKey(key) || expected.size() < 50;
+            if (counted) {
+                expected.merge(key, 1, Integer::sum);
+            } else {
+                expected.replaceAll((pair, count) -> count - 1);
+                expected.values().removeIf(count -> count == 0);
+            }
+            assertEquals(counted, counter.add(first, second));
+            assertEquals(expected.size(), counter.size());
+        }
+        int[] firsts = new int[counter.size()];
+        int[] seconds = new int[counter.size()];
+        int[] weights = new int[counter.size()];
+        counter.copyTo(firsts, seconds, weights);
+        Map<Long, Integer> actual = new HashMap<>();
+        for (int i = 0; i < firsts.length; i++) {
+            actual.put(((long) firsts[i] << 32) | seconds[i], weights[i]);
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testHeapBudgetStopsReading() throws IOException {
+        File text = largeCorpus();
+        IngestionControl stop = new IngestionControl(Integer.MAX_VALUE, Integer.MAX_VALUE, 1, OverBudget.STOP,
+                progress -> { });
+        new GraphPoet(text, stop);
+        assertTrue(stop.budgetReached());
+        assertEquals(IngestionControl.CHECK_INTERVAL, stop.bytesRead());
+    }
+
+    @Test
+    public void testHeapBudgetStopsPruning() throws IOException {
+        // pruning cannot shrink the text or the token ids, so it stops too
+        File text = largeCorpus();
+        IngestionControl prune = new IngestionControl(Integer.MAX_VALUE, Integer.MAX_VALUE, 1, OverBudget.PRUNE,
+                progress -> { });
+        GraphPoet poet = new GraphPoet(text, prune);
+        assertTrue(prune.budgetReached());
+        assertEquals(IngestionControl.CHECK_INTERVAL, prune.bytesRead());
+        assertTrue(prune.tokens() < IngestionControl.CHECK_INTERVAL);
+        assertTrue(poet.toString(), prune.edges() > 0);
+    }
+
+    @Test(expected=CancellationException.class)
+    public void testCancelledBeforeStart() throws IOException {
+        IngestionControl control = new IngestionControl();
+        control.cancel();
+        new GraphPoet(corpus("a b c"), control);
+    }
+
+    @Test
+    public void testCancelledFromListener() throws IOException {
+        File text = largeCorpus();
+        IngestionControl control = new IngestionControl(Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE,
+                OverBudget.STOP, progress -> {
+                    if (progress.phase() == Phase.TOKENIZE) {
+                        progress.cancel();
+                    }
+                });
+        try {
+            new GraphPoet(text, control);
+            fail("expected CancellationException");
+        } catch (CancellationException expected) {
+            assertTrue(control.isCancelled());
+            assertEquals(Phase.TOKENIZE, control.phase());
+            assertEquals(IngestionControl.CHECK_INTERVAL, control.tokens());
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBudgetNotPositive() {
+        new IngestionControl(0, 1, 1, OverBudget.STOP, progress -> { });
+    }
+}
@@ -0,0 +1,69 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for LatencyHistogram.
+ */
+public class LatencyHistogramTest {
+    
+    // Testing strategy
+    //   recorded: none, one value, many values across magnitudes, negative
+    //   percentile: 0, 50, 100, out of range
+    //   values: below and above the linear range of sub-buckets
+    
+    private static final long MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+    
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentileMicros(50));
+        assertEquals(0, histogram.maxMicros());
+    }
+    
+    @Test
+    public void testSmallValuesExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.recordNanos(i * MICRO);
+        }
+        assertEquals(10, histogram.count());
+        assertEquals(1, histogram.percentileMicros(0));
+        assertEquals(5, histogram.percentileMicros(50));
+        assertEquals(10, histogram.percentileMicros(100));
+    }
+    
+    @Test
+    public void testRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000_000; micros += micros / 7 + 1) {
+            LatencyHistogram single = new LatencyHistogram();
+            single.recordNanos(micros * MICRO);
+            long estimate = single.percentileMicros(50);
+            assertTrue("estimate " + estimate + " for " + micros, estimate <= micros);
+            assertTrue("estimate " + estimate + " for " + micros, estimate >= micros - micros / 32);
+            histogram.recordNanos(micros * MICRO);
+        }
+        assertTrue(histogram.percentileMicros(50) < histogram.percentileMicros(99));
+        assertEquals(histogram.maxMicros(), histogram.percentileMicros(100));
+    }
+    
+    @Test
+    public void testNegativeCountsAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(-5);
+        assertEquals(1, histogram.count());
+        assertEquals(0, histogram.percentileMicros(100));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testPercentileOutOfRange() {
+        new LatencyHistogram().percentileMicros(101);
+    }
+    
+}
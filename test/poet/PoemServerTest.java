@@ -0,0 +1,161 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Scanner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for PoemServer and PoemLoadClient.
+ */
+public class PoemServerTest {
+    
+    // Testing strategy
+    //   method: GET with query, POST with body, unsupported method
+    //   endpoint: /poem, /stats
+    //   POST body: at the size limit, over it with and without a declared
+    //     length
+    //   load client: all requests succeed against an idle server, counts
+    //     start afresh on a second run
+    
+    private PoemServer server;
+    
+    @Before
+    public void setUp() throws IOException {
+        GraphPoet poet = new GraphPoet(new File("src/poet/mugar-omni-theater.txt"));
+        server = new PoemServer(poet, new InetSocketAddress("localhost", 0), 2, 16);
+        server.start();
+    }
+    
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+    
+    private URL url(String path) throws IOException {
+        return new URL("http://localhost:" + server.address().getPort() + path);
+    }
+    
+    private static String read(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream();
+                Scanner scanner = new Scanner(in, "UTF-8")) {
+            return scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+        }
+    }
+    
+    @Test
+    public void testGet() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url(
+                "/poem?input=" + URLEncoder.encode("Test the system.", "UTF-8")).openConnection();
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("Test of the system.", read(connection));
+    }
+    
+    @Test
+    public void testPost() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url("/poem").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write("Test the system.".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("Test of the system.", read(connection));
+    }
+    
+    @Test
+    public void testBadMethod() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url("/poem").openConnection();
+        connection.setRequestMethod("DELETE");
+        assertEquals(405, connection.getResponseCode());
+    }
+    
+    @Test
+    public void testLoadClientAndStats() throws Exception {
+        String summary = new PoemLoadClient(url("/poem"), "Test the system.").run(4, 200);
+        assertTrue(summary, summary.startsWith("200 ok"));
+        assertTrue(summary, summary.contains("0 failed"));
+        
+        HttpURLConnection connection = (HttpURLConnection) url("/stats").openConnection();
+        assertEquals(200, connection.getResponseCode());
+        String stats = read(connection);
+        assertTrue(stats, stats.startsWith("latency count=200 "));
+        assertTrue(stats, stats.contains("rejected 0"));
+    }
+    
+    @Test
+    public void testLoadClientRunsAreIndependent() throws Exception {
+        PoemLoadClient client = new PoemLoadClient(url("/poem"), "Test the system.");
+        String first = client.run(2, 30);
+        String second = client.run(3, 20);
+        assertTrue(first, first.startsWith("30 ok"));
+        assertTrue(second, second.startsWith("20 ok"));
+        assertTrue(second, second.contains("count=20 "));
+    }
+    
+    @Test
+    public void testBodyAtLimit() throws IOException {
+        byte[] body = new byte[PoemServer.MAX_BODY_BYTES];
+        Arrays.fill(body, (byte) 'a');
+        HttpURLConnection connection = (HttpURLConnection) url("/poem").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(body.length, read(connection).length());
+    }
+    
+    /*
+     * Send a raw POST /poem request and return the response's status line.
+     */
+    private String rawPost(String headers, byte[] body) throws IOException {
+        try (Socket socket = new Socket("localhost", server.address().getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("POST /poem HTTP/1.1\r\nHost: localhost\r\n" + headers + "\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.write(body);
+            out.flush();
+            Scanner scanner = new Scanner(socket.getInputStream(), "US-ASCII");
+            return scanner.nextLine();
+        }
+    }
+    
+    @Test
+    public void testDeclaredBodyOverLimit() throws IOException {
+        String status = rawPost("Content-Length: " + (PoemServer.MAX_BODY_BYTES + 1) + "\r\n", new byte[0]);
+        assertTrue(status, status.startsWith("HTTP/1.1 413"));
+    }
+    
+    @Test
+    public void testChunkedBodyOverLimit() throws IOException {
+        int length = PoemServer.MAX_BODY_BYTES + 1;
+        byte[] chunk = new byte[length];
+        Arrays.fill(chunk, (byte) 'a');
+        byte[] head = (Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] tail = "\r\n0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] body = new byte[head.length + length + tail.length];
+        System.arraycopy(head, 0, body, 0, head.length);
+        System.arraycopy(chunk, 0, body, head.length, length);
+        System.arraycopy(tail, 0, body, head.length + length, tail.length);
+        String status = rawPost("Transfer-Encoding: chunked\r\n", body);
+        assertTrue(status, status.startsWith("HTTP/1.1 413"));
+    }
+    
+}
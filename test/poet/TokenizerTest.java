@@ -0,0 +1,126 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for Tokenizer and Normalizer.
+ */
+public class TokenizerTest {
+
+    // Testing strategy
+    //   text: empty, only delimiters, words and delimiter runs of lengths
+    //     that do and do not line up with eight-byte chunks, word at the very
+    //     end, mixed case, non-ASCII words, malformed UTF-8
+    //   normalizer: LOWER_CASE, CASE_FOLD, stripPunctuation with words that
+    //     are all punctuation
+    //   GraphPoet with a normalizer: input words looked up by normal form
+
+    private static List<String> tokenize(String text, Normalizer normalizer) {
+        return tokenize(text.getBytes(StandardCharsets.UTF_8), normalizer);
+    }
+
+    private static List<String> tokenize(byte[] text, Normalizer normalizer) {
+        Vocabulary vocabulary = new Vocabulary();
+        List<String> words = new ArrayList<>();
+        new Tokenizer(normalizer).tokenize(text, vocabulary, id -> words.add(vocabulary.word(id)));
+        return words;
+    }
+
+    /*
+     * Split text as the GraphPoet specification does, one char at a time.
+     */
+    private static List<String> reference(String text) {
+        List<String> words = new ArrayList<>();
+        int end;
+        for (int start = GraphPoet.skipDelimiters(text, 0); start < text.length();
+                start = GraphPoet.skipDelimiters(text, end)) {
+            end = GraphPoet.wordEnd(text, start);
+            words.add(Vocabulary.lowerCase(text, start, end));
+        }
+        return words;
+    }
+
+    @Test
+    public void testEmptyAndDelimitersOnly() {
+        assertEquals(Arrays.asList(), tokenize("", Normalizer.LOWER_CASE));
+        assertEquals(Arrays.asList(), tokenize(" \n\r  \r\n         \n", Normalizer.LOWER_CASE));
+    }
+
+    @Test
+    public void testChunkBoundaries() {
+        for (int wordLength = 1; wordLength <= 17; wordLength++) {
+            for (int gapLength = 1; gapLength <= 9; gapLength++) {
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < 5; i++) {
+                    for (int c = 0; c < wordLength; c++) {
+                        text.append((char) ('A' + (i + c) % 26));
+                    }
+                    for (int c = 0; c < gapLength; c++) {
+                        text.append(" \n\r".charAt((i + c) % 3));
+                    }
+                }
+                assertEquals(text.toString(), reference(text.toString()),
+                        tokenize(text.toString(), Normalizer.LOWER_CASE));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesCharScanner() {
+        Random random = new Random(6005);
+        String alphabet = "aBz  \n\r\u00e9\u00df\u00c9\u4e2d!";
+        for (int trial = 0; trial < 2000; trial++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int i = 0; i < length; i++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertEquals(text.toString(), reference(text.toString()),
+                    tokenize(text.toString(), Normalizer.LOWER_CASE));
+        }
+    }
+
+    @Test
+    public void testMalformedUtf8() {
+        byte[] text = { 'a', (byte) 0xE2, ' ', (byte) 0xC3, (byte) 0xA9, 'B' };
+        assertEquals(Arrays.asList("a\ufffd", "\u00e9b"), tokenize(text, Normalizer.LOWER_CASE));
+    }
+
+    @Test
+    public void testCaseFold() {
+        String text = "Stra\u00dfe STRASSE strasse Ok";
+        assertEquals(Arrays.asList("stra\u00dfe", "strasse", "strasse", "ok"), tokenize(text, Normalizer.LOWER_CASE));
+        assertEquals(Arrays.asList("strasse", "strasse", "strasse", "ok"), tokenize(text, Normalizer.CASE_FOLD));
+    }
+
+    @Test
+    public void testStripPunctuation() {
+        Normalizer strip = Normalizer.stripPunctuation(Normalizer.LOWER_CASE);
+        assertEquals(Arrays.asList("hello", "hello", "world", "don't", "\u00e9t\u00e9"),
+                tokenize("Hello, hello -- (World)! \"don't\" \u00ab\u00c9t\u00e9\u00bb ...", strip));
+        assertEquals("", strip.normalize("\u2014!?"));
+    }
+
+    @Test
+    public void testPoetWithNormalizer() throws IOException {
+        File corpus = File.createTempFile("corpus", ".txt");
+        corpus.deleteOnExit();
+        Files.write(corpus.toPath(),
+                "the (quick) fox. The quick, FOX".getBytes(StandardCharsets.UTF_8));
+        assertEquals("The fox!", new GraphPoet(corpus).poem("The fox!"));
+        GraphPoet poet = new GraphPoet(corpus, Normalizer.stripPunctuation(Normalizer.LOWER_CASE));
+        assertEquals("The quick fox!", poet.poem("The fox!"));
+        assertEquals("GraphPoet(3 words, 3 edges)", poet.toString());
+    }
+}
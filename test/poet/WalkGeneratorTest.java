@@ -0,0 +1,122 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import graph.Graph;
+import graph.PersistentGraph;
+
+/**
+ * Tests for WalkGenerator.
+ */
+public class WalkGeneratorTest {
+
+    // Testing strategy
+    //   walk(): start absent, start with no out-edges, walk reaching a dead
+    //     end, cycles; same seed gives same walk; frequencies of each step
+    //     follow the edge weights (one edge, equal and unequal weights)
+    //   beam(): width 1 (greedy) versus wider beams that find a more
+    //     probable walk, dead ends, start absent
+    //   words or width less than 1
+
+    private static Graph<String> graph(Object... edges) {
+        Graph<String> graph = new PersistentGraph<>();
+        for (int i = 0; i < edges.length; i += 3) {
+            graph.set((String) edges[i], (String) edges[i + 1], (Integer) edges[i + 2]);
+        }
+        return graph;
+    }
+
+    @Test
+    public void testWalkStopsAtDeadEnd() {
+        WalkGenerator walks = new WalkGenerator(graph("a", "b", 1, "b", "c", 1));
+        assertEquals("A b c", walks.walk("A", 10, 1));
+        assertEquals("A b", walks.walk("A", 2, 1));
+        assertEquals("A", walks.walk("A", 1, 1));
+        assertEquals("c", walks.walk("c", 5, 1));
+        assertEquals("missing", walks.walk("missing", 5, 1));
+    }
+
+    @Test
+    public void testWalkIsReproducible() {
+        WalkGenerator walks = new WalkGenerator(graph("a", "b", 1, "a", "c", 2, "b", "a", 1, "c", "a", 3, "c", "b", 1));
+        String walk = walks.walk("a", 50, 42);
+        assertEquals(walk, new WalkGenerator(graph("a", "b", 1, "a", "c", 2, "b", "a", 1,
+                "c", "a", 3, "c", "b", 1)).walk("a", 50, 42));
+        assertEquals(50, walk.split(" ").length);
+        String[] steps = walk.split(" ");
+        for (int i = 1; i < steps.length; i++) {
+            assertFalse("no edge " + steps[i - 1] + " -> " + steps[i], steps[i - 1].equals("b") && steps[i].equals("c"));
+        }
+    }
+
+    @Test
+    public void testStepFrequenciesFollowWeights() {
+        Graph<String> graph = graph("a", "b", 1, "a", "c", 3, "a", "d", 6, "a", "e", 10);
+        WalkGenerator walks = new WalkGenerator(graph);
+        SplittableRandom random = new SplittableRandom(7);
+        int[] counts = new int[4];
+        int samples = 200_000;
+        StringBuilder step = new StringBuilder();
+        for (int i = 0; i < samples; i++) {
+            step.setLength(0);
+            try {
+                walks.walk("a", 2, random, step);
+            } catch (IOException ioe) {
+                throw new AssertionError(ioe);
+            }
+            counts[step.charAt(2) - 'b']++;
+        }
+        double[] expected = { 0.05, 0.15, 0.30, 0.50 };
+        for (int i = 0; i < counts.length; i++) {
+            assertEquals(expected[i], (double) counts[i] / samples, 0.01);
+        }
+    }
+
+    @Test
+    public void testWalksFromPoet() throws IOException {
+        File corpus = File.createTempFile("corpus", ".txt");
+        corpus.deleteOnExit();
+        Files.write(corpus.toPath(), "to be or not to be".getBytes(StandardCharsets.UTF_8));
+        WalkGenerator walks = new GraphPoet(corpus).walks();
+        assertEquals("WalkGenerator(4 words, 4 edges)", walks.toString());
+        assertEquals("Or not to be", walks.walk("Or", 4, 3));
+    }
+
+    @Test
+    public void testBeamFindsMoreProbableWalk() {
+        // greedy takes a -> b (0.6) but then b's steps are each 0.2;
+        // a -> c (0.4) -> d (1.0) is more probable overall
+        Graph<String> graph = graph("a", "b", 6, "a", "c", 4,
+                "b", "x", 1, "b", "y", 1, "b", "z", 1, "c", "d", 5);
+        WalkGenerator walks = new WalkGenerator(graph);
+        assertTrue(walks.beam("a", 3, 1).startsWith("a b "));
+        assertEquals("a c d", walks.beam("a", 3, 2));
+        assertEquals("a", walks.beam("a", 1, 3));
+    }
+
+    @Test
+    public void testBeamAtDeadEndKeepsLongestWalk() {
+        WalkGenerator walks = new WalkGenerator(graph("a", "b", 1, "b", "c", 1));
+        assertEquals("a b c", walks.beam("a", 10, 4));
+        assertEquals("nowhere", walks.beam("nowhere", 3, 4));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNoWords() {
+        new WalkGenerator(graph("a", "b", 1)).walk("a", 0, 1);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNoWidth() {
+        new WalkGenerator(graph("a", "b", 1)).beam("a", 2, 0);
+    }
+
+}